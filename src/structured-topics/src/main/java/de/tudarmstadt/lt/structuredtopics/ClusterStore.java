@@ -0,0 +1,383 @@
+package de.tudarmstadt.lt.structuredtopics;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import de.tudarmstadt.lt.structuredtopics.ddts.ClusterWord;
+
+/**
+ * Dictionary encoded storage for the sense clusters of a DDT. Every word (sense
+ * words as well as cluster words) is stored once and referenced by an int id.
+ * The clusters themselves are kept in packed primitive arrays: cluster
+ * <code>c</code> owns the cluster words from {@link #getClusterStart(int)}
+ * (inclusive) to {@link #getClusterEnd(int)} (exclusive).
+ * <p>
+ * All clusters of the same sense word are chained, use
+ * {@link #getFirstCluster(int)} and {@link #getNextCluster(int)} to walk
+ * through them. Adding a cluster for an already known sense word and sense id
+ * replaces the previous cluster.
+ */
+public class ClusterStore {
+
+	/**
+	 * Sense id of cluster words without a sense id (format 'word#posTag').
+	 */
+	public static final int NO_SENSE_ID = ClusterWord.NO_SENSE_ID;
+
+	/**
+	 * Returned for unknown words and at the end of a cluster chain.
+	 */
+	public static final int NONE = -1;
+
+	// vocabulary
+	private final Map<String, Integer> wordIds;
+	private String[] words;
+	private int vocabularySize = 0;
+	// head of the cluster chain for each word id
+	private int[] firstClusterOfWord;
+	private int senseWordCount = 0;
+
+	// clusters
+	private int clusterCount = 0;
+	private int liveClusterCount = 0;
+	private int[] senseWordIds;
+	private int[] senseIds;
+	private int[] clusterStarts;
+	private int[] nextClusterOfWord;
+
+	// cluster words of all clusters
+	private int clusterWordCount = 0;
+	private int[] clusterWordIds;
+	// the parsed weights, the similarities are the same as with the weights
+	// of the ddt
+	private double[] clusterWordWeights;
+	private int[] clusterWordSenseIds;
+
+	// word ids of each cluster sorted, same offsets as above
+	private int[] sortedClusterWordIds;
+	private double[] norms;
+
+	public ClusterStore() {
+		this(1024);
+	}
+
+	public ClusterStore(int expectedClusters) {
+		int capacity = Math.max(expectedClusters, 16);
+		wordIds = Maps.newHashMapWithExpectedSize(capacity);
+		words = new String[capacity];
+		firstClusterOfWord = new int[capacity];
+		senseWordIds = new int[capacity];
+		senseIds = new int[capacity];
+		clusterStarts = new int[capacity + 1];
+		nextClusterOfWord = new int[capacity];
+		clusterWordIds = new int[capacity * 8];
+		clusterWordWeights = new double[capacity * 8];
+		clusterWordSenseIds = new int[capacity * 8];
+	}
+
+	/**
+	 * Adds a cluster. The first <code>size</code> entries of the arrays
+	 * describe the cluster words, use {@link #NO_SENSE_ID} for words without a
+	 * sense id.
+	 *
+	 * @return the index of the new cluster
+	 */
+	public int addCluster(String senseWord, int senseId, String[] clusterWords, double[] weights,
+			int[] clusterWordSenseIds, int size) {
+		int senseWordId = intern(senseWord);
+		invalidateSortedClusterWords();
+		ensureClusterCapacity(clusterCount + 1);
+		ensureClusterWordCapacity(clusterWordCount + size);
+		int cluster = clusterCount++;
+		senseWordIds[cluster] = senseWordId;
+		senseIds[cluster] = senseId;
+		clusterStarts[cluster] = clusterWordCount;
+		for (int i = 0; i < size; i++) {
+			this.clusterWordIds[clusterWordCount] = intern(clusterWords[i]);
+			this.clusterWordWeights[clusterWordCount] = weights[i];
+			this.clusterWordSenseIds[clusterWordCount] = clusterWordSenseIds[i];
+			clusterWordCount++;
+		}
+		clusterStarts[cluster + 1] = clusterWordCount;
+		linkCluster(senseWordId, senseId, cluster);
+		return cluster;
+	}
+
+	/**
+	 * Adds all clusters of the other store in the order in which they were
+	 * added to it. The result is the same as adding the clusters one by one,
+	 * but the words of the other store are only looked up once.
+	 */
+	public void addAll(ClusterStore other) {
+		invalidateSortedClusterWords();
+		int[] wordIdMapping = new int[other.vocabularySize];
+		for (int wordId = 0; wordId < other.vocabularySize; wordId++) {
+			wordIdMapping[wordId] = intern(other.words[wordId]);
+		}
+		ensureClusterCapacity(clusterCount + other.clusterCount);
+		ensureClusterWordCapacity(clusterWordCount + other.clusterWordCount);
+		for (int otherCluster = 0; otherCluster < other.clusterCount; otherCluster++) {
+			int cluster = clusterCount++;
+			int senseWordId = wordIdMapping[other.senseWordIds[otherCluster]];
+			senseWordIds[cluster] = senseWordId;
+			senseIds[cluster] = other.senseIds[otherCluster];
+			clusterStarts[cluster] = clusterWordCount;
+			for (int i = other.clusterStarts[otherCluster]; i < other.clusterStarts[otherCluster + 1]; i++) {
+				clusterWordIds[clusterWordCount] = wordIdMapping[other.clusterWordIds[i]];
+				clusterWordWeights[clusterWordCount] = other.clusterWordWeights[i];
+				clusterWordSenseIds[clusterWordCount] = other.clusterWordSenseIds[i];
+				clusterWordCount++;
+			}
+			clusterStarts[cluster + 1] = clusterWordCount;
+			linkCluster(senseWordId, senseIds[cluster], cluster);
+		}
+	}
+
+	private void linkCluster(int senseWordId, int senseId, int cluster) {
+		nextClusterOfWord[cluster] = NONE;
+		int current = firstClusterOfWord[senseWordId];
+		if (current == NONE) {
+			firstClusterOfWord[senseWordId] = cluster;
+			senseWordCount++;
+			liveClusterCount++;
+			return;
+		}
+		int previous = NONE;
+		while (current != NONE) {
+			if (senseIds[current] == senseId) {
+				// replace the existing cluster, its words stay unreferenced
+				nextClusterOfWord[cluster] = nextClusterOfWord[current];
+				if (previous == NONE) {
+					firstClusterOfWord[senseWordId] = cluster;
+				} else {
+					nextClusterOfWord[previous] = cluster;
+				}
+				return;
+			}
+			previous = current;
+			current = nextClusterOfWord[current];
+		}
+		nextClusterOfWord[previous] = cluster;
+		liveClusterCount++;
+	}
+
+	private int intern(String word) {
+		Integer id = wordIds.get(word);
+		if (id != null) {
+			return id;
+		}
+		if (vocabularySize == words.length) {
+			int newLength = grow(words.length);
+			words = Arrays.copyOf(words, newLength);
+			firstClusterOfWord = Arrays.copyOf(firstClusterOfWord, newLength);
+		}
+		int newId = vocabularySize++;
+		words[newId] = word;
+		firstClusterOfWord[newId] = NONE;
+		wordIds.put(word, newId);
+		return newId;
+	}
+
+	private void ensureClusterCapacity(int required) {
+		if (required > senseWordIds.length) {
+			int newLength = Math.max(required, grow(senseWordIds.length));
+			senseWordIds = Arrays.copyOf(senseWordIds, newLength);
+			senseIds = Arrays.copyOf(senseIds, newLength);
+			clusterStarts = Arrays.copyOf(clusterStarts, newLength + 1);
+			nextClusterOfWord = Arrays.copyOf(nextClusterOfWord, newLength);
+		}
+	}
+
+	private void ensureClusterWordCapacity(int required) {
+		if (required > clusterWordIds.length) {
+			int newLength = Math.max(required, grow(clusterWordIds.length));
+			clusterWordIds = Arrays.copyOf(clusterWordIds, newLength);
+			clusterWordWeights = Arrays.copyOf(clusterWordWeights, newLength);
+			clusterWordSenseIds = Arrays.copyOf(clusterWordSenseIds, newLength);
+		}
+	}
+
+	private static int grow(int length) {
+		return length + (length >> 1) + 16;
+	}
+
+	/**
+	 * Releases the unused capacity of the internal arrays, call after all
+	 * clusters have been added.
+	 */
+	public void trimToSize() {
+		words = Arrays.copyOf(words, vocabularySize);
+		firstClusterOfWord = Arrays.copyOf(firstClusterOfWord, vocabularySize);
+		senseWordIds = Arrays.copyOf(senseWordIds, clusterCount);
+		senseIds = Arrays.copyOf(senseIds, clusterCount);
+		clusterStarts = Arrays.copyOf(clusterStarts, clusterCount + 1);
+		nextClusterOfWord = Arrays.copyOf(nextClusterOfWord, clusterCount);
+		clusterWordIds = Arrays.copyOf(clusterWordIds, clusterWordCount);
+		clusterWordWeights = Arrays.copyOf(clusterWordWeights, clusterWordCount);
+		clusterWordSenseIds = Arrays.copyOf(clusterWordSenseIds, clusterWordCount);
+	}
+
+	/**
+	 * Creates a copy of the word ids of each cluster sorted by word id and
+	 * caches the vector length of each cluster. Required by
+	 * {@link #getSortedClusterWordId(int)}, {@link #getNorm(int)},
+	 * {@link #containsClusterWord(int, int)} and
+	 * {@link #countClusterWord(int, int)}. Adding a cluster invalidates the
+	 * sorted copy.
+	 */
+	public void sortClusterWords() {
+		if (norms != null) {
+			return;
+		}
+		sortedClusterWordIds = Arrays.copyOf(clusterWordIds, clusterWordCount);
+		norms = new double[clusterCount];
+		for (int cluster = 0; cluster < clusterCount; cluster++) {
+			int start = clusterStarts[cluster];
+			int end = clusterStarts[cluster + 1];
+			// summed in the order of the ddt, like the weights of a cluster
+			// word list
+			double sum = 0;
+			for (int i = start; i < end; i++) {
+				sum += (clusterWordWeights[i] * clusterWordWeights[i]);
+			}
+			norms[cluster] = Math.sqrt(sum);
+			Arrays.sort(sortedClusterWordIds, start, end);
+		}
+	}
+
+	private void invalidateSortedClusterWords() {
+		sortedClusterWordIds = null;
+		norms = null;
+	}
+
+	/**
+	 * Returns the id of the word or {@link #NONE} if the word is unknown.
+	 */
+	public int getWordId(String word) {
+		Integer id = wordIds.get(word);
+		return id == null ? NONE : id;
+	}
+
+	public String getWord(int wordId) {
+		return words[wordId];
+	}
+
+	public int getVocabularySize() {
+		return vocabularySize;
+	}
+
+	/**
+	 * Number of distinct words which have at least one cluster.
+	 */
+	public int getSenseWordCount() {
+		return senseWordCount;
+	}
+
+	/**
+	 * Number of clusters, replaced clusters are not counted.
+	 */
+	public int getClusterCount() {
+		return liveClusterCount;
+	}
+
+	/**
+	 * Returns the first cluster of the given sense word or {@link #NONE} if
+	 * the word has no clusters.
+	 */
+	public int getFirstCluster(int wordId) {
+		return firstClusterOfWord[wordId];
+	}
+
+	/**
+	 * Returns the next cluster with the same sense word or {@link #NONE}.
+	 */
+	public int getNextCluster(int cluster) {
+		return nextClusterOfWord[cluster];
+	}
+
+	public int getSenseWordId(int cluster) {
+		return senseWordIds[cluster];
+	}
+
+	public int getSenseId(int cluster) {
+		return senseIds[cluster];
+	}
+
+	public int getClusterStart(int cluster) {
+		return clusterStarts[cluster];
+	}
+
+	public int getClusterEnd(int cluster) {
+		return clusterStarts[cluster + 1];
+	}
+
+	public int getClusterSize(int cluster) {
+		return clusterStarts[cluster + 1] - clusterStarts[cluster];
+	}
+
+	public int getClusterWordId(int index) {
+		return clusterWordIds[index];
+	}
+
+	public double getClusterWordWeight(int index) {
+		return clusterWordWeights[index];
+	}
+
+	/**
+	 * Returns the sense id of the cluster word or {@link #NO_SENSE_ID}.
+	 */
+	public int getClusterWordSenseId(int index) {
+		return clusterWordSenseIds[index];
+	}
+
+	/**
+	 * Word id at the given index of the sorted cluster words, see
+	 * {@link #sortClusterWords()}.
+	 */
+	public int getSortedClusterWordId(int index) {
+		return sortedClusterWordIds[index];
+	}
+
+	/**
+	 * Length of the weight vector of the cluster, see
+	 * {@link #sortClusterWords()}.
+	 */
+	public double getNorm(int cluster) {
+		return norms[cluster];
+	}
+
+	/**
+	 * Binary search on the sorted cluster words, see
+	 * {@link #sortClusterWords()}.
+	 */
+	public boolean containsClusterWord(int cluster, int wordId) {
+		return Arrays.binarySearch(sortedClusterWordIds, clusterStarts[cluster], clusterStarts[cluster + 1],
+				wordId) >= 0;
+	}
+
+	/**
+	 * Number of occurrences of the word in the cluster, a word may occur
+	 * multiple times. Binary search on the sorted cluster words, see
+	 * {@link #sortClusterWords()}.
+	 */
+	public int countClusterWord(int cluster, int wordId) {
+		int start = clusterStarts[cluster];
+		int end = clusterStarts[cluster + 1];
+		int index = Arrays.binarySearch(sortedClusterWordIds, start, end, wordId);
+		if (index < 0) {
+			return 0;
+		}
+		int first = index;
+		while (first > start && sortedClusterWordIds[first - 1] == wordId) {
+			first--;
+		}
+		int last = index + 1;
+		while (last < end && sortedClusterWordIds[last] == wordId) {
+			last++;
+		}
+		return last - first;
+	}
+
+}
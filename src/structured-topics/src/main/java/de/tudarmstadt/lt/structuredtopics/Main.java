@@ -6,7 +6,6 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.time.LocalTime;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.cli.CommandLine;
@@ -20,11 +19,21 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Stopwatch;
 
+import de.tudarmstadt.lt.structuredtopics.io.GzipIndex;
+import de.tudarmstadt.lt.structuredtopics.similarity.SimilarityPruning;
+
 public class Main {
 
 	private static final String OPTION_INPUT_FILE_NAME = "f";
 	private static final String OPTION_OUTPUT_FILE_NAME = "o";
 	private static final String OPTION_DEBUG_NAME = "d";
+	private static final String OPTION_THREADS_NAME = "t";
+	private static final String OPTION_MERGE_NAME = "m";
+	private static final String OPTION_COMPRESSION_THREADS_NAME = "z";
+	private static final String OPTION_INDEXED_GZIP_NAME = "x";
+	private static final String OPTION_SENSES_TO_KEEP_NAME = "k";
+	private static final String OPTION_SIMILARITY_THRESHOLD_NAME = "s";
+	private static final String OPTION_BINARIZE_NAME = "b";
 	private static final Logger LOG = LoggerFactory.getLogger(Main.class);
 
 	public static enum InputMode {
@@ -47,16 +56,60 @@ public class Main {
 			File output = new File(outputPath,
 					input.getName() + now.getHour() + "_" + now.getMinute() + "_" + now.getSecond() + "-sim.gz");
 			boolean debug = line.hasOption(OPTION_DEBUG_NAME);
-			LOG.info("Running with setting:\n" + "input: {}\n" + "mode: {}\n" + "output: {}\n" + "debug: {}\n",
-					input.getAbsolutePath(), inputMode, output.getAbsolutePath(), debug);
+			int threads = line.hasOption(OPTION_THREADS_NAME)
+					? Integer.parseInt(line.getOptionValue(OPTION_THREADS_NAME)) : 1;
+			if (threads < 1) {
+				throw new ParseException("Number of threads must be at least 1: " + threads);
+			}
+			boolean merge = line.hasOption(OPTION_MERGE_NAME);
+			// the shards are compressed in parallel already, one compression
+			// thread per shard unless requested otherwise
+			int compressionThreads = line.hasOption(OPTION_COMPRESSION_THREADS_NAME)
+					? Integer.parseInt(line.getOptionValue(OPTION_COMPRESSION_THREADS_NAME))
+					: threads > 1 ? 1 : Utils.DEFAULT_COMPRESSION_THREADS;
+			boolean indexedGzip = line.hasOption(OPTION_INDEXED_GZIP_NAME);
+			SimilarityPruning pruning = null;
+			if (line.hasOption(OPTION_SENSES_TO_KEEP_NAME)) {
+				double similarityThreshold = line.hasOption(OPTION_SIMILARITY_THRESHOLD_NAME)
+						? Double.parseDouble(line.getOptionValue(OPTION_SIMILARITY_THRESHOLD_NAME))
+						: SimilarityPruning.NO_THRESHOLD;
+				pruning = new SimilarityPruning(Integer.parseInt(line.getOptionValue(OPTION_SENSES_TO_KEEP_NAME)),
+						similarityThreshold, line.hasOption(OPTION_BINARIZE_NAME));
+			} else if (line.hasOption(OPTION_SIMILARITY_THRESHOLD_NAME) || line.hasOption(OPTION_BINARIZE_NAME)) {
+				throw new ParseException("-" + OPTION_SIMILARITY_THRESHOLD_NAME + " and -" + OPTION_BINARIZE_NAME
+						+ " require -" + OPTION_SENSES_TO_KEEP_NAME);
+			}
+			LOG.info(
+					"Running with setting:\n" + "input: {}\n" + "mode: {}\n" + "output: {}\n" + "debug: {}\n"
+							+ "threads: {}\n" + "merge: {}\n" + "compression threads: {}\n" + "indexed gzip: {}\n"
+							+ "pruning: {}\n",
+					input.getAbsolutePath(), inputMode, output.getAbsolutePath(), debug, threads, merge,
+					compressionThreads, indexedGzip, pruning);
 
 			Stopwatch watch = Stopwatch.createStarted();
 			LOG.debug("Reading clusters");
 			Parser parser = new Parser();
-			Map<String, Map<Integer, List<Feature>>> clusters = parser.readClusters(input, inputMode);
+			ClusterStore clusters = parser.readClusters(input, inputMode, threads);
 			LOG.info("Calculating similarities");
-			SimilarityCalculator similarityCalculator = new SimilarityCalculator();
-			similarityCalculator.calculateSimilarities(clusters, output, debug);
+			SimilarityCalculator similarityCalculator = new SimilarityCalculator(pruning);
+			if (threads > 1) {
+				File shardDir = new File(outputPath, output.getName().replace(".gz", ""));
+				List<File> shards = similarityCalculator.calculateShardedSimilarities(clusters, shardDir, threads,
+						compressionThreads, indexedGzip, debug);
+				if (merge) {
+					LOG.info("Merging {} shards into {}", shards.size(), output.getAbsolutePath());
+					Utils.concatenateFiles(shards, output);
+					for (File shard : shards) {
+						shard.delete();
+						GzipIndex.getIndexFile(shard).delete();
+					}
+					shardDir.delete();
+				} else {
+					LOG.info("Results available as shards in {}", shardDir.getAbsolutePath());
+				}
+			} else {
+				similarityCalculator.calculateSimilarities(clusters, output, compressionThreads, indexedGzip, debug);
+			}
 			LOG.info("Finished after {}s", watch.elapsed(TimeUnit.SECONDS));
 
 		} catch (ParseException e) {
@@ -82,6 +135,35 @@ public class Main {
 		options.addOption(output);
 		Option debug = Option.builder(OPTION_DEBUG_NAME).argName("debug").desc("Flag for debug output").build();
 		options.addOption(debug);
+		Option threads = Option.builder(OPTION_THREADS_NAME).argName("threads")
+				.desc("Number of threads for reading uncompressed or indexed gzip input and for the similarity calculation, "
+						+ "each thread writes its own part-NNNNN.gz shard")
+				.hasArg().type(Integer.class).build();
+		options.addOption(threads);
+		Option merge = Option.builder(OPTION_MERGE_NAME).argName("merge")
+				.desc("Flag to merge the shards of a multi-threaded run into a single file").build();
+		options.addOption(merge);
+		Option compressionThreads = Option.builder(OPTION_COMPRESSION_THREADS_NAME).argName("compression threads")
+				.desc("Number of threads for the gzip compression of the output file, or of each shard with more than one thread, "
+						+ "default: number of cores, 1 per shard")
+				.hasArg().type(Integer.class).build();
+		options.addOption(compressionThreads);
+		Option indexedGzip = Option.builder(OPTION_INDEXED_GZIP_NAME).argName("indexed gzip")
+				.desc("Write the output as line aligned gzip blocks with a .idx offset index for parallel reads")
+				.build();
+		options.addOption(indexedGzip);
+		Option sensesToKeep = Option.builder(OPTION_SENSES_TO_KEEP_NAME).argName("senses to keep")
+				.desc("Prune the output to the top n similar senses of each sense, sorted by descending similarity, default: no pruning")
+				.hasArg().type(Integer.class).build();
+		options.addOption(sensesToKeep);
+		Option similarityThreshold = Option.builder(OPTION_SIMILARITY_THRESHOLD_NAME).argName("similarity threshold")
+				.desc("Additional pruning with " + OPTION_SENSES_TO_KEEP_NAME
+						+ ": If the similarity drops below this threshold (factor to the top similarity), all further senses are pruned.")
+				.hasArg().type(Double.class).build();
+		options.addOption(similarityThreshold);
+		Option binarize = Option.builder(OPTION_BINARIZE_NAME).argName("binarize")
+				.desc("Flag to write all kept similarities as 1.0, requires " + OPTION_SENSES_TO_KEEP_NAME).build();
+		options.addOption(binarize);
 		return options;
 	}
 
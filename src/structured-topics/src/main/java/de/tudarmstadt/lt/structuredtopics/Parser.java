@@ -5,6 +5,9 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,74 +17,181 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import de.tudarmstadt.lt.structuredtopics.Main.InputMode;
+import de.tudarmstadt.lt.structuredtopics.ddts.Tokenizer;
+import de.tudarmstadt.lt.structuredtopics.io.LineRange;
 
 public class Parser {
 
 	private static final Logger LOG = LoggerFactory.getLogger(Parser.class);
 
-	public Map<String, Map<Integer, List<Feature>>> readClusters(File input, InputMode mode) {
+	public ClusterStore readClusters(File input, InputMode mode) {
+		return readClusters(input, mode, 1);
+	}
+
+	/**
+	 * Reads the clusters with the given number of threads. Uncompressed files
+	 * are split into one byte range per thread (see {@link LineRange}), each
+	 * range is parsed into its own store and the stores are merged in file
+	 * order. The result is the same as reading the file on a single thread.
+	 * Compressed files are only read in parallel if they have a
+	 * {@link de.tudarmstadt.lt.structuredtopics.io.GzipIndex}.
+	 */
+	public ClusterStore readClusters(File input, InputMode mode, int threads) {
 		LOG.info("Reading clusters from {}", input.getAbsolutePath());
-		Map<String, Map<Integer, List<Feature>>> senseClusterWords = Maps.newHashMapWithExpectedSize(1000000);
-		int lineNumber = 1;
-		try (BufferedReader in = Utils.openReader(input, mode)) {
+		ClusterStore clusters;
+		// the byte ranges rely on the file extension to detect compression
+		boolean splittable = (mode == InputMode.GZ) == input.getName().endsWith(".gz")
+				&& LineRange.isSplittable(input);
+		if (threads <= 1 || !splittable) {
+			clusters = new ClusterStore(1000000);
+			try (BufferedReader in = Utils.openReader(input, mode)) {
+				readClusters(in, true, "", clusters);
+			} catch (IOException e) {
+				LOG.error("Error while reading {}", input.getAbsolutePath(), e);
+			}
+		} else {
+			clusters = readClustersParallel(input, threads);
+		}
+		clusters.trimToSize();
+		LOG.info("Read {} clusters of {} sense words, vocabulary size: {}", clusters.getClusterCount(),
+				clusters.getSenseWordCount(), clusters.getVocabularySize());
+		return clusters;
+	}
+
+	private ClusterStore readClustersParallel(File input, int threads) {
+		ClusterStore clusters = new ClusterStore(1000000);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<ClusterStore>> futures = Lists.newArrayList();
+			for (LineRange range : LineRange.split(input, threads)) {
+				futures.add(executor.submit(() -> {
+					ClusterStore rangeClusters = new ClusterStore(1000000 / threads);
+					try (BufferedReader in = range.openReader(input)) {
+						// only the first range contains the header
+						readClusters(in, range.getIndex() == 0, "range " + range.getIndex() + ", ", rangeClusters);
+					}
+					return rangeClusters;
+				}));
+			}
+			// merge in file order, later ranges are still parsed meanwhile
+			for (Future<ClusterStore> future : futures) {
+				clusters.addAll(future.get());
+			}
+		} catch (Exception e) {
+			LOG.error("Error while reading {}", input.getAbsolutePath(), e);
+		} finally {
+			executor.shutdownNow();
+		}
+		return clusters;
+	}
+
+	/**
+	 * Adds the clusters of all lines of the reader. Line numbers are relative
+	 * to the start of the reader.
+	 */
+	private void readClusters(BufferedReader in, boolean skipHeader, String logPrefix, ClusterStore clusters) {
+		int lineNumber = 0;
+		try {
 			String line = null;
-			// skip first line
-			line = in.readLine();
+			if (skipHeader) {
+				// skip first line
+				line = in.readLine();
+				lineNumber++;
+			}
 			while ((line = in.readLine()) != null) {
 				lineNumber++;
-				addClusterFromLine(line, lineNumber, senseClusterWords);
+				addClusterFromLine(line, lineNumber, clusters);
 				if (lineNumber % 10000 == 0) {
-					LOG.info("Progess, line {}", lineNumber);
+					LOG.info("Progess, {}line {}", logPrefix, lineNumber);
 				}
 			}
 		} catch (Exception e) {
-			LOG.error("Line {} seems to be invalid which caused an error", lineNumber, e);
+			LOG.error("Line {}{} seems to be invalid which caused an error", logPrefix, lineNumber, e);
 		}
-		return senseClusterWords;
 	}
 
+	protected void addClusterFromLine(String line, int lineNumber, ClusterStore clusters) {
+		parseClusterFromLine(line, lineNumber, clusters::addCluster);
+	}
+
+	/**
+	 * Object based variant of {@link #addClusterFromLine(String, int,
+	 * ClusterStore)}, only suitable for small inputs.
+	 */
 	@VisibleForTesting
 	protected void addClusterFromLine(String line, int lineNumber,
 			Map<String, Map<Integer, List<Feature>>> senseClusterWords) {
-		String[] columns = line.split("\\t");
-		if (columns.length < 3) {
+		parseClusterFromLine(line, lineNumber, (sense, senseId, words, weights, wordSenseIds, size) -> {
+			List<Feature> features = Lists.newArrayListWithCapacity(size);
+			for (int i = 0; i < size; i++) {
+				Integer wordSenseId = wordSenseIds[i] == ClusterStore.NO_SENSE_ID ? null : wordSenseIds[i];
+				features.add(new Feature(words[i], weights[i], wordSenseId));
+			}
+			addSenseCluster(senseClusterWords, sense, senseId, features);
+		});
+	}
+
+	/**
+	 * Receives the parsed cluster of a line, only the first <code>size</code>
+	 * entries of the arrays are valid.
+	 */
+	private static interface ClusterConsumer {
+		void accept(String sense, int senseId, String[] words, double[] weights, int[] wordSenseIds, int size);
+	}
+
+	private void parseClusterFromLine(String line, int lineNumber, ClusterConsumer consumer) {
+		// same columns as line.split("\\t"), at least three columns required
+		int length = line.length();
+		int firstTab = line.indexOf('\t');
+		int secondTab = firstTab == -1 ? -1 : line.indexOf('\t', firstTab + 1);
+		if (secondTab == -1 || !containsNonTab(line, secondTab + 1, length)) {
 			LOG.warn("Line {} seems to be invalid (missing columns):\n'{}", lineNumber, line);
 			return;
 		}
-		String sense = columns[0];
-		Integer senseId = null;
+		int thirdTab = line.indexOf('\t', secondTab + 1);
+		if (thirdTab == -1) {
+			thirdTab = length;
+		}
+		String sense = line.substring(0, firstTab);
+		int senseId;
 		try {
-			senseId = Integer.valueOf(columns[1]);
+			senseId = Tokenizer.parseInt(line, firstTab + 1, secondTab);
 		} catch (NumberFormatException e) {
 			LOG.warn("Line {} seems to be invalid (sense id number):\n'{}", lineNumber, line);
 			return;
 		}
-		List<Feature> features = Lists.newArrayList();
-		String[] featuresRaw = columns[2].split(",\\s*");
-		for (int i = 0; i < featuresRaw.length; i++) {
-			String rawFeature = featuresRaw[i];
+		Tokenizer featuresRaw = Tokenizer.onCommaAndWhitespace().reset(line, secondTab + 1, thirdTab);
+		Tokenizer wordSenseIdWeight = Tokenizer.onChar(':');
+		int featureCount = featuresRaw.count();
+		String[] words = new String[featureCount];
+		double[] weights = new double[featureCount];
+		int[] wordSenseIds = new int[featureCount];
+		int size = 0;
+		for (int i = 0; featuresRaw.next(); i++) {
+			int featureStart = featuresRaw.start();
+			int featureEnd = featuresRaw.end();
 			// features have either the format
 			// 'word#posTag#index:weight' or 'word#posTag'
 			// weight is the last part, avoid splitting words containing
 			// '#'
-			int lastHash = rawFeature.lastIndexOf("#");
+			int lastHash = Tokenizer.lastIndexOf(line, '#', featureStart, featureEnd);
 			String word;
-			String weightString = "";
-			if (lastHash <= 0) {
+			if (lastHash <= featureStart) {
 				// too noise, use only for debugging purpose
 				// LOG.warn("Missing hash in line {}", lineNumber);
 				continue;
 			}
 			// weight or postag
-			weightString = rawFeature.substring(lastHash + 1, rawFeature.length());
-			String[] wordSenseIdWeight = weightString.split(":");
+			wordSenseIdWeight.reset(line, lastHash + 1, featureEnd);
 			double weight;
-			Integer wordSenseId = null;
-			if (wordSenseIdWeight.length == 2) {
-				word = rawFeature.substring(0, lastHash).trim();
+			int wordSenseId = ClusterStore.NO_SENSE_ID;
+			if (wordSenseIdWeight.count() == 2) {
+				word = trim(line, featureStart, lastHash);
 				try {
-					wordSenseId = Integer.parseInt(wordSenseIdWeight[0]);
-					weight = Double.valueOf(wordSenseIdWeight[1]);
+					wordSenseIdWeight.next();
+					wordSenseId = Tokenizer.parseInt(line, wordSenseIdWeight.start(), wordSenseIdWeight.end());
+					wordSenseIdWeight.next();
+					weight = Tokenizer.parseDouble(line, wordSenseIdWeight.start(), wordSenseIdWeight.end());
 				} catch (NumberFormatException e) {
 					LOG.warn("Line {} seems to be invalid (feature weight):\n'{}", lineNumber, line);
 					weight = 1;
@@ -89,12 +199,37 @@ public class Parser {
 			} else {
 				// no weights
 				// +1 -> avoid weight 0 for last word
-				weight = ((double) featuresRaw.length - i + 1) / (featuresRaw.length + 1);
-				word = rawFeature;
+				weight = ((double) featureCount - i + 1) / (featureCount + 1);
+				word = trim(line, featureStart, featureEnd);
+			}
+			words[size] = word;
+			weights[size] = weight;
+			wordSenseIds[size] = wordSenseId;
+			size++;
+		}
+		consumer.accept(sense, senseId, words, weights, wordSenseIds, size);
+	}
+
+	private static boolean containsNonTab(String line, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (line.charAt(i) != '\t') {
+				return true;
 			}
-			features.add(new Feature(word.trim(), weight, wordSenseId));
 		}
-		addSenseCluster(senseClusterWords, sense, senseId, features);
+		return false;
+	}
+
+	/**
+	 * Same as {@link String#trim()} on the region.
+	 */
+	private static String trim(String line, int from, int to) {
+		while (from < to && line.charAt(from) <= ' ') {
+			from++;
+		}
+		while (to > from && line.charAt(to - 1) <= ' ') {
+			to--;
+		}
+		return line.substring(from, to);
 	}
 
 	private Map<Integer, List<Feature>> addSenseCluster(Map<String, Map<Integer, List<Feature>>> senseClusterWords,
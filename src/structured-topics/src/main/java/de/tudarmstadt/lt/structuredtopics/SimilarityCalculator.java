@@ -5,124 +5,250 @@ import java.io.File;
 import java.io.IOException;
 import java.time.LocalTime;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+
+import de.tudarmstadt.lt.structuredtopics.io.WriterOptions;
+import de.tudarmstadt.lt.structuredtopics.similarity.SimilarityPruning;
+import de.tudarmstadt.lt.structuredtopics.similarity.SimilarityPruning.TopSimilarities;
 
 public class SimilarityCalculator {
 
 	private static final Logger LOG = LoggerFactory.getLogger(SimilarityCalculator.class);
 
-	public void calculateSimilarities(Map<String, Map<Integer, List<Feature>>> clusters, File output, boolean debug) {
-		try (BufferedWriter out = Utils.openGzipWriter(output)) {
+	private static final int SENSE_WORDS_PER_TASK = 256;
+
+	private final SimilarityPruning pruning;
+
+	public SimilarityCalculator() {
+		this(null);
+	}
+
+	/**
+	 * @param pruning
+	 *            prunes the similar senses of each sense while writing, the
+	 *            kept similarities are sorted by descending similarity. null
+	 *            writes all similarities. Debug output is not written with
+	 *            pruning.
+	 */
+	public SimilarityCalculator(SimilarityPruning pruning) {
+		this.pruning = pruning;
+	}
+
+	public void calculateSimilarities(ClusterStore clusters, File output, boolean debug) {
+		calculateSimilarities(clusters, output, Utils.DEFAULT_COMPRESSION_THREADS, debug);
+	}
+
+	public void calculateSimilarities(ClusterStore clusters, File output, int compressionThreads, boolean debug) {
+		calculateSimilarities(clusters, output, compressionThreads, false, debug);
+	}
+
+	/**
+	 * @param indexedGzip
+	 *            write the output with a
+	 *            {@link de.tudarmstadt.lt.structuredtopics.io.GzipIndex}
+	 */
+	public void calculateSimilarities(ClusterStore clusters, File output, int compressionThreads, boolean indexedGzip,
+			boolean debug) {
+		clusters.sortClusterWords();
+		try (BufferedWriter out = Utils.openWriter(output,
+				new WriterOptions().gzip(true).compressionThreads(compressionThreads).indexed(indexedGzip))) {
 			writeSimilarities(clusters, out, debug);
 		} catch (Exception e) {
 			Throwables.propagate(e);
 		}
 	}
 
-	private void writeSimilarities(Map<String, Map<Integer, List<Feature>>> clusters, BufferedWriter out, boolean debug)
-			throws IOException {
-		int count = 0;
+	/**
+	 * Calculates the similarities with the given number of threads. The sense
+	 * words are distributed over the threads in small chunks, each thread
+	 * writes to its own shard <code>part-NNNNN.gz</code> in the shard
+	 * directory. The shards can be combined with
+	 * {@link Utils#concatenateFiles(List, File)}, which keeps the gzip index
+	 * if requested.
+	 *
+	 * @param threads
+	 *            at least 1
+	 * @return the shards, one per thread
+	 */
+	public List<File> calculateShardedSimilarities(ClusterStore clusters, File shardDir, int threads,
+			boolean indexedGzip, boolean debug) {
+		return calculateShardedSimilarities(clusters, shardDir, threads, 1, indexedGzip, debug);
+	}
+
+	/**
+	 * Same as
+	 * {@link #calculateShardedSimilarities(ClusterStore, File, int, boolean, boolean)}
+	 * with parallel compression of each shard.
+	 *
+	 * @param compressionThreads
+	 *            gzip compression threads of each shard
+	 */
+	public List<File> calculateShardedSimilarities(ClusterStore clusters, File shardDir, int threads,
+			int compressionThreads, boolean indexedGzip, boolean debug) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Number of threads must be at least 1: " + threads);
+		}
+		clusters.sortClusterWords();
+		if (!shardDir.exists()) {
+			shardDir.mkdirs();
+		}
+		List<File> shards = Lists.newArrayList();
+		for (int i = 0; i < threads; i++) {
+			shards.add(new File(shardDir, String.format("part-%05d.gz", i)));
+		}
+		AtomicInteger nextSenseWord = new AtomicInteger();
+		AtomicInteger count = new AtomicInteger();
 		Stopwatch watch = Stopwatch.createStarted();
-		Set<Entry<String, Map<Integer, List<Feature>>>> entrySet = clusters.entrySet();
-		int total = entrySet.size();
-		for (Entry<String, Map<Integer, List<Feature>>> sense : entrySet) {
-			if (count++ % 1000 == 0) {
-				double progress = (double) count / total;
-				long elapsed = watch.elapsed(TimeUnit.SECONDS);
-				long estimatedRemaining = (long) (elapsed * (1 / progress)) - elapsed;
-				LOG.info("Similarity, progress {}/{}. Approximately finished at {}", count, total,
-						LocalTime.now().plusSeconds(estimatedRemaining).toString());
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> futures = Lists.newArrayList();
+			for (File shard : shards) {
+				futures.add(executor.submit(() -> {
+					try (BufferedWriter out = Utils.openWriter(shard, new WriterOptions().gzip(true)
+							.compressionThreads(compressionThreads).indexed(indexedGzip))) {
+						writeSimilarities(clusters, out, nextSenseWord, count, watch, debug);
+					}
+					return null;
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
 			}
-			String senseName = sense.getKey();
-			writeSimilaritiesForSense(clusters, out, sense, senseName, debug);
+		} catch (Exception e) {
+			Throwables.propagate(e);
+		} finally {
+			executor.shutdownNow();
 		}
+		return shards;
 	}
 
-	private void writeSimilaritiesForSense(Map<String, Map<Integer, List<Feature>>> clusters, BufferedWriter out,
-			Entry<String, Map<Integer, List<Feature>>> sense, String senseName, boolean debug) throws IOException {
-		for (Entry<Integer, List<Feature>> senseIdClusters : sense.getValue().entrySet()) {
-			Integer senseId = senseIdClusters.getKey();
-			List<Feature> clusterWords1 = senseIdClusters.getValue();
-			for (Feature feature : clusterWords1) {
-				writeSimilarityForClusterWord(clusters, out, senseName, senseId, clusterWords1, feature.getWord(),
-						debug);
+	private void writeSimilarities(ClusterStore clusters, BufferedWriter out, boolean debug) throws IOException {
+		writeSimilarities(clusters, out, new AtomicInteger(), new AtomicInteger(), Stopwatch.createStarted(), debug);
+	}
+
+	/**
+	 * Processes chunks of sense words until all sense words are taken. May be
+	 * called from multiple threads with the same counters.
+	 */
+	private void writeSimilarities(ClusterStore clusters, BufferedWriter out, AtomicInteger nextSenseWord,
+			AtomicInteger count, Stopwatch watch, boolean debug) throws IOException {
+		int total = clusters.getSenseWordCount();
+		int vocabularySize = clusters.getVocabularySize();
+		TopSimilarities top = pruning != null ? pruning.newTopSimilarities() : null;
+		int start;
+		while ((start = nextSenseWord.getAndAdd(SENSE_WORDS_PER_TASK)) < vocabularySize) {
+			int end = Math.min(start + SENSE_WORDS_PER_TASK, vocabularySize);
+			for (int senseWordId = start; senseWordId < end; senseWordId++) {
+				if (clusters.getFirstCluster(senseWordId) == ClusterStore.NONE) {
+					// only a cluster word
+					continue;
+				}
+				int current = count.getAndIncrement();
+				if (current % 1000 == 0) {
+					logProgress(current + 1, total, watch);
+				}
+				writeSimilaritiesForSense(clusters, out, senseWordId, top, debug);
 			}
 		}
 	}
 
-	private void writeSimilarityForClusterWord(Map<String, Map<Integer, List<Feature>>> clusters, BufferedWriter out,
-			String senseName, Integer senseId, List<Feature> clusterWords1, String word, boolean debug)
-			throws IOException {
-		Map<Integer, List<Feature>> possibleSensesForClusterWord = clusters.get(word);
-		if (possibleSensesForClusterWord == null) {
+	private void logProgress(int count, int total, Stopwatch watch) {
+		double progress = (double) count / total;
+		long elapsed = watch.elapsed(TimeUnit.SECONDS);
+		long estimatedRemaining = (long) (elapsed * (1 / progress)) - elapsed;
+		LOG.info("Similarity, progress {}/{}. Approximately finished at {}", count, total,
+				LocalTime.now().plusSeconds(estimatedRemaining).toString());
+	}
+
+	/**
+	 * @param top
+	 *            collects the similarities of each sense for the pruning, null
+	 *            without pruning
+	 */
+	private void writeSimilaritiesForSense(ClusterStore clusters, BufferedWriter out, int senseWordId,
+			TopSimilarities top, boolean debug) throws IOException {
+		String senseName = clusters.getWord(senseWordId);
+		for (int cluster = clusters.getFirstCluster(senseWordId); cluster != ClusterStore.NONE; cluster = clusters
+				.getNextCluster(cluster)) {
+			int senseId = clusters.getSenseId(cluster);
+			for (int i = clusters.getClusterStart(cluster); i < clusters.getClusterEnd(cluster); i++) {
+				writeSimilarityForClusterWord(clusters, out, senseName, senseId, cluster, clusters.getClusterWordId(i),
+						top, debug);
+			}
+			if (top != null) {
+				top.write(senseName + "#" + senseId, out);
+			}
+		}
+	}
+
+	private void writeSimilarityForClusterWord(ClusterStore clusters, BufferedWriter out, String senseName,
+			int senseId, int cluster1, int wordId, TopSimilarities top, boolean debug) throws IOException {
+		int cluster2 = clusters.getFirstCluster(wordId);
+		if (cluster2 == ClusterStore.NONE) {
 			// false assumption, jo != bim. needs algorithm rework to compare
 			// two clusters
 			return;
 		}
-		for (Entry<Integer, List<Feature>> senseForWord : possibleSensesForClusterWord.entrySet()) {
-			Integer wordSenseId = senseForWord.getKey();
-			List<Feature> clusterWords2 = senseForWord.getValue();
-			double similarity = computeSimilarity(clusterWords1, clusterWords2);
-			if (similarity != 0) {
+		String word = clusters.getWord(wordId);
+		for (; cluster2 != ClusterStore.NONE; cluster2 = clusters.getNextCluster(cluster2)) {
+			int wordSenseId = clusters.getSenseId(cluster2);
+			double similarity = computeSimilarity(clusters, cluster1, cluster2);
+			if (similarity != 0 && top != null) {
+				top.add(word + "#" + wordSenseId, similarity);
+			} else if (similarity != 0) {
 				out.append(senseName + "#" + senseId + "\t" + word + "#" + wordSenseId + "\t" + similarity);
 				out.append("\n");
 				if (debug) {
-					appendSimilarWords(out, clusterWords1, clusterWords2);
+					appendSimilarWords(clusters, out, cluster1, cluster2);
 				}
 			}
 
 		}
 	}
 
-	private void appendSimilarWords(BufferedWriter out, List<Feature> clusterWords1, List<Feature> clusterWords2)
+	private void appendSimilarWords(ClusterStore clusters, BufferedWriter out, int cluster1, int cluster2)
 			throws IOException {
 		out.append("\t");
-		for (Feature cw1 : clusterWords1) {
-			if (containsFeatureWord(clusterWords2, cw1)) {
-				out.append(cw1.getWord()).append(", ");
-			}
-		}
-	}
-
-	private boolean containsFeatureWord(List<Feature> clusterWords, Feature cw) {
-		for (Feature f : clusterWords) {
-			if (f.getWord().equals(cw.getWord())) {
-				return true;
+		for (int i = clusters.getClusterStart(cluster1); i < clusters.getClusterEnd(cluster1); i++) {
+			int wordId = clusters.getClusterWordId(i);
+			if (clusters.containsClusterWord(cluster2, wordId)) {
+				out.append(clusters.getWord(wordId)).append(", ");
 			}
 		}
-		return false;
 	}
 
-	private double computeSimilarity(List<Feature> clusterWords1, List<Feature> clusterWords2) {
-
+	/**
+	 * Sum of the squared weights of the words of the first cluster which are
+	 * also contained in the second cluster (counted once per occurrence in the
+	 * second cluster), divided by the sum of the vector lengths. The
+	 * occurrences are found by a binary search on the sorted cluster words of
+	 * the second cluster, see {@link ClusterStore#sortClusterWords()}. The
+	 * weights are summed in the order of the first cluster like the previous
+	 * nested loops, so the similarities are the same to the last digit.
+	 */
+	@VisibleForTesting
+	static double computeSimilarity(ClusterStore clusters, int cluster1, int cluster2) {
 		double commonWeights = 0;
-		for (int i = 0; i < clusterWords1.size(); i++) {
-			Feature f = clusterWords1.get(i);
-			String word = f.getWord();
+		for (int i = clusters.getClusterStart(cluster1); i < clusters.getClusterEnd(cluster1); i++) {
+			int matches = clusters.countClusterWord(cluster2, clusters.getClusterWordId(i));
+			double weight = clusters.getClusterWordWeight(i);
 			// TODO weight words
-			for (Feature f2 : clusterWords2) {
-				if (f2.getWord().equals(word)) {
-					commonWeights += f.getWeight() * f.getWeight();
-				}
+			for (int match = 0; match < matches; match++) {
+				commonWeights += weight * weight;
 			}
 		}
-		return commonWeights / (vectorLength(clusterWords1) + vectorLength(clusterWords2));
-	}
-
-	private double vectorLength(List<Feature> clusterWords) {
-		double sum = 0;
-		for (Feature f : clusterWords) {
-			sum += (f.getWeight() * f.getWeight());
-		}
-		return Math.sqrt(sum);
+		return commonWeights / (clusters.getNorm(cluster1) + clusters.getNorm(cluster2));
 	}
 }
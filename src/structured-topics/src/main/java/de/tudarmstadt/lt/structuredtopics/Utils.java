@@ -11,14 +11,15 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.nio.file.Files;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -26,64 +27,84 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+
 import de.tudarmstadt.lt.structuredtopics.Main.InputMode;
+import de.tudarmstadt.lt.structuredtopics.ddts.BinaryDDT;
+import de.tudarmstadt.lt.structuredtopics.ddts.BinaryDDTWriter;
 import de.tudarmstadt.lt.structuredtopics.ddts.ClusterWord;
+import de.tudarmstadt.lt.structuredtopics.ddts.FilterChain;
 import de.tudarmstadt.lt.structuredtopics.ddts.Sense;
 import de.tudarmstadt.lt.structuredtopics.ddts.SenseCluster;
 import de.tudarmstadt.lt.structuredtopics.ddts.SingleWord;
+import de.tudarmstadt.lt.structuredtopics.ddts.WordFilter;
+import de.tudarmstadt.lt.structuredtopics.io.FileMetadata;
+import de.tudarmstadt.lt.structuredtopics.io.GzipIndex;
+import de.tudarmstadt.lt.structuredtopics.io.IndexedGzipLineReader;
+import de.tudarmstadt.lt.structuredtopics.io.LineReader;
+import de.tudarmstadt.lt.structuredtopics.io.MappedLineReader;
+import de.tudarmstadt.lt.structuredtopics.io.MetadataWriter;
+import de.tudarmstadt.lt.structuredtopics.io.ParallelGZIPOutputStream;
+import de.tudarmstadt.lt.structuredtopics.io.ReaderLineReader;
+import de.tudarmstadt.lt.structuredtopics.io.WriterOptions;
 
 public class Utils {
 
 	private static final Logger LOG = LoggerFactory.getLogger(Utils.class);
 
-	private static interface Filter {
+	/**
+	 * Number of compression threads for large outputs like similarity files.
+	 */
+	public static final int DEFAULT_COMPRESSION_THREADS = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Number of threads for parsing, filtering and indexing.
+	 */
+	public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Filter for the words of senses and cluster words, see
+	 * {@link Utils#filterCluster(SenseCluster, Filter)}.
+	 */
+	public static interface Filter {
+		/**
+		 * @return true if the words should be removed
+		 */
 		boolean filter(List<SingleWord> words);
 	}
 
-	protected static class PosTagFilter implements Filter {
+	/**
+	 * Removes words without one of the pos tags.
+	 */
+	public static class PosTagFilter implements Filter {
 
-		private Set<String> tags;
+		private final FilterChain filter;
 
 		public PosTagFilter(Set<String> tags) {
-			this.tags = tags;
+			this.filter = new FilterChain(Lists.newArrayList(WordFilter.posTags(tags)));
 		}
 
 		@Override
 		public boolean filter(List<SingleWord> words) {
-			for (String tag : tags) {
-				for (SingleWord w : words)
-					if (!tag.equalsIgnoreCase(w.getPos())) {
-						return true;
-					}
-			}
-			return false;
+			return filter.filter(words);
 		}
 	}
 
-	protected static class RegexFilter implements Filter {
+	/**
+	 * Removes words which do not match the regex. Thread-safe, each thread uses
+	 * its own matcher.
+	 */
+	public static class RegexFilter implements Filter {
 
-		private Matcher matcher;
+		private final FilterChain filter;
 
 		public RegexFilter(String regex) {
-			this.matcher = Pattern.compile(regex).matcher("");
+			this.filter = new FilterChain(Lists.newArrayList(WordFilter.regex(regex)));
 		}
 
 		@Override
 		public boolean filter(List<SingleWord> words) {
-			for (SingleWord cw : words) {
-				String word = cw.getText();
-				int indexOfFirstHash = word.indexOf("#");
-				if (indexOfFirstHash != -1) {
-					String withoutPosTag = word.substring(0, indexOfFirstHash);
-					matcher.reset(withoutPosTag);
-				} else {
-					matcher.reset(word);
-				}
-				if (!matcher.matches()) {
-					return true;
-				}
-			}
-			return false;
+			return filter.filter(words);
 		}
 
 	}
@@ -97,12 +118,77 @@ public class Utils {
 		return new BufferedReader(reader);
 	}
 
+	/**
+	 * Opens a {@link LineReader} for the file. Uncompressed files are memory
+	 * mapped, gzip files are decompressed, see {@link #isGzip(File)}. Blocked
+	 * gzip files with a {@link GzipIndex} are decompressed on multiple
+	 * threads, see {@link #openLineReader(File, int)}.
+	 */
+	public static LineReader openLineReader(File file) throws IOException {
+		return openLineReader(file, DEFAULT_THREADS);
+	}
+
+	/**
+	 * Same as {@link #openLineReader(File)}, blocked gzip files are
+	 * decompressed on the given number of threads.
+	 */
+	public static LineReader openLineReader(File file, int threads) throws IOException {
+		if (isGzip(file)) {
+			GzipIndex index = GzipIndex.load(file);
+			if (index != null) {
+				return new IndexedGzipLineReader(file, index, Math.max(1, threads));
+			}
+			Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(file), 64 * 1024), "UTF-8");
+			return new ReaderLineReader(reader);
+		}
+		return new MappedLineReader(file);
+	}
+
+	/**
+	 * True if the file starts with the gzip magic bytes, independent of its
+	 * name.
+	 */
+	public static boolean isGzip(File file) throws IOException {
+		try (InputStream in = new FileInputStream(file)) {
+			return in.read() == 0x1f && in.read() == 0x8b;
+		}
+	}
+
 	public static BufferedWriter openWriter(File file, boolean append) throws IOException {
-		OutputStream out = new FileOutputStream(file, append);
-		if (file.getName().endsWith(".gz")) {
+		return openWriter(file, new WriterOptions().append(append));
+	}
+
+	/**
+	 * Opens a writer for the file, compressed, indexed or with metadata
+	 * depending on the options.
+	 */
+	public static BufferedWriter openWriter(File file, WriterOptions options) throws IOException {
+		boolean gzip = options.isGzip(file);
+		Map<String, String> settings = options.getSettings();
+		if (options.isAppend() && ((gzip && options.isIndexed()) || settings != null)) {
+			throw new IllegalArgumentException("Indexed gzip files and files with metadata can not be appended: "
+					+ file);
+		}
+		int compressionThreads = options.getCompressionThreads();
+		OutputStream out = new FileOutputStream(file, options.isAppend());
+		CRC32 checksum = null;
+		if (settings != null) {
+			// checksum of the bytes as stored
+			checksum = new CRC32();
+			out = new CheckedOutputStream(out, checksum);
+		}
+		if (gzip && options.isIndexed()) {
+			out = new ParallelGZIPOutputStream(out, Math.max(1, compressionThreads),
+					ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE, file);
+		} else if (gzip && compressionThreads > 1) {
+			out = new ParallelGZIPOutputStream(out, compressionThreads);
+		} else if (gzip) {
 			out = new GZIPOutputStream(out);
 		}
 		Writer writer = new OutputStreamWriter(out, "UTF-8");
+		if (settings != null) {
+			writer = new MetadataWriter(writer, file, checksum, settings);
+		}
 		return new BufferedWriter(writer);
 	}
 
@@ -118,10 +204,7 @@ public class Utils {
 
 	@Deprecated
 	public static BufferedWriter openGzipWriter(File output) throws IOException {
-		OutputStream out = new FileOutputStream(output);
-		out = new GZIPOutputStream(out);
-		Writer writer = new OutputStreamWriter(out, "UTF-8");
-		return new BufferedWriter(writer);
+		return openWriter(output, new WriterOptions().gzip(true));
 	}
 
 	public static void filterClustersByPosTag(List<SenseCluster> clusters, Set<String> tags) {
@@ -135,62 +218,64 @@ public class Utils {
 	}
 
 	private static void filterClusters(List<SenseCluster> clusters, Filter filter) {
-		int removedClusterWords = 0;
-		int removedSenses = 0;
-		for (int i = clusters.size() - 1; i >= 0; i--) {
-			if (i % 1000 == 0) {
-				LOG.info("Filtering cluster {}/{}", clusters.size() - 1 - i, clusters.size());
-			}
-			SenseCluster cluster = clusters.get(i);
-			Sense sense = cluster.getSense();
-			boolean keepSenseWord = false;
-			try {
-				if (!filter.filter(sense.getWords())) {
-					keepSenseWord = true;
-				}
-			} catch (Exception e) {
-				LOG.error("Filter {} threw an exeption while filtering word {}. Word will be removed",
-						filter.getClass(), sense.getFullWord(), e);
+		int total = clusters.size();
+		int[] count = { 0, 0 };
+		// removeIf compacts the list in one pass instead of removing each
+		// filtered sense from the middle
+		clusters.removeIf(cluster -> {
+			if (count[0]++ % 1000 == 0) {
+				LOG.info("Filtering cluster {}/{}", count[0] - 1, total);
 			}
-			if (keepSenseWord) {
-				// filter cluster words
-				List<ClusterWord> clusterWords = cluster.getClusterWords();
-				for (int j = clusterWords.size() - 1; j >= 0; j--) {
-					ClusterWord clusterWord = clusterWords.get(j);
-					if (filter.filter(clusterWord.getWords())) {
-						clusterWords.remove(j);
-						removedClusterWords++;
-					}
-				}
-				// if no words left -> remove sense
-				if (clusterWords.isEmpty()) {
-					clusters.remove(i);
-					removedSenses++;
-				}
-			} else {
-				clusters.remove(i);
-				removedSenses++;
+			int clusterWordsBefore = cluster.getClusterWords().size();
+			boolean keep = filterCluster(cluster, filter);
+			count[1] += clusterWordsBefore - cluster.getClusterWords().size();
+			return !keep;
+		});
+		LOG.info("Filtered {} cluster words and {} entire senses", count[1], total - clusters.size());
+	}
+
+	/**
+	 * Applies the filter to a single cluster: the cluster words which are
+	 * filtered are removed from the cluster.
+	 *
+	 * @return false if the entire cluster should be removed, because the
+	 *         sense is filtered or no cluster words are left
+	 */
+	public static boolean filterCluster(SenseCluster cluster, Filter filter) {
+		Sense sense = cluster.getSense();
+		boolean keepSenseWord = false;
+		try {
+			if (!filter.filter(sense.getWords())) {
+				keepSenseWord = true;
 			}
+		} catch (Exception e) {
+			LOG.error("Filter {} threw an exeption while filtering word {}. Word will be removed", filter.getClass(),
+					sense.getFullWord(), e);
 		}
-		LOG.info("Filtered {} cluster words and {} entire senses", removedClusterWords, removedSenses);
+		if (!keepSenseWord) {
+			return false;
+		}
+		List<ClusterWord> clusterWords = cluster.getClusterWords();
+		clusterWords.removeIf(clusterWord -> filter.filter(clusterWord.getWords()));
+		// if no words left -> remove sense
+		return !clusterWords.isEmpty();
 	}
 
-	public static void writeClustersToFile(Map<String, Map<Integer, List<Feature>>> clusters, File out)
-			throws IOException {
+	public static void writeClustersToFile(ClusterStore clusters, File out) throws IOException {
 		try (BufferedWriter writer = openGzipWriter(out)) {
-			for (Entry<String, Map<Integer, List<Feature>>> senseClusters : clusters.entrySet()) {
-				String senseWord = senseClusters.getKey();
-				for (Entry<Integer, List<Feature>> senseCluster : senseClusters.getValue().entrySet()) {
-					Integer senseId = senseCluster.getKey();
+			for (int senseWordId = 0; senseWordId < clusters.getVocabularySize(); senseWordId++) {
+				String senseWord = clusters.getWord(senseWordId);
+				for (int cluster = clusters.getFirstCluster(senseWordId); cluster != ClusterStore.NONE; cluster = clusters
+						.getNextCluster(cluster)) {
 					writer.write(senseWord);
 					writer.write("\t");
-					writer.write(senseId.toString());
+					writer.write(Integer.toString(clusters.getSenseId(cluster)));
 					writer.write("\t");
-					for (Feature f : senseCluster.getValue()) {
-						if (f.getSenseId() != null) {
-							writer.write(f.getWord() + "#" + f.getSenseId() + ":" + f.getWeight());
-						} else {
-							writer.write(f.getWord());
+					for (int i = clusters.getClusterStart(cluster); i < clusters.getClusterEnd(cluster); i++) {
+						int senseId = clusters.getClusterWordSenseId(i);
+						writer.write(clusters.getWord(clusters.getClusterWordId(i)));
+						if (senseId != ClusterStore.NO_SENSE_ID) {
+							writer.write("#" + senseId + ":" + clusters.getClusterWordWeight(i));
 						}
 						writer.write(", ");
 					}
@@ -200,7 +285,19 @@ public class Utils {
 		}
 	}
 
+	/**
+	 * Writes the clusters in the DDT format, or as {@link BinaryDDT} if the
+	 * file has the suffix {@value BinaryDDT#SUFFIX}.
+	 */
 	public static void writeClustersToFile(List<SenseCluster> clusters, File file) throws IOException {
+		if (BinaryDDT.isBinary(file)) {
+			try (BinaryDDTWriter out = new BinaryDDTWriter(file)) {
+				for (SenseCluster cluster : clusters) {
+					out.write(cluster);
+				}
+			}
+			return;
+		}
 		try (BufferedWriter out = openWriter(file, false)) {
 			int count = 0;
 			for (SenseCluster cluster : clusters) {
@@ -208,33 +305,40 @@ public class Utils {
 				if (count % 1000 == 0) {
 					LOG.info("Writing cluster {}/{}", count, clusters.size());
 				}
-				StringBuilder b = new StringBuilder();
-				Sense sense = cluster.getSense();
-				List<SingleWord> words = sense.getWords();
-				appendSingleWords(b, words);
-				b.append("\t").append(sense.getSenseId()).append("\t");
-				for (int i = 0; i < cluster.getClusterWords().size(); i++) {
-					ClusterWord clusterWord = cluster.getClusterWords().get(i);
-					appendSingleWords(b, clusterWord.getWords());
-					Integer relatedSenseId = clusterWord.getRelatedSenseId();
-					if (relatedSenseId != null) {
-						b.append("#").append(relatedSenseId);
-					}
-					Double weight = clusterWord.getWeight();
-					if (weight != null) {
-						b.append(":").append(weight);
-					}
-					if (i < cluster.getClusterWords().size() - 1) {
-						b.append(", ");
-					}
-				}
-				b.append("\n");
-				out.write(b.toString());
+				writeCluster(out, cluster);
 			}
 		}
 
 	}
 
+	/**
+	 * Writes the cluster as one line in the DDT format.
+	 */
+	public static void writeCluster(Writer out, SenseCluster cluster) throws IOException {
+		StringBuilder b = new StringBuilder();
+		Sense sense = cluster.getSense();
+		List<SingleWord> words = sense.getWords();
+		appendSingleWords(b, words);
+		b.append("\t").append(sense.getSenseId()).append("\t");
+		for (int i = 0; i < cluster.getClusterWords().size(); i++) {
+			ClusterWord clusterWord = cluster.getClusterWords().get(i);
+			appendSingleWords(b, clusterWord.getWords());
+			Integer relatedSenseId = clusterWord.getRelatedSenseId();
+			if (relatedSenseId != null) {
+				b.append("#").append(relatedSenseId);
+			}
+			Double weight = clusterWord.getWeight();
+			if (weight != null) {
+				b.append(":").append(weight);
+			}
+			if (i < cluster.getClusterWords().size() - 1) {
+				b.append(", ");
+			}
+		}
+		b.append("\n");
+		out.write(b.toString());
+	}
+
 	private static void appendSingleWords(StringBuilder b, List<SingleWord> words) {
 		for (int i = 0; i < words.size(); i++) {
 			SingleWord word = words.get(i);
@@ -250,14 +354,64 @@ public class Utils {
 		}
 	}
 
+	/**
+	 * Concatenates the files byte by byte. Concatenated gzip files form a valid
+	 * multi-member gzip file, this is used to merge the shards of parallel
+	 * runs without recompressing them.
+	 */
+	public static void concatenateFiles(List<File> parts, File output) throws IOException {
+		try (OutputStream out = new FileOutputStream(output)) {
+			for (File part : parts) {
+				Files.copy(part.toPath(), out);
+			}
+		}
+		// keep the gzip index if all parts have one
+		List<GzipIndex> indices = Lists.newArrayList();
+		for (File part : parts) {
+			GzipIndex index = GzipIndex.load(part);
+			if (index == null) {
+				return;
+			}
+			indices.add(index);
+		}
+		if (!indices.isEmpty()) {
+			GzipIndex.concatenate(indices).save(output);
+		}
+	}
+
+	/**
+	 * Counts the lines of the file, files with {@link FileMetadata} or blocked
+	 * gzip files with a {@link GzipIndex} are not decompressed. The metadata is
+	 * trusted if size and modification time match the file, its checksum is
+	 * not verified. For a
+	 * {@link BinaryDDT} the number of clusters is returned.
+	 *
+	 * @throws UncheckedIOException
+	 *             if the file can not be read
+	 */
 	public static int countLines(File file) {
+		FileMetadata metadata = FileMetadata.load(file);
+		if (metadata != null) {
+			return (int) metadata.getLineCount();
+		}
+		if (BinaryDDT.isBinary(file)) {
+			try {
+				return (int) BinaryDDT.readClusterCount(file);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Error while reading the cluster count of " + file, e);
+			}
+		}
+		GzipIndex index = GzipIndex.load(file);
+		if (index != null) {
+			return (int) index.getLineCount();
+		}
 		int count = 0;
 		try (BufferedReader in = Utils.openReader(file)) {
 			while (in.readLine() != null) {
 				count++;
 			}
 		} catch (IOException e) {
-			return -1;
+			throw new UncheckedIOException("Error while counting the lines of " + file, e);
 		}
 		return count;
 	}
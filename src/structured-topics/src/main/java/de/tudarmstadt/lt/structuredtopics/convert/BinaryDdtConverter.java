@@ -0,0 +1,65 @@
+package de.tudarmstadt.lt.structuredtopics.convert;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.lt.structuredtopics.ddts.BinaryDDT;
+
+/**
+ * Converts a DDT (csv or csv.gz) into a {@link BinaryDDT}, which can be used
+ * instead of the csv file by all tools which read DDTs with
+ * {@link de.tudarmstadt.lt.structuredtopics.ddts.Parser}.
+ */
+public class BinaryDdtConverter {
+
+	private static final Logger LOG = LoggerFactory.getLogger(BinaryDdtConverter.class);
+
+	private static final String OPTION_IN_FILE = "in";
+	private static final String OPTION_OUT_FILE = "out";
+
+	public static void main(String[] args) {
+		Options options = createOptions();
+		try {
+			CommandLine cl = new DefaultParser().parse(options, args, true);
+			File input = new File(cl.getOptionValue(OPTION_IN_FILE));
+			File output = new File(cl.getOptionValue(OPTION_OUT_FILE));
+			if (!BinaryDDT.isBinary(output)) {
+				LOG.warn("Output {} does not end with {}, it will not be read as binary DDT", output,
+						BinaryDDT.SUFFIX);
+			}
+			BinaryDDT.convert(input, output);
+		} catch (ParseException e) {
+			LOG.error("Invalid arguments", e);
+			StringWriter sw = new StringWriter();
+			try (PrintWriter w = new PrintWriter(sw)) {
+				new HelpFormatter().printHelp(w, Integer.MAX_VALUE, "application", "", options, 0, 0, "", true);
+			}
+			LOG.error(sw.toString());
+		} catch (Exception e) {
+			LOG.error("Error while converting:", e);
+		}
+	}
+
+	private static Options createOptions() {
+		Options options = new Options();
+		Option input = Option.builder(OPTION_IN_FILE).argName("file").desc("The input ddt (csv or csv.gz)").hasArg()
+				.required().type(String.class).build();
+		options.addOption(input);
+		Option output = Option.builder(OPTION_OUT_FILE).argName("output file")
+				.desc("Path to the binary ddt, should end with " + BinaryDDT.SUFFIX).hasArg().required()
+				.type(String.class).build();
+		options.addOption(output);
+		return options;
+	}
+
+}
@@ -1,48 +1,158 @@
 package de.tudarmstadt.lt.structuredtopics.convert;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import de.tudarmstadt.lt.structuredtopics.Utils;
+import de.tudarmstadt.lt.structuredtopics.ddts.BinaryDDT;
+import de.tudarmstadt.lt.structuredtopics.ddts.BinaryDDTWriter;
+import de.tudarmstadt.lt.structuredtopics.ddts.FilterChain;
 import de.tudarmstadt.lt.structuredtopics.ddts.Parser;
+import de.tudarmstadt.lt.structuredtopics.ddts.Parser.DDTIterator;
 import de.tudarmstadt.lt.structuredtopics.ddts.SenseCluster;
+import de.tudarmstadt.lt.structuredtopics.ddts.WordFilter;
+import de.tudarmstadt.lt.structuredtopics.io.WriterOptions;
 
+/**
+ * Removes senses and cluster words from a DDT. Several filters can be
+ * combined, a word is kept if it passes all filters. A sense is removed if its
+ * words are filtered or if none of its cluster words are left.
+ */
 public class DdtFilter {
 
+	private static final Logger LOG = LoggerFactory.getLogger(DdtFilter.class);
+
 	public static final String WORD_REGEX = ".*[a-zA-Z]+.*";
 
+	private static final String OPTION_IN_FILE = "in";
+	private static final String OPTION_OUT_FILE = "out";
+	private static final String OPTION_POS_TAGS = "pos";
+	private static final String OPTION_LETTERS = "letters";
+	private static final String OPTION_REGEX = "regex";
+	private static final String OPTION_THREADS = "threads";
+
 	public static void main(String[] args) {
-		File ddt = new File(args[0]);
-		File out = new File(args[1]);
-		Set<String> posTags = new HashSet<>();
-		if (args.length == 3) {
-			posTags = Sets.newHashSet();
-			posTags.add(args[2]);
-		}
-		Parser parser = new Parser();
+		Options options = createOptions();
 		try {
-			List<SenseCluster> clusters = parser.parseDDT(ddt);
-			if (!posTags.isEmpty()) {
-				System.out.println("Senses: " + clusters.size());
-				System.out.println("filtering pos tags " + StringUtils.join(posTags));
-				Utils.filterClustersByPosTag(clusters, posTags);
+			CommandLine cl = new DefaultParser().parse(options, args, true);
+			File ddt = new File(cl.getOptionValue(OPTION_IN_FILE));
+			File output = new File(cl.getOptionValue(OPTION_OUT_FILE));
+			List<WordFilter> filters = Lists.newArrayList();
+			if (cl.hasOption(OPTION_POS_TAGS)) {
+				Set<String> tags = Sets.newHashSet(
+						Splitter.on(',').trimResults().omitEmptyStrings().split(cl.getOptionValue(OPTION_POS_TAGS)));
+				LOG.info("Filtering by pos tags {}", tags);
+				filters.add(WordFilter.posTags(tags));
+			}
+			if (cl.hasOption(OPTION_LETTERS)) {
+				LOG.info("Filtering words without letters");
+				filters.add(WordFilter.containsAsciiLetter());
+			}
+			if (cl.hasOption(OPTION_REGEX)) {
+				for (String regex : cl.getOptionValues(OPTION_REGEX)) {
+					LOG.info("Filtering by regex {}", regex);
+					filters.add(WordFilter.regex(regex));
+				}
+			}
+			if (filters.isEmpty()) {
+				throw new ParseException("At least one filter is required");
+			}
+			int threads = cl.hasOption(OPTION_THREADS) ? Integer.parseInt(cl.getOptionValue(OPTION_THREADS))
+					: Utils.DEFAULT_THREADS;
+			filter(ddt, output, new FilterChain(filters), threads);
+		} catch (ParseException e) {
+			LOG.error("Invalid arguments", e);
+			StringWriter sw = new StringWriter();
+			try (PrintWriter w = new PrintWriter(sw)) {
+				new HelpFormatter().printHelp(w, Integer.MAX_VALUE, "application", "", options, 0, 0, "", true);
 			}
-			System.out.println("Senses: " + clusters.size());
-			System.out.println("filtering by regex");
-			Utils.filterClustersByRegEx(clusters, WORD_REGEX);
-			System.out.println("Senses: " + clusters.size());
-			System.out.println("writing");
-			Utils.writeClustersToFile(clusters, out);
-		} catch (IOException e) {
-			e.printStackTrace();
+			LOG.error(sw.toString());
+		} catch (Exception e) {
+			LOG.error("Error while filtering:", e);
 		}
-		System.out.println("done");
+	}
+
+	/**
+	 * Filters the DDT in a single pass without loading it: each cluster is
+	 * read, filtered and written before the next one. The input is parsed and
+	 * filtered on <code>threads</code> threads ahead of the writer (see
+	 * {@link Parser#iterateDDT(File, int, java.util.function.UnaryOperator)}),
+	 * the output keeps the order of the input.
+	 *
+	 * @return number of written senses
+	 */
+	public static int filter(File ddt, File output, FilterChain filter, int threads) throws IOException {
+		int lines = 0;
+		int written = 0;
+		Map<String, String> settings = ImmutableMap.of("producer", DdtFilter.class.getName(), "input", ddt.getPath());
+		try (DDTIterator it = new Parser().iterateDDT(ddt, threads, filter::apply);
+				BinaryDDTWriter binary = BinaryDDT.isBinary(output) ? new BinaryDDTWriter(output) : null;
+				BufferedWriter text = binary == null ? Utils.openWriter(output, new WriterOptions().metadata(settings)) : null) {
+			while (it.hasNext()) {
+				// null for unparseable lines and removed senses
+				SenseCluster cluster = it.next();
+				if (++lines % 100000 == 0) {
+					LOG.info("Lines: {}, written senses: {}", lines, written);
+				}
+				if (cluster == null) {
+					continue;
+				}
+				if (binary != null) {
+					binary.write(cluster);
+				} else {
+					Utils.writeCluster(text, cluster);
+				}
+				written++;
+			}
+		}
+		LOG.info("Lines: {}, written senses: {}", lines, written);
+		return written;
+	}
+
+	private static Options createOptions() {
+		Options options = new Options();
+		Option input = Option.builder(OPTION_IN_FILE).argName("ddt").desc("The input ddt").hasArg().required()
+				.type(String.class).build();
+		options.addOption(input);
+		Option output = Option.builder(OPTION_OUT_FILE).argName("output file")
+				.desc("Path to the filtered ddt, written as binary ddt if it ends with " + BinaryDDT.SUFFIX).hasArg()
+				.required().type(String.class).build();
+		options.addOption(output);
+		Option posTags = Option.builder(OPTION_POS_TAGS).argName("pos tags")
+				.desc("Keep only words with one of the pos tags (comma separated, ignoring case)").hasArg().build();
+		options.addOption(posTags);
+		Option letters = Option.builder(OPTION_LETTERS).argName("letters")
+				.desc("Keep only words with at least one ASCII letter, same as -" + OPTION_REGEX + " '" + WORD_REGEX
+						+ "' without a regex engine")
+				.build();
+		options.addOption(letters);
+		Option regex = Option.builder(OPTION_REGEX).argName("regex")
+				.desc("Keep only words which match the regex, can be given multiple times").hasArg().build();
+		options.addOption(regex);
+		Option threads = Option.builder(OPTION_THREADS).argName("threads")
+				.desc("Number of threads which parse and filter the ddt, default: number of cores").hasArg()
+				.type(Integer.class).build();
+		options.addOption(threads);
+		return options;
 	}
 }
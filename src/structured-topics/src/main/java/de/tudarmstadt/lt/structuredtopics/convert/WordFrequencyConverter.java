@@ -3,14 +3,12 @@ package de.tudarmstadt.lt.structuredtopics.convert;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import de.tudarmstadt.lt.structuredtopics.Feature;
+import de.tudarmstadt.lt.structuredtopics.ClusterStore;
 import de.tudarmstadt.lt.structuredtopics.Main.InputMode;
 import de.tudarmstadt.lt.structuredtopics.Parser;
 import de.tudarmstadt.lt.structuredtopics.Utils;
@@ -42,24 +40,28 @@ public class WordFrequencyConverter {
 				wordFrequenciesFile.getAbsolutePath(), senseClusterWordCounts.getAbsolutePath(),
 				senseCounts.getAbsolutePath());
 		Map<String, Integer> wordFrequencies = parser.readWordFrequencies(wordFrequenciesFile, InputMode.GZ);
-		Map<String, Map<Integer, List<Feature>>> clusters = parser.readClusters(input, InputMode.GZ);
-		LOG.info("Filtering clusters, size before: {}", clusters.size());
+		ClusterStore clusters = parser.readClusters(input, InputMode.GZ);
+		LOG.info("Filtering clusters, size before: {}", clusters.getSenseWordCount());
 		// Utils.filterClustersByPosTag(clusters);
-		LOG.info("Filtered clusters, size after: {}", clusters.size());
-		int total = clusters.size();
+		LOG.info("Filtered clusters, size after: {}", clusters.getSenseWordCount());
+		int total = clusters.getSenseWordCount();
 		int count = 0;
 		LOG.info("Starting conversion for senseClusterWordCounts");
 		try (BufferedWriter out = Utils.openGzipWriter(senseClusterWordCounts)) {
-			for (Entry<String, Map<Integer, List<Feature>>> cluster : clusters.entrySet()) {
+			for (int senseWordId = 0; senseWordId < clusters.getVocabularySize(); senseWordId++) {
+				if (clusters.getFirstCluster(senseWordId) == ClusterStore.NONE) {
+					continue;
+				}
 				if (count++ % 10000 == 0) {
 					LOG.info("Progress: {}/{}", count, total);
 				}
-				String senseWord = cluster.getKey();
-				Map<Integer, List<Feature>> senses = cluster.getValue();
-				for (Entry<Integer, List<Feature>> sense : senses.entrySet()) {
-					Integer senseId = sense.getKey();
-					for (Feature feature : sense.getValue()) {
-						out.append(senseWord + "#" + senseId + "\t" + feature.getWord() + "\t" + 10);
+				String senseWord = clusters.getWord(senseWordId);
+				for (int cluster = clusters.getFirstCluster(senseWordId); cluster != ClusterStore.NONE; cluster = clusters
+						.getNextCluster(cluster)) {
+					int senseId = clusters.getSenseId(cluster);
+					for (int i = clusters.getClusterStart(cluster); i < clusters.getClusterEnd(cluster); i++) {
+						String word = clusters.getWord(clusters.getClusterWordId(i));
+						out.append(senseWord + "#" + senseId + "\t" + word + "\t" + 10);
 						out.append("\n");
 					}
 				}
@@ -68,26 +70,31 @@ public class WordFrequencyConverter {
 			e.printStackTrace();
 		}
 		LOG.info("Starting conversion for featureCounts");
+		// resolve the frequencies once per word instead of once per cluster
+		// word
+		int[] frequencyOfWord = new int[clusters.getVocabularySize()];
+		for (int wordId = 0; wordId < frequencyOfWord.length; wordId++) {
+			Integer wordFrequency = wordFrequencies.get(clusters.getWord(wordId));
+			// no hit -> assume word has frequency 1
+			frequencyOfWord[wordId] = wordFrequency != null ? wordFrequency.intValue() : 1;
+		}
 		count = 0;
 		try (BufferedWriter out = Utils.openGzipWriter(senseCounts)) {
-			for (Entry<String, Map<Integer, List<Feature>>> cluster : clusters.entrySet()) {
+			for (int senseWordId = 0; senseWordId < clusters.getVocabularySize(); senseWordId++) {
+				if (clusters.getFirstCluster(senseWordId) == ClusterStore.NONE) {
+					continue;
+				}
 				if (count++ % 10000 == 0) {
 					LOG.info("Progress: {}/{}", count, total);
 				}
-				String senseWord = cluster.getKey();
-				Map<Integer, List<Feature>> senses = cluster.getValue();
-				for (Entry<Integer, List<Feature>> sense : senses.entrySet()) {
+				String senseWord = clusters.getWord(senseWordId);
+				for (int cluster = clusters.getFirstCluster(senseWordId); cluster != ClusterStore.NONE; cluster = clusters
+						.getNextCluster(cluster)) {
 					int sum = 0;
-					for (Feature f : sense.getValue()) {
-						Integer wordFrequency = wordFrequencies.get(f.getWord());
-						if (wordFrequency != null) {
-							sum += wordFrequency.intValue();
-						} else {
-							// no hit -> assume word has frequency 1
-							sum += 1;
-						}
+					for (int i = clusters.getClusterStart(cluster); i < clusters.getClusterEnd(cluster); i++) {
+						sum += frequencyOfWord[clusters.getClusterWordId(i)];
 					}
-					Integer senseId = sense.getKey();
+					int senseId = clusters.getSenseId(cluster);
 					out.append(senseWord + "#" + senseId + "\t" + sum);
 					out.append("\n");
 				}
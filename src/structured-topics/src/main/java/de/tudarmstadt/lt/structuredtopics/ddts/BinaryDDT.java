@@ -0,0 +1,96 @@
+package de.tudarmstadt.lt.structuredtopics.ddts;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.lt.structuredtopics.ddts.Parser.DDTIterator;
+
+/**
+ * Binary container for DDTs, files with the suffix {@value #SUFFIX} are read
+ * transparently by {@link Parser}.
+ * <p>
+ * Layout (big endian, as written by {@link java.io.DataOutputStream}):
+ * <ul>
+ * <li>header: magic, version, number of clusters (long), offset of the
+ * dictionary (long)</li>
+ * <li>one record per cluster: length of the record in bytes, sense words,
+ * sense id, cluster words. Words are written as dictionary ids of text and
+ * pos tag, cluster words have flags for the optional related sense id and
+ * weight. Counts, dictionary ids and related sense ids are variable length
+ * ints, weights are doubles so that they are read back exactly.</li>
+ * <li>dictionary: number of strings, then each string as length-prefixed
+ * UTF-8</li>
+ * </ul>
+ * The dictionary is written at the end, so the converter only needs a single
+ * pass over the DDT.
+ */
+public class BinaryDDT {
+
+	private static final Logger LOG = LoggerFactory.getLogger(BinaryDDT.class);
+
+	public static final String SUFFIX = ".bddt";
+
+	static final int MAGIC = 0x42444454;
+	static final int VERSION = 1;
+	static final int HEADER_LENGTH = 24;
+	/**
+	 * Dictionary id for a missing pos tag.
+	 */
+	static final int NO_POS = -1;
+	static final int FLAG_RELATED_SENSE_ID = 1;
+	static final int FLAG_WEIGHT = 2;
+
+	public static boolean isBinary(File file) {
+		return file.getName().endsWith(SUFFIX);
+	}
+
+	/**
+	 * Number of clusters in the file, read from the header.
+	 */
+	public static long readClusterCount(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			checkHeader(in, file);
+			return in.readLong();
+		}
+	}
+
+	static void checkHeader(DataInputStream in, File file) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException(file + " is not a binary DDT");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported binary DDT version " + version + " in " + file);
+		}
+	}
+
+	/**
+	 * Converts a DDT in any format supported by {@link Parser} into a binary
+	 * DDT. Lines which can not be parsed are skipped.
+	 *
+	 * @return number of converted clusters
+	 */
+	public static long convert(File ddt, File output) throws IOException {
+		long count = 0;
+		try (DDTIterator it = new Parser().iterateDDT(ddt); BinaryDDTWriter out = new BinaryDDTWriter(output)) {
+			while (it.hasNext()) {
+				SenseCluster cluster = it.next();
+				if (cluster == null) {
+					continue;
+				}
+				out.write(cluster);
+				if (++count % 100000 == 0) {
+					LOG.info("Converted {} clusters", count);
+				}
+			}
+		}
+		LOG.info("Converted {} clusters from {} to {}", count, ddt, output);
+		return count;
+	}
+
+}
@@ -0,0 +1,115 @@
+package de.tudarmstadt.lt.structuredtopics.ddts;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Reads the clusters of a {@link BinaryDDT} in file order. The strings of the
+ * clusters are shared through the dictionary, reading a cluster only creates
+ * the word objects.
+ */
+public class BinaryDDTReader implements SenseClusterReader {
+
+	private final DataInputStream in;
+	private final String[] dictionary;
+	private final long clusterCount;
+	private long clustersRead = 0;
+
+	public BinaryDDTReader(File file) throws IOException {
+		long dictionaryOffset;
+		try (DataInputStream header = new DataInputStream(new FileInputStream(file))) {
+			BinaryDDT.checkHeader(header, file);
+			clusterCount = header.readLong();
+			dictionaryOffset = header.readLong();
+		}
+		dictionary = readDictionary(file, dictionaryOffset);
+		FileInputStream records = new FileInputStream(file);
+		records.getChannel().position(BinaryDDT.HEADER_LENGTH);
+		in = new DataInputStream(new BufferedInputStream(records, 1 << 16));
+	}
+
+	private static String[] readDictionary(File file, long offset) throws IOException {
+		FileInputStream stream = new FileInputStream(file);
+		stream.getChannel().position(offset);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16))) {
+			String[] dictionary = new String[in.readInt()];
+			byte[] bytes = new byte[64];
+			for (int i = 0; i < dictionary.length; i++) {
+				int length = in.readInt();
+				if (bytes.length < length) {
+					bytes = new byte[Math.max(length, bytes.length * 2)];
+				}
+				ByteStreams.readFully(in, bytes, 0, length);
+				dictionary[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+			}
+			return dictionary;
+		}
+	}
+
+	public long getClusterCount() {
+		return clusterCount;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return clustersRead < clusterCount;
+	}
+
+	/**
+	 * Reads the next cluster, {@link #hasNext()} must be checked before.
+	 */
+	@Override
+	public SenseCluster next() throws IOException {
+		// the record length is only needed to skip records
+		in.readInt();
+		List<SingleWord> senseWords = readWords();
+		Sense sense = new Sense(senseWords, in.readInt());
+		int clusterWordCount = readVarInt();
+		List<ClusterWord> clusterWords = new ArrayList<>(clusterWordCount);
+		for (int i = 0; i < clusterWordCount; i++) {
+			List<SingleWord> words = readWords();
+			int flags = in.readByte();
+			Integer relatedSenseId = (flags & BinaryDDT.FLAG_RELATED_SENSE_ID) != 0 ? readVarInt() : null;
+			Double weight = (flags & BinaryDDT.FLAG_WEIGHT) != 0 ? in.readDouble() : null;
+			clusterWords.add(new ClusterWord(words, relatedSenseId, weight));
+		}
+		clustersRead++;
+		return new SenseCluster(sense, clusterWords);
+	}
+
+	private List<SingleWord> readWords() throws IOException {
+		int count = readVarInt();
+		List<SingleWord> words = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			String text = dictionary[readVarInt()];
+			int pos = readVarInt() - 1;
+			words.add(new SingleWord(text, pos == BinaryDDT.NO_POS ? null : dictionary[pos]));
+		}
+		return words;
+	}
+
+	private int readVarInt() throws IOException {
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			int b = in.readByte();
+			value |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
@@ -0,0 +1,124 @@
+package de.tudarmstadt.lt.structuredtopics.ddts;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Writes clusters into a {@link BinaryDDT}. The strings are collected in a
+ * dictionary while writing and appended when the writer is closed.
+ */
+public class BinaryDDTWriter implements Closeable {
+
+	private final FileOutputStream file;
+	private final DataOutputStream out;
+	private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(4096);
+	private final DataOutputStream record = new DataOutputStream(recordBytes);
+	private final Map<String, Integer> ids = new HashMap<>();
+	private final List<String> dictionary = Lists.newArrayList();
+	private long clusterCount = 0;
+	private long position = BinaryDDT.HEADER_LENGTH;
+
+	public BinaryDDTWriter(File output) throws IOException {
+		this.file = new FileOutputStream(output);
+		this.out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+		out.writeInt(BinaryDDT.MAGIC);
+		out.writeInt(BinaryDDT.VERSION);
+		// count and dictionary offset are written on close
+		out.writeLong(0);
+		out.writeLong(0);
+	}
+
+	public void write(SenseCluster cluster) throws IOException {
+		recordBytes.reset();
+		Sense sense = cluster.getSense();
+		writeWords(sense.getWords());
+		record.writeInt(sense.getSenseId());
+		writeVarInt(cluster.getClusterWords().size());
+		for (ClusterWord clusterWord : cluster.getClusterWords()) {
+			writeWords(clusterWord.getWords());
+			Integer relatedSenseId = clusterWord.getRelatedSenseId();
+			Double weight = clusterWord.getWeight();
+			int flags = (relatedSenseId != null ? BinaryDDT.FLAG_RELATED_SENSE_ID : 0)
+					| (weight != null ? BinaryDDT.FLAG_WEIGHT : 0);
+			record.writeByte(flags);
+			if (relatedSenseId != null) {
+				writeVarInt(relatedSenseId);
+			}
+			if (weight != null) {
+				record.writeDouble(weight);
+			}
+		}
+		out.writeInt(recordBytes.size());
+		recordBytes.writeTo(out);
+		position += 4 + recordBytes.size();
+		clusterCount++;
+	}
+
+	private void writeWords(List<SingleWord> words) throws IOException {
+		writeVarInt(words.size());
+		for (SingleWord word : words) {
+			writeVarInt(id(word.getText()));
+			// shifted by one, so that a missing pos tag is a single byte
+			writeVarInt((word.getPos() == null ? BinaryDDT.NO_POS : id(word.getPos())) + 1);
+		}
+	}
+
+	/**
+	 * Writes 7 bits per byte, the highest bit is set if more bytes follow.
+	 * Negative values take five bytes.
+	 */
+	private void writeVarInt(int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			record.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		record.writeByte(value);
+	}
+
+	private int id(String text) {
+		Integer id = ids.get(text);
+		if (id == null) {
+			id = dictionary.size();
+			ids.put(text, id);
+			dictionary.add(text);
+		}
+		return id;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			out.writeInt(dictionary.size());
+			for (String text : dictionary) {
+				byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			out.flush();
+			ByteBuffer header = ByteBuffer.allocate(16);
+			header.putLong(clusterCount).putLong(position);
+			((Buffer) header).flip();
+			FileChannel channel = file.getChannel();
+			while (header.hasRemaining()) {
+				channel.write(header, 8 + header.position());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+}
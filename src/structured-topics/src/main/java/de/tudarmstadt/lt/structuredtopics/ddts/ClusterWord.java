@@ -4,6 +4,13 @@ import java.util.List;
 
 public class ClusterWord extends MultiWord {
 
+	/**
+	 * Sense id of cluster words without a sense id (format 'word#posTag') in
+	 * the int based APIs, which have no null. Any parsed sense id, including
+	 * negative ones, is different.
+	 */
+	public static final int NO_SENSE_ID = Integer.MIN_VALUE;
+
 	private Integer relatedSenseId;
 	private Double weight;
 
@@ -0,0 +1,231 @@
+package de.tudarmstadt.lt.structuredtopics.ddts;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.UnaryOperator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import de.tudarmstadt.lt.structuredtopics.io.LineReader;
+
+/**
+ * Reads and parses a DDT ahead of the consumer. A reader thread decompresses
+ * and decodes the lines and collects them in batches, the batches are parsed
+ * by a pool of parser threads. The consumer takes the parsed batches in file
+ * order. At most <code>maxPendingBatches</code> batches are read ahead, the
+ * reader waits when the consumer falls behind, so memory is bounded by the
+ * batch size and the number of pending batches.
+ * <p>
+ * An optional transformation, e.g. a {@link FilterChain}, is applied to the
+ * clusters on the parser threads.
+ */
+public class DDTPipeline implements SenseClusterReader {
+
+	private static final Logger LOG = LoggerFactory.getLogger(DDTPipeline.class);
+
+	public static final int DEFAULT_BATCH_SIZE = 1024;
+
+	/**
+	 * Marks the end of the input in the queue.
+	 */
+	private static final Future<List<SenseCluster>> END = Futures
+			.immediateFuture(Collections.<SenseCluster> emptyList());
+
+	private final Parser parser;
+	private final int batchSize;
+	private final UnaryOperator<SenseCluster> transform;
+	private final BlockingQueue<Future<List<SenseCluster>>> batches;
+	private final ExecutorService parsers;
+	private final Thread reader;
+	private Iterator<SenseCluster> current = Collections.emptyIterator();
+	private boolean finished = false;
+
+	/**
+	 * Reads the lines with a background thread, the reader is closed by
+	 * {@link #close()}.
+	 */
+	public DDTPipeline(Parser parser, LineReader in, int parserThreads) {
+		this(parser, in, parserThreads, null);
+	}
+
+	/**
+	 * @param transform
+	 *            applied to each parsed cluster on the parser threads, may
+	 *            return null to skip the cluster. Must be thread-safe.
+	 */
+	public DDTPipeline(Parser parser, LineReader in, int parserThreads, UnaryOperator<SenseCluster> transform) {
+		this(parser, in, null, parserThreads, transform, DEFAULT_BATCH_SIZE, 2 * parserThreads);
+	}
+
+	/**
+	 * Decodes the clusters with a background thread, the reader is closed by
+	 * {@link #close()}.
+	 */
+	public DDTPipeline(Parser parser, BinaryDDTReader in, int parserThreads) {
+		this(parser, in, parserThreads, null);
+	}
+
+	public DDTPipeline(Parser parser, BinaryDDTReader in, int parserThreads, UnaryOperator<SenseCluster> transform) {
+		this(parser, null, in, parserThreads, transform, DEFAULT_BATCH_SIZE, 2 * parserThreads);
+	}
+
+	private DDTPipeline(Parser parser, LineReader lines, BinaryDDTReader binary, int parserThreads,
+			UnaryOperator<SenseCluster> transform, int batchSize, int maxPendingBatches) {
+		this.parser = parser;
+		this.batchSize = batchSize;
+		this.transform = transform;
+		this.batches = new ArrayBlockingQueue<>(maxPendingBatches);
+		this.parsers = Executors.newFixedThreadPool(parserThreads,
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ddt-parser-%d").build());
+		this.reader = new Thread(() -> {
+			try {
+				if (binary != null) {
+					readBinary(binary);
+				} else {
+					readLines(lines);
+				}
+				batches.put(END);
+			} catch (InterruptedException e) {
+				// closed by the consumer
+			} catch (Exception e) {
+				try {
+					batches.put(Futures.<List<SenseCluster>> immediateFailedFuture(e));
+				} catch (InterruptedException e2) {
+					// closed by the consumer
+				}
+			} finally {
+				try {
+					if (binary != null) {
+						binary.close();
+					} else {
+						lines.close();
+					}
+				} catch (IOException e) {
+					LOG.warn("Error while closing the ddt", e);
+				}
+			}
+		}, "ddt-reader");
+		this.reader.setDaemon(true);
+		this.reader.start();
+	}
+
+	private void readLines(LineReader in) throws IOException, InterruptedException {
+		while (true) {
+			String[] lines = new String[batchSize];
+			long firstLine = in.getLineNumber() + 1;
+			int size = 0;
+			while (size < batchSize && in.nextLine()) {
+				lines[size++] = in.getLine().toString();
+			}
+			if (size == 0) {
+				return;
+			}
+			int batchLength = size;
+			batches.put(parsers.submit(() -> parse(lines, batchLength, firstLine)));
+		}
+	}
+
+	private List<SenseCluster> parse(String[] lines, int size, long firstLine) {
+		List<SenseCluster> clusters = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			SenseCluster cluster = null;
+			try {
+				cluster = parser.parseSenseClusterFromLine(lines[i]);
+			} catch (Exception e) {
+				LOG.error("Unexpected error while parsing line {} : {}", firstLine + i, lines[i], e);
+			}
+			// unparseable lines are kept as null, same as Parser.DDTIterator
+			clusters.add(transform(cluster));
+		}
+		return clusters;
+	}
+
+	private SenseCluster transform(SenseCluster cluster) {
+		if (cluster == null || transform == null) {
+			return cluster;
+		}
+		try {
+			return transform.apply(cluster);
+		} catch (Exception e) {
+			LOG.error("Unexpected error while processing cluster {}", cluster, e);
+			return null;
+		}
+	}
+
+	private void readBinary(BinaryDDTReader in) throws IOException, InterruptedException {
+		while (in.hasNext()) {
+			List<SenseCluster> clusters = new ArrayList<>(batchSize);
+			while (clusters.size() < batchSize && in.hasNext()) {
+				clusters.add(in.next());
+			}
+			if (transform == null) {
+				// binary clusters need no parsing
+				batches.put(Futures.immediateFuture(clusters));
+			} else {
+				batches.put(parsers.submit(() -> {
+					clusters.replaceAll(this::transform);
+					return clusters;
+				}));
+			}
+		}
+	}
+
+	@Override
+	public boolean hasNext() throws IOException {
+		while (!current.hasNext()) {
+			if (finished) {
+				return false;
+			}
+			Future<List<SenseCluster>> batch;
+			try {
+				batch = batches.take();
+				if (batch == END) {
+					finished = true;
+					return false;
+				}
+				current = batch.get().iterator();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while reading the ddt");
+			} catch (ExecutionException e) {
+				finished = true;
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException("Error while reading the ddt", e.getCause());
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public SenseCluster next() throws IOException {
+		return current.next();
+	}
+
+	/**
+	 * Stops the background threads and closes the input.
+	 */
+	@Override
+	public void close() throws IOException {
+		finished = true;
+		reader.interrupt();
+		parsers.shutdownNow();
+		batches.clear();
+	}
+
+}
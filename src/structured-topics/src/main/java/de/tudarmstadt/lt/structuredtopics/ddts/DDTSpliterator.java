@@ -0,0 +1,190 @@
+package de.tudarmstadt.lt.structuredtopics.ddts;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.lt.structuredtopics.io.LineReader;
+
+/**
+ * Source of {@link Parser#streamDDT(java.io.File, boolean)}. Splitting only
+ * copies the next batch of lines from the reader, the lines are parsed by the
+ * task which processes the batch. All batches have the same size, so the work
+ * is evenly distributed between the threads (the spliterator of
+ * {@link java.util.Spliterators#spliteratorUnknownSize(java.util.Iterator, int)}
+ * grows its batches with every split). Lines which can not be parsed are
+ * skipped.
+ */
+class DDTSpliterator implements Spliterator<SenseCluster>, Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(DDTSpliterator.class);
+
+	private final Parser parser;
+	private final LineReader lines;
+	private final BinaryDDTReader binary;
+	private final int batchSize;
+	private final int characteristics;
+
+	DDTSpliterator(Parser parser, LineReader lines, int batchSize, boolean ordered) {
+		this(parser, lines, null, batchSize, ordered);
+	}
+
+	DDTSpliterator(Parser parser, BinaryDDTReader binary, int batchSize, boolean ordered) {
+		this(parser, null, binary, batchSize, ordered);
+	}
+
+	private DDTSpliterator(Parser parser, LineReader lines, BinaryDDTReader binary, int batchSize,
+			boolean ordered) {
+		this.parser = parser;
+		this.lines = lines;
+		this.binary = binary;
+		this.batchSize = batchSize;
+		this.characteristics = NONNULL | (ordered ? ORDERED : 0);
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super SenseCluster> action) {
+		try {
+			while (true) {
+				if (binary != null) {
+					if (!binary.hasNext()) {
+						return false;
+					}
+					action.accept(binary.next());
+					return true;
+				}
+				if (!lines.nextLine()) {
+					return false;
+				}
+				SenseCluster cluster = parse(parser, lines.getLine(), lines.getLineNumber());
+				if (cluster != null) {
+					action.accept(cluster);
+					return true;
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public Spliterator<SenseCluster> trySplit() {
+		try {
+			Object[] batch = new Object[batchSize];
+			long firstLine = binary != null ? 0 : lines.getLineNumber() + 1;
+			int size = 0;
+			if (binary != null) {
+				// binary clusters need no parsing
+				while (size < batchSize && binary.hasNext()) {
+					batch[size++] = binary.next();
+				}
+			} else {
+				while (size < batchSize && lines.nextLine()) {
+					batch[size++] = lines.getLine().toString();
+				}
+			}
+			return size == 0 ? null : new Batch(parser, batch, firstLine, 0, size, characteristics);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public int characteristics() {
+		return characteristics;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (binary != null) {
+			binary.close();
+		} else {
+			lines.close();
+		}
+	}
+
+	private static SenseCluster parse(Parser parser, CharSequence line, long lineNumber) {
+		SenseCluster cluster = null;
+		try {
+			cluster = parser.parseSenseClusterFromLine(line);
+		} catch (Exception e) {
+			LOG.error("Unexpected error while parsing line {} : {}", lineNumber, line, e);
+		}
+		if (cluster == null) {
+			LOG.warn("Unable to parse line {}: {}", lineNumber, line);
+		}
+		return cluster;
+	}
+
+	/**
+	 * Lines (or already read clusters) of one split, parsed on access.
+	 */
+	private static class Batch implements Spliterator<SenseCluster> {
+
+		private final Parser parser;
+		private final Object[] items;
+		private final long firstLine;
+		private final int characteristics;
+		private int index;
+		private final int end;
+
+		Batch(Parser parser, Object[] items, long firstLine, int start, int end, int characteristics) {
+			this.parser = parser;
+			this.items = items;
+			this.firstLine = firstLine;
+			this.index = start;
+			this.end = end;
+			this.characteristics = characteristics;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super SenseCluster> action) {
+			while (index < end) {
+				Object item = items[index];
+				// release the line as soon as it is parsed
+				items[index] = null;
+				SenseCluster cluster = item instanceof SenseCluster ? (SenseCluster) item
+						: parse(parser, (String) item, firstLine + index);
+				index++;
+				if (cluster != null) {
+					action.accept(cluster);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public Spliterator<SenseCluster> trySplit() {
+			int middle = (index + end) >>> 1;
+			if (middle <= index) {
+				return null;
+			}
+			Batch prefix = new Batch(parser, items, firstLine, index, middle, characteristics);
+			index = middle;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			return end - index;
+		}
+
+		@Override
+		public int characteristics() {
+			return characteristics;
+		}
+
+	}
+
+}
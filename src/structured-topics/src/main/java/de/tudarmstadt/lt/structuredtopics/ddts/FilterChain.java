@@ -0,0 +1,45 @@
+package de.tudarmstadt.lt.structuredtopics.ddts;
+
+import java.util.List;
+
+import de.tudarmstadt.lt.structuredtopics.Utils;
+
+/**
+ * Combines several {@link WordFilter}s into one {@link Utils.Filter}. All
+ * filters are checked in one pass over the words of a sense or cluster word,
+ * the words are removed if one word is rejected by one of the filters. This
+ * is the same result as applying the filters one after the other, but each
+ * cluster is only visited once. The chain is thread-safe if the filters are.
+ */
+public class FilterChain implements Utils.Filter {
+
+	private final WordFilter[] filters;
+
+	public FilterChain(List<WordFilter> filters) {
+		this.filters = filters.toArray(new WordFilter[filters.size()]);
+	}
+
+	@Override
+	public boolean filter(List<SingleWord> words) {
+		for (int i = 0; i < words.size(); i++) {
+			SingleWord word = words.get(i);
+			for (WordFilter filter : filters) {
+				if (!filter.accept(word)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Filters the cluster, see
+	 * {@link Utils#filterCluster(SenseCluster, Utils.Filter)}.
+	 *
+	 * @return the filtered cluster or null if the entire cluster is removed
+	 */
+	public SenseCluster apply(SenseCluster cluster) {
+		return Utils.filterCluster(cluster, this) ? cluster : null;
+	}
+
+}
@@ -1,111 +1,331 @@
 package de.tudarmstadt.lt.structuredtopics.ddts;
 
-import static org.apache.commons.lang3.StringUtils.lastIndexOf;
-
 import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import org.apache.commons.io.LineIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 
 import de.tudarmstadt.lt.structuredtopics.Utils;
+import de.tudarmstadt.lt.structuredtopics.io.LineBuffer;
+import de.tudarmstadt.lt.structuredtopics.io.LineRange;
+import de.tudarmstadt.lt.structuredtopics.io.LineReader;
+import de.tudarmstadt.lt.structuredtopics.io.ReaderLineReader;
 
 public class Parser {
 	private static final Logger LOG = LoggerFactory.getLogger(Parser.class);
 
+	/**
+	 * Lines per task of {@link #streamDDT(File, boolean)}
+	 */
+	public static final int DEFAULT_STREAM_BATCH_SIZE = 1024;
+
 	public List<SenseCluster> parseDDT(File ddt) throws IOException {
-		List<SenseCluster> senseClusters = new ArrayList<>(100000);
-		try (BufferedReader in = Utils.openReader(ddt)) {
-			String line = null;
-			int count = 0;
-			while ((line = in.readLine()) != null) {
-				count++;
-				if (count % 1000 == 0) {
-					LOG.info("Parsing cluster {}", count);
-				}
-				SenseCluster cluster = null;
-				try {
-					cluster = parseSenseClusterFromLine(line);
-				} catch (Exception e) {
-					LOG.error("Unexpected error while parsing line {} : {}", count, line, e);
-				}
-				if (cluster != null) {
-					senseClusters.add(cluster);
-				} else {
-					LOG.warn("Unable to parse line {}: {}", count, line);
+		return parseDDT(ddt, 1);
+	}
+
+	/**
+	 * Parses the DDT with the given number of threads. Uncompressed files are
+	 * split into one byte range per thread (see {@link LineRange}), the
+	 * clusters are returned in file order. Compressed files are only parsed in
+	 * parallel if they have a
+	 * {@link de.tudarmstadt.lt.structuredtopics.io.GzipIndex}. A
+	 * {@link BinaryDDT} is always read on one thread, as reading it is bound
+	 * by I/O.
+	 */
+	public List<SenseCluster> parseDDT(File ddt, int threads) throws IOException {
+		if (BinaryDDT.isBinary(ddt)) {
+			try (BinaryDDTReader in = new BinaryDDTReader(ddt)) {
+				List<SenseCluster> senseClusters = new ArrayList<>((int) in.getClusterCount());
+				while (in.hasNext()) {
+					senseClusters.add(in.next());
 				}
+				return senseClusters;
+			}
+		}
+		if (threads <= 1 || !LineRange.isSplittable(ddt)) {
+			List<SenseCluster> senseClusters = new ArrayList<>(100000);
+			try (BufferedReader in = Utils.openReader(ddt)) {
+				parseLines(in, "", senseClusters);
+			}
+			return senseClusters;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<List<SenseCluster>>> futures = Lists.newArrayList();
+			for (LineRange range : LineRange.split(ddt, threads)) {
+				futures.add(executor.submit(() -> {
+					List<SenseCluster> rangeClusters = new ArrayList<>(100000);
+					try (BufferedReader in = range.openReader(ddt)) {
+						parseLines(in, "range " + range.getIndex() + ", ", rangeClusters);
+					}
+					return rangeClusters;
+				}));
+			}
+			List<SenseCluster> senseClusters = new ArrayList<>(100000);
+			for (Future<List<SenseCluster>> future : futures) {
+				senseClusters.addAll(future.get());
+			}
+			return senseClusters;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while parsing " + ddt);
+		} catch (ExecutionException e) {
+			Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+			throw Throwables.propagate(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Parses all lines of the reader, line numbers are relative to the start
+	 * of the reader.
+	 */
+	private void parseLines(BufferedReader in, String logPrefix, List<SenseCluster> senseClusters)
+			throws IOException {
+		String line = null;
+		int count = 0;
+		while ((line = in.readLine()) != null) {
+			count++;
+			if (count % 1000 == 0) {
+				LOG.info("Parsing cluster {}{}", logPrefix, count);
+			}
+			SenseCluster cluster = null;
+			try {
+				cluster = parseSenseClusterFromLine(line);
+			} catch (Exception e) {
+				LOG.error("Unexpected error while parsing line {}{} : {}", logPrefix, count, line, e);
+			}
+			if (cluster != null) {
+				senseClusters.add(cluster);
+			} else {
+				LOG.warn("Unable to parse line {}{}: {}", logPrefix, count, line);
 			}
 		}
-		return senseClusters;
 	}
 
+	/**
+	 * Iterates over the DDT, uncompressed files are memory mapped (see
+	 * {@link Utils#openLineReader(File)}). Binary DDTs are read with a
+	 * {@link BinaryDDTReader}.
+	 */
 	public DDTIterator iterateDDT(File ddt) throws IOException {
-		return new DDTIterator(Utils.openReader(ddt));
+		if (BinaryDDT.isBinary(ddt)) {
+			return new DDTIterator(new BinaryDDTReader(ddt));
+		}
+		return new DDTIterator(Utils.openLineReader(ddt));
+	}
+
+	/**
+	 * Iterates over the DDT with a {@link DDTPipeline}: the file is read on a
+	 * background thread and parsed by <code>parserThreads</code> threads
+	 * ahead of the caller. Reads without a pipeline for a single thread. A
+	 * blocked gzip file is decompressed on <code>parserThreads</code> threads
+	 * as well (see {@link Utils#openLineReader(File, int)}).
+	 */
+	public DDTIterator iterateDDT(File ddt, int parserThreads) throws IOException {
+		if (parserThreads <= 1) {
+			return BinaryDDT.isBinary(ddt) ? iterateDDT(ddt) : new DDTIterator(Utils.openLineReader(ddt, 1));
+		}
+		return iterateDDT(ddt, parserThreads, null);
+	}
+
+	/**
+	 * Same as {@link #iterateDDT(File, int)}, the transformation (e.g. a
+	 * {@link FilterChain}) is applied to the clusters on the parser threads.
+	 * The iterator returns null for clusters which are removed by the
+	 * transformation.
+	 */
+	public DDTIterator iterateDDT(File ddt, int parserThreads, UnaryOperator<SenseCluster> transform)
+			throws IOException {
+		int threads = Math.max(1, parserThreads);
+		if (BinaryDDT.isBinary(ddt)) {
+			return new DDTIterator(new DDTPipeline(this, new BinaryDDTReader(ddt), threads, transform));
+		}
+		return new DDTIterator(new DDTPipeline(this, Utils.openLineReader(ddt, threads), threads, transform));
+	}
+
+	/**
+	 * Parallel stream over the clusters of the DDT, lines which can not be
+	 * parsed are skipped. The reader only collects batches of lines, parsing
+	 * happens in the tasks of the stream (see {@link DDTSpliterator}). In
+	 * ordered mode, order dependent operations like
+	 * {@link Stream#forEachOrdered(java.util.function.Consumer)} see the
+	 * clusters in file order. The stream must be closed to close the file.
+	 */
+	public Stream<SenseCluster> streamDDT(File ddt, boolean ordered) throws IOException {
+		return streamDDT(ddt, ordered, DEFAULT_STREAM_BATCH_SIZE, Utils.DEFAULT_THREADS);
+	}
+
+	/**
+	 * Same as {@link #streamDDT(File, boolean)}, with the number of lines per
+	 * task and the number of threads which decompress a blocked gzip file
+	 * (see {@link Utils#openLineReader(File, int)}).
+	 */
+	public Stream<SenseCluster> streamDDT(File ddt, boolean ordered, int batchSize, int readerThreads)
+			throws IOException {
+		DDTSpliterator spliterator = BinaryDDT.isBinary(ddt)
+				? new DDTSpliterator(this, new BinaryDDTReader(ddt), batchSize, ordered)
+				: new DDTSpliterator(this, Utils.openLineReader(ddt, readerThreads), batchSize, ordered);
+		return StreamSupport.stream(spliterator, true).onClose(() -> {
+			try {
+				spliterator.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
 	}
 
 	/**
 	 * Iterates over the senses of an DDT without keeping the entire file in
 	 * memory. The Iterator may return null for some clusters if a line can not
-	 * be parsed from the ddt.
+	 * be parsed from the ddt. The lines are parsed directly from the
+	 * {@link LineReader}, without creating a {@link String} per line.
 	 *
 	 */
 	public class DDTIterator implements Iterator<SenseCluster>, Closeable {
 
-		private org.apache.commons.io.LineIterator it;
-
-		private BufferedReader in;
-		private int count = 0;
+		private final LineReader in;
+		private final SenseClusterReader clusters;
+		private final SenseClusterView view = new SenseClusterView();
+		private boolean lineRead = false;
+		private boolean hasLine = false;
 
 		public DDTIterator(BufferedReader in) {
+			this(new ReaderLineReader(in));
+		}
+
+		public DDTIterator(LineReader in) {
 			this.in = in;
-			it = new LineIterator(in);
+			this.clusters = null;
+		}
+
+		/**
+		 * Iterates over already parsed clusters, e.g. of a
+		 * {@link BinaryDDTReader} or {@link DDTPipeline}.
+		 */
+		public DDTIterator(SenseClusterReader clusters) {
+			this.in = null;
+			this.clusters = clusters;
 		}
 
 		@Override
 		public boolean hasNext() {
-			return it.hasNext();
+			if (clusters != null) {
+				try {
+					return clusters.hasNext();
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			if (!lineRead) {
+				try {
+					hasLine = in.nextLine();
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+				lineRead = true;
+			}
+			return hasLine;
 		}
 
 		@Override
 		public SenseCluster next() {
-			String line = it.next();
-			count++;
+			if (!hasNext()) {
+				throw new NoSuchElementException("No more lines");
+			}
+			if (clusters != null) {
+				return nextParsed();
+			}
+			lineRead = false;
+			LineBuffer line = in.getLine();
 			try {
 				SenseCluster senseCluster = parseSenseClusterFromLine(line);
 				return senseCluster;
 			} catch (Exception e) {
-				LOG.error("Unexpected error while parsing line {} : {}", count, line, e);
+				LOG.error("Unexpected error while parsing line {} : {}", in.getLineNumber(), line, e);
 				return null;
 			}
 		}
 
+		/**
+		 * Alternative to {@link #next()} for passes which only read some
+		 * fields of the clusters. Returns the same, reusable view for every
+		 * line, the fields are only decoded when they are accessed. Returns
+		 * null if the line can not be parsed.
+		 */
+		public SenseClusterView nextView() {
+			if (!hasNext()) {
+				throw new NoSuchElementException("No more lines");
+			}
+			if (clusters != null) {
+				SenseCluster cluster = nextParsed();
+				if (cluster == null) {
+					return null;
+				}
+				view.reset(cluster);
+				return view;
+			}
+			lineRead = false;
+			return view.reset(in.getLine()) ? view : null;
+		}
+
+		private SenseCluster nextParsed() {
+			try {
+				return clusters.next();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
 		@Override
 		public void close() throws IOException {
-			in.close();
+			if (clusters != null) {
+				clusters.close();
+			} else {
+				in.close();
+			}
 		}
 
 	}
 
 	@VisibleForTesting
-	protected SenseCluster parseSenseClusterFromLine(String line) {
-		String[] columns = line.split("\t");
-		if (columns.length < 3) {
+	protected SenseCluster parseSenseClusterFromLine(CharSequence line) {
+		// same columns as line.split("\t"), at least three columns required
+		int length = line.length();
+		int firstTab = Tokenizer.indexOf(line, '\t', 0, length);
+		int secondTab = firstTab == -1 ? -1 : Tokenizer.indexOf(line, '\t', firstTab + 1, length);
+		if (secondTab == -1 || !containsNonTab(line, secondTab + 1, length)) {
 			return null;
 		}
-		List<SingleWord> senseWords = parseSenseWords(columns[0]);
+		int thirdTab = Tokenizer.indexOf(line, '\t', secondTab + 1, length);
+		if (thirdTab == -1) {
+			thirdTab = length;
+		}
+		List<SingleWord> senseWords = parseSenseWords(line, 0, firstTab);
 		Integer senseId;
 		try {
-			senseId = Integer.valueOf(columns[1]);
+			senseId = Tokenizer.parseInt(line, firstTab + 1, secondTab);
 		} catch (NumberFormatException e) {
 			try {
 				// some ids were saved in double format. However, this should be
@@ -113,67 +333,78 @@ public class Parser {
 				// exception not the default as the conversion from string to
 				// double
 				// to integer is more expensive
-				senseId = Double.valueOf(columns[1]).intValue();
+				senseId = (int) Tokenizer.parseDouble(line, firstTab + 1, secondTab);
 			} catch (NumberFormatException e2) {
 				return null;
 			}
 		}
 		Sense sense = new Sense(senseWords, senseId);
-		List<ClusterWord> cluster = parseClusterWords(columns[2]);
+		List<ClusterWord> cluster = parseClusterWords(line, secondTab + 1, thirdTab);
 		return new SenseCluster(sense, cluster);
 	}
 
-	private List<SingleWord> parseSenseWords(String senseColumn) {
+	static boolean containsNonTab(CharSequence line, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (line.charAt(i) != '\t') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private List<SingleWord> parseSenseWords(CharSequence line, int from, int to) {
 		List<SingleWord> senseWords = Lists.newArrayListWithCapacity(1);
-		String[] words = senseColumn.split("\\s+");
-		for (String wordRaw : words) {
-			int lastHash = lastIndexOf(wordRaw, "#");
+		Tokenizer words = Tokenizer.onWhitespace().reset(line, from, to);
+		while (words.next()) {
+			int lastHash = Tokenizer.lastIndexOf(line, '#', words.start(), words.end());
 			if (lastHash != -1) {
-				String text = wordRaw.substring(0, lastHash);
-				String pos = wordRaw.substring(lastHash + 1);
+				String text = Tokenizer.substring(line, words.start(), lastHash);
+				String pos = Tokenizer.substring(line, lastHash + 1, words.end());
 				SingleWord word = new SingleWord(text, pos);
 				senseWords.add(word);
 			} else {
-				SingleWord word = new SingleWord(wordRaw, null);
+				SingleWord word = new SingleWord(words.token(), null);
 				senseWords.add(word);
 			}
 		}
 		return senseWords;
 	}
 
-	private static final Pattern SENSEID_WEIGHT_PATTERN = Pattern.compile("\\d+[:]\\d+[.]\\d+");
-
-	private List<ClusterWord> parseClusterWords(String clusterColumn) {
+	private List<ClusterWord> parseClusterWords(CharSequence line, int from, int to) {
 		List<ClusterWord> clusterWords = new ArrayList<>(100);
 		// words are a csv list
-		String[] clusterWordsRaw = clusterColumn.split("[,]\\s*");
-		for (String wordsRaw : clusterWordsRaw) {
+		Tokenizer clusterWordsRaw = Tokenizer.onCommaAndWhitespace().reset(line, from, to);
+		Tokenizer wordsRaw = Tokenizer.onWhitespace();
+		Tokenizer sections = Tokenizer.onChar('#');
+		while (clusterWordsRaw.next()) {
 			List<SingleWord> words = new ArrayList<>(1);
 			Integer relatedSenseId = null;
 			Double weight = null;
 			// multi-words are separated by whitespace
-			for (String wordRaw : wordsRaw.split("\\s+")) {
-				String[] sections = wordRaw.split("[#]");
-				String text;
-				if (sections.length <= 1) {
-					text = wordRaw;
-				} else {
-					text = sections[0];
-				}
+			wordsRaw.reset(line, clusterWordsRaw.start(), clusterWordsRaw.end());
+			while (wordsRaw.next()) {
+				sections.reset(line, wordsRaw.start(), wordsRaw.end());
+				int sectionCount = 0;
+				int textEnd = wordsRaw.end();
 				String pos = null;
-				for (int i = 1; i < sections.length; i++) {
-					String section = sections[i];
-					if (SENSEID_WEIGHT_PATTERN.matcher(section).matches()) {
-						String[] senseIdWeightRaw = section.split("[:]");
-						relatedSenseId = Integer.valueOf(senseIdWeightRaw[0]);
-						weight = Double.valueOf(senseIdWeightRaw[1]);
+				while (sections.next()) {
+					sectionCount++;
+					if (sectionCount == 1) {
+						textEnd = sections.end();
+					} else if (Tokenizer.isSenseIdWeight(line, sections.start(), sections.end())) {
+						int colon = Tokenizer.indexOf(line, ':', sections.start(), sections.end());
+						relatedSenseId = Tokenizer.parseInt(line, sections.start(), colon);
+						weight = Tokenizer.parseDouble(line, colon + 1, sections.end());
 					} else {
 						// in case of multiple sections, the last one is the
 						// pos-tag. The previous one will be overridden.
-						pos = section;
+						pos = sections.token();
 					}
 				}
-				SingleWord word = new SingleWord(text, pos);
+				if (sectionCount <= 1) {
+					textEnd = wordsRaw.end();
+				}
+				SingleWord word = new SingleWord(Tokenizer.substring(line, wordsRaw.start(), textEnd), pos);
 				words.add(word);
 			}
 			ClusterWord clusterWord = new ClusterWord(words, relatedSenseId, weight);
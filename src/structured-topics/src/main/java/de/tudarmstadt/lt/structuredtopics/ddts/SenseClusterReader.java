@@ -0,0 +1,19 @@
+package de.tudarmstadt.lt.structuredtopics.ddts;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Source of already parsed clusters for {@link Parser.DDTIterator}.
+ */
+public interface SenseClusterReader extends Closeable {
+
+	boolean hasNext() throws IOException;
+
+	/**
+	 * Returns the next cluster or null if the line of the cluster can not be
+	 * parsed. {@link #hasNext()} must be checked before.
+	 */
+	SenseCluster next() throws IOException;
+
+}
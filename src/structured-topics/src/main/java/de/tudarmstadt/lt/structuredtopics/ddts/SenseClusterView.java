@@ -0,0 +1,239 @@
+package de.tudarmstadt.lt.structuredtopics.ddts;
+
+import java.util.Arrays;
+
+/**
+ * Reusable, read-only view of a DDT line. In contrast to {@link SenseCluster}
+ * no objects are created while iterating, only the positions of the columns
+ * and cluster words are recorded. Clusters which were already read, e.g. from
+ * a {@link BinaryDDT}, can be wrapped as well. The values are decoded from the line when
+ * they are accessed and equal the values of the corresponding
+ * {@link SenseCluster} (e.g. {@link #getSenseFullWord()} equals
+ * <code>getSense().getFullWord()</code>).
+ * <p>
+ * The view is only valid until the next line is read, use
+ * {@link #toSenseCluster()} to keep a cluster.
+ */
+public class SenseClusterView {
+
+	/**
+	 * Returned by {@link #getRelatedSenseId(int)} for cluster words without a
+	 * sense id.
+	 */
+	public static final int NO_SENSE_ID = ClusterWord.NO_SENSE_ID;
+
+	private final Tokenizer clusterWords = Tokenizer.onCommaAndWhitespace();
+	private final Tokenizer words = Tokenizer.onWhitespace();
+	private final Tokenizer sections = Tokenizer.onChar('#');
+	private final StringBuilder fullWord = new StringBuilder();
+
+	private CharSequence line;
+	private SenseCluster cluster;
+	private int senseEnd;
+	private int senseId;
+	private int clusterWordCount;
+	private int[] clusterWordStarts = new int[128];
+	private int[] clusterWordEnds = new int[128];
+
+	/**
+	 * Points the view to the line.
+	 *
+	 * @return false if the line is not a valid DDT line, same as
+	 *         {@link Parser#parseSenseClusterFromLine(CharSequence)} returning
+	 *         null
+	 */
+	public boolean reset(CharSequence line) {
+		this.line = line;
+		this.cluster = null;
+		this.clusterWordCount = 0;
+		int length = line.length();
+		int firstTab = Tokenizer.indexOf(line, '\t', 0, length);
+		int secondTab = firstTab == -1 ? -1 : Tokenizer.indexOf(line, '\t', firstTab + 1, length);
+		if (secondTab == -1 || !Parser.containsNonTab(line, secondTab + 1, length)) {
+			return false;
+		}
+		int thirdTab = Tokenizer.indexOf(line, '\t', secondTab + 1, length);
+		if (thirdTab == -1) {
+			thirdTab = length;
+		}
+		senseEnd = firstTab;
+		try {
+			senseId = Tokenizer.parseInt(line, firstTab + 1, secondTab);
+		} catch (NumberFormatException e) {
+			try {
+				senseId = (int) Tokenizer.parseDouble(line, firstTab + 1, secondTab);
+			} catch (NumberFormatException e2) {
+				return false;
+			}
+		}
+		clusterWords.reset(line, secondTab + 1, thirdTab);
+		while (clusterWords.next()) {
+			if (clusterWordCount == clusterWordStarts.length) {
+				clusterWordStarts = Arrays.copyOf(clusterWordStarts, clusterWordCount * 2);
+				clusterWordEnds = Arrays.copyOf(clusterWordEnds, clusterWordCount * 2);
+			}
+			clusterWordStarts[clusterWordCount] = clusterWords.start();
+			clusterWordEnds[clusterWordCount] = clusterWords.end();
+			clusterWordCount++;
+		}
+		return true;
+	}
+
+	/**
+	 * Points the view to an already parsed cluster.
+	 */
+	public void reset(SenseCluster cluster) {
+		this.line = null;
+		this.cluster = cluster;
+		this.senseId = cluster.getSense().getSenseId();
+		this.clusterWordCount = cluster.getClusterWords().size();
+	}
+
+	public int getSenseId() {
+		return senseId;
+	}
+
+	/**
+	 * Text of the sense words without pos tags, separated by whitespace.
+	 */
+	public String getSenseFullWord() {
+		if (cluster != null) {
+			return cluster.getSense().getFullWord();
+		}
+		words.reset(line, 0, senseEnd);
+		if (!words.next()) {
+			return "";
+		}
+		int start = words.start();
+		int end = senseWordTextEnd();
+		if (!words.next()) {
+			// single word, no copy into the builder
+			return Tokenizer.substring(line, start, end);
+		}
+		fullWord.setLength(0);
+		fullWord.append(line, start, end);
+		do {
+			fullWord.append(' ').append(line, words.start(), senseWordTextEnd());
+		} while (words.next());
+		return fullWord.toString();
+	}
+
+	private int senseWordTextEnd() {
+		int lastHash = Tokenizer.lastIndexOf(line, '#', words.start(), words.end());
+		return lastHash == -1 ? words.end() : lastHash;
+	}
+
+	public int getClusterWordCount() {
+		return clusterWordCount;
+	}
+
+	/**
+	 * Text of the words of the cluster word without pos tags and sense ids,
+	 * separated by whitespace.
+	 */
+	public String getClusterWordFullWord(int index) {
+		if (cluster != null) {
+			return cluster.getClusterWords().get(index).getFullWord();
+		}
+		words.reset(line, clusterWordStarts[index], clusterWordEnds[index]);
+		if (!words.next()) {
+			return "";
+		}
+		int start = words.start();
+		int end = clusterWordTextEnd();
+		if (!words.next()) {
+			// single word, no copy into the builder
+			return Tokenizer.substring(line, start, end);
+		}
+		fullWord.setLength(0);
+		fullWord.append(line, start, end);
+		do {
+			fullWord.append(' ').append(line, words.start(), clusterWordTextEnd());
+		} while (words.next());
+		return fullWord.toString();
+	}
+
+	/**
+	 * The text is the first section of 'text#pos#id:weight', or the whole word
+	 * if there is only one non-empty section (like <code>split("[#]")</code>).
+	 */
+	private int clusterWordTextEnd() {
+		sections.reset(line, words.start(), words.end());
+		if (sections.next() && sections.next()) {
+			return Tokenizer.indexOf(line, '#', words.start(), words.end());
+		}
+		return words.end();
+	}
+
+	/**
+	 * Sense id of the cluster word or {@link #NO_SENSE_ID}.
+	 */
+	public int getRelatedSenseId(int index) {
+		if (cluster != null) {
+			Integer relatedSenseId = cluster.getClusterWords().get(index).getRelatedSenseId();
+			return relatedSenseId == null ? NO_SENSE_ID : relatedSenseId;
+		}
+		int section = findSenseIdWeight(index);
+		if (section == -1) {
+			return NO_SENSE_ID;
+		}
+		return Tokenizer.parseInt(line, sections.start(), Tokenizer.indexOf(line, ':', section, sections.end()));
+	}
+
+	/**
+	 * Weight of the cluster word or {@link Double#NaN} if the cluster word has
+	 * no weight.
+	 */
+	public double getWeight(int index) {
+		if (cluster != null) {
+			Double weight = cluster.getClusterWords().get(index).getWeight();
+			return weight == null ? Double.NaN : weight;
+		}
+		int section = findSenseIdWeight(index);
+		if (section == -1) {
+			return Double.NaN;
+		}
+		int colon = Tokenizer.indexOf(line, ':', section, sections.end());
+		return Tokenizer.parseDouble(line, colon + 1, sections.end());
+	}
+
+	/**
+	 * Finds the last 'id:weight' section of the cluster word and leaves the
+	 * sections tokenizer on it.
+	 *
+	 * @return start of the section or -1
+	 */
+	private int findSenseIdWeight(int index) {
+		int lastStart = -1;
+		int lastEnd = -1;
+		words.reset(line, clusterWordStarts[index], clusterWordEnds[index]);
+		while (words.next()) {
+			sections.reset(line, words.start(), words.end());
+			boolean first = true;
+			while (sections.next()) {
+				if (!first && Tokenizer.isSenseIdWeight(line, sections.start(), sections.end())) {
+					lastStart = sections.start();
+					lastEnd = sections.end();
+				}
+				first = false;
+			}
+		}
+		if (lastStart == -1) {
+			return -1;
+		}
+		sections.reset(line, lastStart, lastEnd);
+		sections.next();
+		return lastStart;
+	}
+
+	/**
+	 * Fully parses the current line.
+	 */
+	public SenseCluster toSenseCluster() {
+		if (cluster != null) {
+			return cluster;
+		}
+		return new Parser().parseSenseClusterFromLine(line);
+	}
+
+}
@@ -0,0 +1,303 @@
+package de.tudarmstadt.lt.structuredtopics.ddts;
+
+/**
+ * Cursor over the tokens of a region of a line, without regular expressions
+ * and without creating substrings. The tokens are the same as the ones
+ * returned by {@link String#split(String)} for the supported separators:
+ * <ul>
+ * <li>{@link #onChar(char)}: a single character, e.g. <code>"\t"</code> or
+ * <code>"[#]"</code></li>
+ * <li>{@link #onWhitespace()}: <code>"\\s+"</code></li>
+ * <li>{@link #onCommaAndWhitespace()}: <code>",\\s*"</code></li>
+ * </ul>
+ * This includes the special cases of split: a leading empty token if the
+ * region starts with a separator, no trailing empty tokens and the entire
+ * region as only token if there is no separator at all.
+ * <p>
+ * The static methods contain the parsing helpers for the DDT formats.
+ * Instances are not thread-safe, but cheap to create.
+ */
+public class Tokenizer {
+
+	private static final int WHITESPACE = -1;
+
+	private final int separator;
+	private final boolean skipWhitespaceAfterSeparator;
+
+	private CharSequence text;
+	private int from;
+	private int position;
+	private int to;
+	private boolean separatorFound;
+	private boolean finished;
+	private int pendingEmptyTokens;
+	private int pendingEmptyStart;
+	private boolean buffered;
+	private int bufferedStart;
+	private int bufferedEnd;
+
+	private int start;
+	private int end;
+
+	private Tokenizer(int separator, boolean skipWhitespaceAfterSeparator) {
+		this.separator = separator;
+		this.skipWhitespaceAfterSeparator = skipWhitespaceAfterSeparator;
+	}
+
+	public static Tokenizer onChar(char separator) {
+		return new Tokenizer(separator, false);
+	}
+
+	public static Tokenizer onWhitespace() {
+		return new Tokenizer(WHITESPACE, false);
+	}
+
+	public static Tokenizer onCommaAndWhitespace() {
+		return new Tokenizer(',', true);
+	}
+
+	/**
+	 * Starts tokenizing the region [from, to) of the text.
+	 */
+	public Tokenizer reset(CharSequence text, int from, int to) {
+		this.text = text;
+		this.from = from;
+		this.position = from;
+		this.to = to;
+		this.separatorFound = false;
+		this.finished = false;
+		this.pendingEmptyTokens = 0;
+		this.buffered = false;
+		return this;
+	}
+
+	/**
+	 * Moves to the next token.
+	 *
+	 * @return false if there are no more tokens
+	 */
+	public boolean next() {
+		while (true) {
+			if (buffered) {
+				// empty tokens are only returned if a non-empty token follows
+				if (pendingEmptyTokens > 0) {
+					pendingEmptyTokens--;
+					start = pendingEmptyStart;
+					end = pendingEmptyStart;
+					// an empty token is directly followed by a separator
+					pendingEmptyStart = skipSeparator(pendingEmptyStart);
+					return true;
+				}
+				buffered = false;
+				start = bufferedStart;
+				end = bufferedEnd;
+				return true;
+			}
+			if (finished) {
+				return false;
+			}
+			int tokenStart = position;
+			int tokenEnd;
+			int separatorStart = findSeparator(position);
+			if (separatorStart == -1) {
+				finished = true;
+				tokenEnd = to;
+				if (!separatorFound) {
+					start = tokenStart;
+					end = tokenEnd;
+					return true;
+				}
+			} else {
+				separatorFound = true;
+				tokenEnd = separatorStart;
+				position = skipSeparator(separatorStart);
+			}
+			if (tokenEnd > tokenStart) {
+				buffered = true;
+				bufferedStart = tokenStart;
+				bufferedEnd = tokenEnd;
+			} else {
+				if (pendingEmptyTokens == 0) {
+					pendingEmptyStart = tokenStart;
+				}
+				pendingEmptyTokens++;
+			}
+		}
+	}
+
+	/**
+	 * Number of tokens of the region, resets the cursor to the first token.
+	 */
+	public int count() {
+		reset(text, from, to);
+		int count = 0;
+		while (next()) {
+			count++;
+		}
+		reset(text, from, to);
+		return count;
+	}
+
+	/**
+	 * Start of the current token (inclusive).
+	 */
+	public int start() {
+		return start;
+	}
+
+	/**
+	 * End of the current token (exclusive).
+	 */
+	public int end() {
+		return end;
+	}
+
+	public String token() {
+		return substring(text, start, end);
+	}
+
+	private int findSeparator(int from) {
+		for (int i = from; i < to; i++) {
+			char c = text.charAt(i);
+			if (separator == WHITESPACE ? isWhitespace(c) : c == separator) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int skipSeparator(int separatorStart) {
+		int i = separatorStart + 1;
+		if (separator == WHITESPACE || skipWhitespaceAfterSeparator) {
+			while (i < to && isWhitespace(text.charAt(i))) {
+				i++;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * Whitespace as defined by <code>\s</code>.
+	 */
+	public static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	public static int indexOf(CharSequence text, char c, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (text.charAt(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public static int lastIndexOf(CharSequence text, char c, int from, int to) {
+		for (int i = to - 1; i >= from; i--) {
+			if (text.charAt(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public static String substring(CharSequence text, int from, int to) {
+		if (text instanceof String) {
+			return ((String) text).substring(from, to);
+		}
+		return text.subSequence(from, to).toString();
+	}
+
+	/**
+	 * Same as {@link Integer#parseInt(String)} on the region.
+	 */
+	public static int parseInt(CharSequence text, int from, int to) {
+		int i = from;
+		boolean negative = false;
+		if (i < to && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+			negative = text.charAt(i) == '-';
+			i++;
+		}
+		// up to 9 digits can not overflow
+		if (i == to || to - i > 9) {
+			return Integer.parseInt(substring(text, from, to));
+		}
+		int value = 0;
+		for (; i < to; i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9') {
+				return Integer.parseInt(substring(text, from, to));
+			}
+			value = value * 10 + (c - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * Same as {@link Double#parseDouble(String)} on the region. Plain decimals
+	 * like <code>0.0667</code> are parsed directly, all other formats are
+	 * delegated to {@link Double#parseDouble(String)}.
+	 */
+	public static double parseDouble(CharSequence text, int from, int to) {
+		int i = from;
+		boolean negative = false;
+		if (i < to && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+			negative = text.charAt(i) == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int fractionDigits = 0;
+		boolean dot = false;
+		for (; i < to; i++) {
+			char c = text.charAt(i);
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+				if (dot) {
+					fractionDigits++;
+				}
+			} else if (c == '.' && !dot) {
+				dot = true;
+			} else {
+				return Double.parseDouble(substring(text, from, to));
+			}
+		}
+		// the mantissa and the power of ten are exact doubles, so a single
+		// division is correctly rounded
+		if (digits == 0 || digits > 15 || (dot && fractionDigits == 0) || digits == fractionDigits) {
+			return Double.parseDouble(substring(text, from, to));
+		}
+		double value = mantissa / POWERS_OF_TEN[fractionDigits];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Checks if the region matches <code>\d+[:]\d+[.]\d+</code>.
+	 */
+	public static boolean isSenseIdWeight(CharSequence text, int from, int to) {
+		int i = skipDigits(text, from, to);
+		if (i == from || i == to || text.charAt(i) != ':') {
+			return false;
+		}
+		int secondStart = i + 1;
+		i = skipDigits(text, secondStart, to);
+		if (i == secondStart || i == to || text.charAt(i) != '.') {
+			return false;
+		}
+		int thirdStart = i + 1;
+		i = skipDigits(text, thirdStart, to);
+		return i > thirdStart && i == to;
+	}
+
+	private static int skipDigits(CharSequence text, int from, int to) {
+		int i = from;
+		while (i < to && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+			i++;
+		}
+		return i;
+	}
+}
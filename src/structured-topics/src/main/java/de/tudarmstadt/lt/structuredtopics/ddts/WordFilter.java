@@ -0,0 +1,73 @@
+package de.tudarmstadt.lt.structuredtopics.ddts;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Predicate for a single word of a sense or cluster word. Implementations must
+ * be thread-safe, several filters are combined with {@link FilterChain}.
+ */
+public interface WordFilter {
+
+	/**
+	 * @return true if the word should be kept
+	 */
+	boolean accept(SingleWord word);
+
+	/**
+	 * Keeps words with one of the pos tags (ignoring case).
+	 */
+	static WordFilter posTags(Set<String> tags) {
+		Set<String> sortedTags = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		sortedTags.addAll(tags);
+		return word -> word.getPos() != null && sortedTags.contains(word.getPos());
+	}
+
+	/**
+	 * Keeps words which contain an ASCII letter, same as matching
+	 * <code>.*[a-zA-Z]+.*</code> with {@link #regex(String)} but without a
+	 * regex engine.
+	 */
+	static WordFilter containsAsciiLetter() {
+		return word -> {
+			String text = word.getText();
+			int end = textEnd(text);
+			boolean letter = false;
+			for (int i = 0; i < end; i++) {
+				char c = text.charAt(i);
+				if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+					letter = true;
+				} else if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+					// '.' does not match line terminators
+					return false;
+				}
+			}
+			return letter;
+		};
+	}
+
+	/**
+	 * Keeps words which match the regex. Each thread uses its own
+	 * {@link Matcher}.
+	 */
+	static WordFilter regex(String regex) {
+		Pattern pattern = Pattern.compile(regex);
+		ThreadLocal<Matcher> matchers = ThreadLocal.withInitial(() -> pattern.matcher(""));
+		return word -> {
+			String text = word.getText();
+			return matchers.get().reset(text.substring(0, textEnd(text))).matches();
+		};
+	}
+
+	/**
+	 * The text is matched without a pos tag, which is still attached if the
+	 * word was not parsed.
+	 */
+	static int textEnd(String text) {
+		int indexOfFirstHash = text.indexOf('#');
+		return indexOfFirstHash != -1 ? indexOfFirstHash : text.length();
+	}
+
+}
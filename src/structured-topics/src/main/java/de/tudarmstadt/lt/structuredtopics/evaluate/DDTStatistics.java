@@ -20,11 +20,9 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Sets;
 
-import de.tudarmstadt.lt.structuredtopics.ddts.ClusterWord;
 import de.tudarmstadt.lt.structuredtopics.ddts.Parser;
 import de.tudarmstadt.lt.structuredtopics.ddts.Parser.DDTIterator;
-import de.tudarmstadt.lt.structuredtopics.ddts.Sense;
-import de.tudarmstadt.lt.structuredtopics.ddts.SenseCluster;
+import de.tudarmstadt.lt.structuredtopics.ddts.SenseClusterView;
 
 /**
  * Prints different statistics for a dtt to the log.
@@ -67,16 +65,16 @@ public class DDTStatistics {
 		Set<String> uniqueClusterWords = Sets.newHashSetWithExpectedSize(1000 * 1000);
 		try (DDTIterator it = new Parser().iterateDDT(ddt)) {
 			while (it.hasNext()) {
-				SenseCluster cluster = it.next();
+				SenseClusterView cluster = it.nextView();
 				if (cluster == null) {
 					continue;
 				}
-				Sense sense = cluster.getSense();
-				uniqueSenseWords.add(sense.getFullWord());
+				uniqueSenseWords.add(cluster.getSenseFullWord());
 				totalSenses++;
-				totalClusterWords += cluster.getClusterWords().size();
-				for (ClusterWord clusterWord : cluster.getClusterWords()) {
-					uniqueClusterWords.add(clusterWord.getFullWord());
+				int clusterWordCount = cluster.getClusterWordCount();
+				totalClusterWords += clusterWordCount;
+				for (int i = 0; i < clusterWordCount; i++) {
+					uniqueClusterWords.add(cluster.getClusterWordFullWord(i));
 				}
 			}
 		} catch (IOException e) {
@@ -29,6 +29,7 @@ import com.google.common.collect.Maps;
 
 import de.tudarmstadt.lt.structuredtopics.Utils;
 import de.tudarmstadt.lt.structuredtopics.evaluate.DDTStatistics.DDTStats;
+import de.tudarmstadt.lt.structuredtopics.io.FileMetadata;
 
 public class Experiment2ResultAggregator {
 
@@ -110,7 +111,7 @@ public class Experiment2ResultAggregator {
 	private static Map<String, Map<Boolean, DDTStats>> ddtStats(File ddtDir) {
 		// ddt - filtered - similarityMetric - lineCount
 		Map<String, Map<Boolean, DDTStats>> ddtStats = Maps.newHashMap();
-		File[] ddts = ddtDir.listFiles();
+		File[] ddts = ddtDir.listFiles(FileMetadata.DATA_FILES);
 		Arrays.stream(ddts).parallel().forEach(ddt -> {
 			LOG.debug("Collecting stats for ddt {}", ddt.getAbsolutePath());
 			boolean filtered = ddt.getName().contains("filtered");
@@ -130,7 +131,7 @@ public class Experiment2ResultAggregator {
 	private static Map<String, Map<Boolean, Map<String, Integer>>> similaritiesStats(File simDir) {
 		// ddt - filtered - similarityMetric - lineCount
 		Map<String, Map<Boolean, Map<String, Integer>>> simStats = Maps.newHashMap();
-		File[] similarities = simDir.listFiles();
+		File[] similarities = simDir.listFiles(FileMetadata.DATA_FILES);
 		Arrays.stream(similarities).parallel().forEach(similaritiy -> {
 			LOG.debug("Collecting stats for similarities {}", similaritiy.getAbsolutePath());
 			String simName = similaritiy.getName();
@@ -156,7 +157,7 @@ public class Experiment2ResultAggregator {
 	private static Map<String, Map<Boolean, Map<String, Map<String, Integer>>>> clusterStats(File clusterDir) {
 		// ddt - filtered - similarityMetric - cwOption - lineCount
 		Map<String, Map<Boolean, Map<String, Map<String, Integer>>>> clusterStats = Maps.newHashMap();
-		File[] clusters = clusterDir.listFiles();
+		File[] clusters = clusterDir.listFiles(FileMetadata.DATA_FILES);
 		Arrays.stream(clusters).parallel().forEach(cluster -> {
 			LOG.debug("Collecting stats for clusters {}", cluster.getAbsolutePath());
 			String clusterName = cluster.getName();
@@ -188,7 +189,7 @@ public class Experiment2ResultAggregator {
 	private static Map<String, Map<Boolean, Map<String, Map<String, MappingStats>>>> mappingsStats(File clusterDir) {
 		// ddt - filtered - similarityMetric - cwOption - lineCount
 		Map<String, Map<Boolean, Map<String, Map<String, MappingStats>>>> mappingsStats = Maps.newHashMap();
-		File[] clusters = clusterDir.listFiles();
+		File[] clusters = clusterDir.listFiles(FileMetadata.DATA_FILES);
 		Arrays.stream(clusters).parallel().forEach(mappings -> {
 			LOG.debug("Collecting stats for mappings {}", mappings.getAbsolutePath());
 			String mappingName = mappings.getName();
@@ -13,9 +13,9 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
@@ -31,6 +31,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import de.tudarmstadt.lt.structuredtopics.Utils;
+import de.tudarmstadt.lt.structuredtopics.io.OutputSink;
 
 public class MapClustersToBabelnetSenses {
 
@@ -141,13 +142,16 @@ public class MapClustersToBabelnetSenses {
 	private static void scoreAndWriteClusters(File clusters, Map<String, Map<String, Double>> index, File outFile) {
 		DecimalFormat df = new DecimalFormat("0", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
 		df.setMaximumFractionDigits(340);
-		try (BufferedWriter out = Utils.openWriter(outFile, false)) {
+		try (BufferedWriter out = Utils.openWriter(outFile, false); OutputSink sink = new OutputSink(out, true)) {
 			List<String> lines = readLines(clusters);
 			int size = lines.size();
 			AtomicInteger count = new AtomicInteger();
-			CountDownLatch latch = new CountDownLatch(lines.size());
-			lines.parallelStream().forEach(line -> {
+			// the output keeps the order of the clusters
+			IntStream.range(0, size).parallel().forEach(lineIndex -> {
+				String line = lines.get(lineIndex);
+				OutputSink.Buffer buffer = null;
 				try {
+					buffer = sink.buffer();
 					if (count.incrementAndGet() % 100 == 0) {
 						LOG.info("Progress line {}/{}", count.get(), size);
 					}
@@ -193,18 +197,22 @@ public class MapClustersToBabelnetSenses {
 					topDomains += topSimpleScoreDomain + "\t" + df.format(topSimpleScore) + "\t";
 					topDomains += topCosineScoreDomain + "\t" + df.format(topCosineScore);
 
-					String outLine = clusterIndex + "\t" + clusterWords.length + "\t" + topDomains + "\t" + split[2];
-					synchronized (out) {
-						out.write(outLine + "\n");
-					}
+					buffer.append(clusterIndex).append('\t').append(clusterWords.length).append('\t')
+							.append(topDomains).append('\t').append(split[2]).append('\n');
 				} catch (Exception e) {
 					LOG.error("Error", e);
 				} finally {
-					latch.countDown();
+					if (buffer != null) {
+						try {
+							// also for failed lines, the sink waits for every
+							// line number
+							buffer.endRecord(lineIndex);
+						} catch (IOException e) {
+							LOG.error("Error", e);
+						}
+					}
 				}
 			});
-			// keep the stream open until all parallel work is done
-			latch.await();
 		} catch (Exception e) {
 			LOG.error("Error", e);
 		}
@@ -0,0 +1,174 @@
+package de.tudarmstadt.lt.structuredtopics.io;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metadata of a file as written by {@link MetadataWriter}: number of lines,
+ * size, CRC32 checksum of the file as stored and the settings of the program
+ * which produced it. The metadata is stored next to the file with the suffix
+ * {@value #SUFFIX} as properties, so readers can get the line count without
+ * decompressing the file.
+ * <p>
+ * The metadata is only used while size and modification time match the file,
+ * a file which was changed afterwards is treated as a file without metadata.
+ * The checksum is not verified on load, that would read the entire file, see
+ * {@link #checksum(File)}.
+ * <p>
+ * Directories with outputs also contain the sidecar files, use
+ * {@link #DATA_FILES} to list only the outputs.
+ */
+public class FileMetadata {
+
+	private static final Logger LOG = LoggerFactory.getLogger(FileMetadata.class);
+
+	public static final String SUFFIX = ".meta";
+
+	/**
+	 * Accepts all files except the sidecars of other files: metadata and
+	 * {@link GzipIndex} files.
+	 */
+	public static final FileFilter DATA_FILES = file -> !isSidecar(file);
+
+	private static final String KEY_LINES = "lines";
+	private static final String KEY_BYTES = "bytes";
+	private static final String KEY_LAST_MODIFIED = "lastModified";
+	private static final String KEY_CHECKSUM = "checksum";
+	private static final String SETTING_PREFIX = "setting.";
+
+	private final long lines;
+	private final long bytes;
+	private final long lastModified;
+	private final long checksum;
+	private final Map<String, String> settings;
+
+	public FileMetadata(long lines, long bytes, long lastModified, long checksum, Map<String, String> settings) {
+		this.lines = lines;
+		this.bytes = bytes;
+		this.lastModified = lastModified;
+		this.checksum = checksum;
+		this.settings = Collections.unmodifiableMap(new TreeMap<>(settings));
+	}
+
+	public long getLineCount() {
+		return lines;
+	}
+
+	/**
+	 * Size of the file as stored, e.g. compressed.
+	 */
+	public long getLength() {
+		return bytes;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * CRC32 of the file as stored.
+	 */
+	public long getChecksum() {
+		return checksum;
+	}
+
+	/**
+	 * Settings of the program which wrote the file.
+	 */
+	public Map<String, String> getSettings() {
+		return settings;
+	}
+
+	/**
+	 * True for the metadata and {@link GzipIndex} files which are stored next
+	 * to other files.
+	 */
+	public static boolean isSidecar(File file) {
+		String name = file.getName();
+		return name.endsWith(SUFFIX) || name.endsWith(GzipIndex.SUFFIX);
+	}
+
+	public static File getMetadataFile(File file) {
+		return new File(file.getPath() + SUFFIX);
+	}
+
+	/**
+	 * Loads the metadata of the file.
+	 *
+	 * @return null if there is no metadata or the metadata does not match the
+	 *         file
+	 */
+	public static FileMetadata load(File file) {
+		File metadataFile = getMetadataFile(file);
+		if (!metadataFile.exists()) {
+			return null;
+		}
+		Properties properties = new Properties();
+		try (InputStream in = new BufferedInputStream(new FileInputStream(metadataFile))) {
+			properties.load(in);
+			Map<String, String> settings = new TreeMap<>();
+			for (String key : properties.stringPropertyNames()) {
+				if (key.startsWith(SETTING_PREFIX)) {
+					settings.put(key.substring(SETTING_PREFIX.length()), properties.getProperty(key));
+				}
+			}
+			FileMetadata metadata = new FileMetadata(Long.parseLong(properties.getProperty(KEY_LINES)),
+					Long.parseLong(properties.getProperty(KEY_BYTES)),
+					Long.parseLong(properties.getProperty(KEY_LAST_MODIFIED)),
+					Long.parseLong(properties.getProperty(KEY_CHECKSUM), 16), settings);
+			if (metadata.bytes != file.length() || metadata.lastModified != file.lastModified()) {
+				LOG.warn("Ignoring outdated metadata {}", metadataFile.getAbsolutePath());
+				return null;
+			}
+			return metadata;
+		} catch (IOException | RuntimeException e) {
+			LOG.warn("Unable to read metadata {}", metadataFile.getAbsolutePath(), e);
+			return null;
+		}
+	}
+
+	public void save(File file) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(KEY_LINES, Long.toString(lines));
+		properties.setProperty(KEY_BYTES, Long.toString(bytes));
+		properties.setProperty(KEY_LAST_MODIFIED, Long.toString(lastModified));
+		properties.setProperty(KEY_CHECKSUM, Long.toHexString(checksum));
+		for (Map.Entry<String, String> setting : settings.entrySet()) {
+			properties.setProperty(SETTING_PREFIX + setting.getKey(), setting.getValue());
+		}
+		try (OutputStream out = new FileOutputStream(getMetadataFile(file))) {
+			properties.store(out, "Metadata of " + file.getName());
+		}
+	}
+
+	/**
+	 * Computes the CRC32 of the file as stored, same as
+	 * {@link #getChecksum()}. This reads the entire file.
+	 */
+	public static long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[64 * 1024];
+		try (InputStream in = new FileInputStream(file)) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				crc.update(buffer, 0, read);
+			}
+		}
+		return crc.getValue();
+	}
+
+}
@@ -0,0 +1,203 @@
+package de.tudarmstadt.lt.structuredtopics.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Offset index of a blocked gzip file as written by
+ * {@link ParallelGZIPOutputStream} in line aligned mode. Each block is an
+ * independent gzip member which starts at the beginning of a line, so blocks
+ * can be decompressed in parallel and a reader can start at any block.
+ * <p>
+ * The index is stored next to the gzip file with the suffix {@value #SUFFIX}.
+ * For each block it contains the offset of the compressed member, the offset
+ * of the uncompressed data and the number of the first line. The file itself
+ * remains a standard multi-member gzip file.
+ */
+public class GzipIndex {
+
+	private static final Logger LOG = LoggerFactory.getLogger(GzipIndex.class);
+
+	public static final String SUFFIX = ".idx";
+
+	private static final int MAGIC = 0x475a4958;
+	private static final int VERSION = 1;
+
+	private int blockCount = 0;
+	// one more entry than blocks, the last entry holds the totals
+	private long[] compressedOffsets = new long[17];
+	private long[] uncompressedOffsets = new long[17];
+	private long[] firstLines = new long[17];
+
+	/**
+	 * Appends a block at the end of the file.
+	 */
+	public void addBlock(long compressedLength, long uncompressedLength, long lines) {
+		if (blockCount + 2 > compressedOffsets.length) {
+			int newLength = compressedOffsets.length * 2 + 1;
+			compressedOffsets = Arrays.copyOf(compressedOffsets, newLength);
+			uncompressedOffsets = Arrays.copyOf(uncompressedOffsets, newLength);
+			firstLines = Arrays.copyOf(firstLines, newLength);
+		}
+		compressedOffsets[blockCount + 1] = compressedOffsets[blockCount] + compressedLength;
+		uncompressedOffsets[blockCount + 1] = uncompressedOffsets[blockCount] + uncompressedLength;
+		firstLines[blockCount + 1] = firstLines[blockCount] + lines;
+		blockCount++;
+	}
+
+	/**
+	 * Appends compressed data which does not contain any lines, like an empty
+	 * gzip member. It is read as part of the previous block.
+	 */
+	public void addPadding(long compressedLength) {
+		compressedOffsets[blockCount] += compressedLength;
+	}
+
+	public int getBlockCount() {
+		return blockCount;
+	}
+
+	public long getCompressedOffset(int block) {
+		return compressedOffsets[block];
+	}
+
+	public long getCompressedLength(int block) {
+		return compressedOffsets[block + 1] - compressedOffsets[block];
+	}
+
+	public long getUncompressedOffset(int block) {
+		return uncompressedOffsets[block];
+	}
+
+	public int getUncompressedLength(int block) {
+		return (int) (uncompressedOffsets[block + 1] - uncompressedOffsets[block]);
+	}
+
+	/**
+	 * Index of the first line of the block, the first line of the file has
+	 * index 0.
+	 */
+	public long getFirstLine(int block) {
+		return firstLines[block];
+	}
+
+	public long getLineCount() {
+		return firstLines[blockCount];
+	}
+
+	/**
+	 * Size of the gzip file.
+	 */
+	public long getCompressedLength() {
+		return compressedOffsets[blockCount];
+	}
+
+	public long getUncompressedLength() {
+		return uncompressedOffsets[blockCount];
+	}
+
+	/**
+	 * Returns the block which contains the line with the given index or
+	 * {@link #getBlockCount()} if the line is behind the last block.
+	 */
+	public int findBlock(long line) {
+		// last entry with a first line <= line, the totals entry included
+		int low = 0;
+		int high = blockCount;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (firstLines[middle] <= line) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Appends the blocks of the other index, e.g. for concatenated files.
+	 */
+	public void append(GzipIndex other) {
+		addPadding(other.compressedOffsets[0]);
+		for (int block = 0; block < other.blockCount; block++) {
+			addBlock(other.getCompressedLength(block), other.getUncompressedLength(block),
+					other.firstLines[block + 1] - other.firstLines[block]);
+		}
+	}
+
+	public static GzipIndex concatenate(List<GzipIndex> indices) {
+		GzipIndex result = new GzipIndex();
+		for (GzipIndex index : indices) {
+			result.append(index);
+		}
+		return result;
+	}
+
+	public static File getIndexFile(File gzipFile) {
+		return new File(gzipFile.getPath() + SUFFIX);
+	}
+
+	/**
+	 * Loads the index of the gzip file.
+	 *
+	 * @return null if there is no index or the index does not match the file
+	 */
+	public static GzipIndex load(File gzipFile) {
+		File indexFile = getIndexFile(gzipFile);
+		if (!indexFile.exists()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				LOG.warn("Ignoring invalid gzip index {}", indexFile.getAbsolutePath());
+				return null;
+			}
+			GzipIndex index = new GzipIndex();
+			int blockCount = in.readInt();
+			index.blockCount = blockCount;
+			index.compressedOffsets = new long[blockCount + 1];
+			index.uncompressedOffsets = new long[blockCount + 1];
+			index.firstLines = new long[blockCount + 1];
+			for (int i = 0; i <= blockCount; i++) {
+				index.compressedOffsets[i] = in.readLong();
+				index.uncompressedOffsets[i] = in.readLong();
+				index.firstLines[i] = in.readLong();
+			}
+			if (index.getCompressedLength() != gzipFile.length()) {
+				LOG.warn("Ignoring outdated gzip index {}", indexFile.getAbsolutePath());
+				return null;
+			}
+			return index;
+		} catch (IOException e) {
+			LOG.warn("Unable to read gzip index {}", indexFile.getAbsolutePath(), e);
+			return null;
+		}
+	}
+
+	public void save(File gzipFile) throws IOException {
+		File indexFile = getIndexFile(gzipFile);
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(blockCount);
+			for (int i = 0; i <= blockCount; i++) {
+				out.writeLong(compressedOffsets[i]);
+				out.writeLong(uncompressedOffsets[i]);
+				out.writeLong(firstLines[i]);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,159 @@
+package de.tudarmstadt.lt.structuredtopics.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * {@link LineReader} for blocked gzip files with a {@link GzipIndex}. The
+ * blocks are decompressed ahead of the reader on multiple threads, at most two
+ * blocks per thread at the same time. The reader can start at any line, only
+ * the blocks of the requested lines are read.
+ */
+public class IndexedGzipLineReader implements LineReader {
+
+	private final FileChannel channel;
+	private final GzipIndex index;
+	private final long endLine;
+	private final int lastBlock;
+	private final int maxPendingBlocks;
+	private final ExecutorService executor;
+	private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+	private final CharsetDecoder decoder = LineBuffer.newDecoder();
+	private final LineBuffer line = new LineBuffer();
+
+	private int nextBlock;
+	private ByteBuffer block;
+	private int position = 0;
+	private int linesToSkip;
+	private long lineNumber;
+
+	public IndexedGzipLineReader(File file, GzipIndex index, int threads) throws IOException {
+		this(file, index, 0, index.getLineCount(), threads);
+	}
+
+	/**
+	 * Reads the lines from <code>startLine</code> (inclusive) to
+	 * <code>endLine</code> (exclusive), the first line of the file has index
+	 * 0. {@link #getLineNumber()} returns the line number within the file.
+	 */
+	public IndexedGzipLineReader(File file, GzipIndex index, long startLine, long endLine, int threads)
+			throws IOException {
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		this.index = index;
+		this.endLine = Math.min(endLine, index.getLineCount());
+		this.nextBlock = index.findBlock(startLine);
+		this.lastBlock = this.endLine > startLine ? index.findBlock(this.endLine - 1) : nextBlock - 1;
+		this.linesToSkip = nextBlock < index.getBlockCount() ? (int) (startLine - index.getFirstLine(nextBlock)) : 0;
+		this.lineNumber = startLine - linesToSkip;
+		this.maxPendingBlocks = 2 * threads;
+		this.executor = Executors.newFixedThreadPool(threads,
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("gunzip-%d").build());
+		submitBlocks();
+	}
+
+	private void submitBlocks() {
+		while (pending.size() < maxPendingBlocks && nextBlock <= lastBlock) {
+			int current = nextBlock++;
+			pending.add(executor.submit(() -> decompress(current)));
+		}
+	}
+
+	private byte[] decompress(int blockIndex) throws IOException {
+		ByteBuffer compressed = ByteBuffer.allocate((int) index.getCompressedLength(blockIndex));
+		long offset = index.getCompressedOffset(blockIndex);
+		while (compressed.hasRemaining()) {
+			if (channel.read(compressed, offset + compressed.position()) < 0) {
+				throw new EOFException("Gzip file is shorter than its index");
+			}
+		}
+		byte[] uncompressed = new byte[index.getUncompressedLength(blockIndex)];
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.array()))) {
+			ByteStreams.readFully(in, uncompressed);
+		}
+		return uncompressed;
+	}
+
+	@Override
+	public boolean nextLine() throws IOException {
+		while (true) {
+			if (lineNumber >= endLine) {
+				return false;
+			}
+			if (block == null || position == block.capacity()) {
+				if (!takeBlock()) {
+					return false;
+				}
+			}
+			int start = position;
+			int end = start;
+			int limit = block.capacity();
+			while (end < limit && block.get(end) != '\n') {
+				end++;
+			}
+			// skip the line break
+			position = end < limit ? end + 1 : end;
+			lineNumber++;
+			if (linesToSkip > 0) {
+				linesToSkip--;
+				continue;
+			}
+			if (end > start && block.get(end - 1) == '\r') {
+				end--;
+			}
+			line.decode(block, start, end, decoder);
+			return true;
+		}
+	}
+
+	private boolean takeBlock() throws IOException {
+		Future<byte[]> next = pending.poll();
+		if (next == null) {
+			return false;
+		}
+		try {
+			block = ByteBuffer.wrap(next.get());
+			position = 0;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while decompressing");
+		} catch (ExecutionException e) {
+			throw new IOException("Error while decompressing", e.getCause());
+		}
+		submitBlocks();
+		return true;
+	}
+
+	@Override
+	public LineBuffer getLine() {
+		return line;
+	}
+
+	@Override
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	@Override
+	public void close() throws IOException {
+		executor.shutdownNow();
+		channel.close();
+	}
+
+}
@@ -0,0 +1,131 @@
+package de.tudarmstadt.lt.structuredtopics.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable line of a {@link LineReader}. The content is only valid until the
+ * next line is read, use {@link #toString()} to keep a copy.
+ */
+public final class LineBuffer implements CharSequence {
+
+	private char[] chars = new char[1024];
+	private int length = 0;
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index >= length) {
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		}
+		return chars[index];
+	}
+
+	/**
+	 * Returns a copy of the region as {@link String}.
+	 */
+	@Override
+	public String subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException(start + ", " + end);
+		}
+		return new String(chars, start, end - start);
+	}
+
+	/**
+	 * Checks if the region contains the same characters as the other sequence.
+	 */
+	public boolean regionEquals(int start, int end, CharSequence other) {
+		if (end - start != other.length()) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			if (chars[i] != other.charAt(i - start)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void writeTo(Writer out) throws IOException {
+		out.write(chars, 0, length);
+	}
+
+	/**
+	 * Writes the region without creating an intermediate {@link String}.
+	 */
+	public void writeTo(Writer out, int start, int end) throws IOException {
+		out.write(chars, start, end - start);
+	}
+
+	@Override
+	public String toString() {
+		return new String(chars, 0, length);
+	}
+
+	/**
+	 * Ensures that the buffer can hold the given number of characters and
+	 * returns the backing array. Existing content is kept.
+	 */
+	char[] ensureCapacity(int capacity) {
+		if (chars.length < capacity) {
+			chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+		}
+		return chars;
+	}
+
+	void setLength(int length) {
+		this.length = length;
+	}
+
+	/**
+	 * UTF-8 decoder for {@link #decode(ByteBuffer, int, int, CharsetDecoder)}
+	 * which replaces invalid input like {@link java.io.InputStreamReader}.
+	 */
+	static CharsetDecoder newDecoder() {
+		return StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Replaces the content with the UTF-8 encoded bytes [start, end). ASCII is
+	 * copied directly, the decoder is only used for other characters.
+	 */
+	void decode(ByteBuffer bytes, int start, int end, CharsetDecoder decoder) {
+		// utf-8 never needs more chars than bytes
+		ensureCapacity(end - start);
+		length = 0;
+		for (int i = start; i < end; i++) {
+			byte b = bytes.get(i);
+			if (b < 0) {
+				length += decodeNonAscii(bytes, i, end, decoder);
+				return;
+			}
+			chars[length++] = (char) b;
+		}
+	}
+
+	private int decodeNonAscii(ByteBuffer bytes, int start, int end, CharsetDecoder decoder) {
+		// positioned through Buffer, the covariant overrides require java 9
+		Buffer region = bytes.duplicate();
+		region.limit(end);
+		region.position(start);
+		CharBuffer out = CharBuffer.wrap(chars, length, chars.length - length);
+		decoder.reset();
+		decoder.decode((ByteBuffer) region, out, true);
+		decoder.flush(out);
+		return out.position() - length;
+	}
+
+}
@@ -0,0 +1,153 @@
+package de.tudarmstadt.lt.structuredtopics.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+
+/**
+ * A byte range of a text file which starts at the beginning of a line and ends
+ * after a line break (or at the end of the file). The ranges of a file can be
+ * read independently, e.g. on multiple threads. Line breaks never occur inside
+ * of UTF-8 multi-byte characters, so each range can be decoded on its own.
+ * <p>
+ * Gzip files can only be split if they have a {@link GzipIndex}, the ranges
+ * then consist of complete gzip members.
+ */
+public class LineRange {
+
+	private final int index;
+	private final long start;
+	private final long end;
+	private final boolean compressed;
+
+	public LineRange(int index, long start, long end) {
+		this(index, start, end, false);
+	}
+
+	public LineRange(int index, long start, long end, boolean compressed) {
+		this.index = index;
+		this.start = start;
+		this.end = end;
+		this.compressed = compressed;
+	}
+
+	/**
+	 * Checks if {@link #split(File, int)} can return more than one range for
+	 * the file.
+	 */
+	public static boolean isSplittable(File file) {
+		return !isCompressed(file) || GzipIndex.load(file) != null;
+	}
+
+	private static boolean isCompressed(File file) {
+		return file.getName().endsWith(".gz");
+	}
+
+	/**
+	 * Splits the file into at most <code>count</code> ranges of about the
+	 * same size. Fewer ranges are returned if the file has less lines (or gzip
+	 * blocks) than requested ranges.
+	 */
+	public static List<LineRange> split(File file, int count) throws IOException {
+		if (isCompressed(file)) {
+			return splitCompressed(file, count);
+		}
+		List<LineRange> ranges = Lists.newArrayList();
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			long length = in.length();
+			long start = 0;
+			for (int i = 1; i < count && start < length; i++) {
+				long end = nextLineStart(in, Math.max(start, length * i / count));
+				if (end > start && end < length) {
+					ranges.add(new LineRange(ranges.size(), start, end));
+					start = end;
+				}
+			}
+			ranges.add(new LineRange(ranges.size(), start, length));
+		}
+		return ranges;
+	}
+
+	private static List<LineRange> splitCompressed(File file, int count) {
+		List<LineRange> ranges = Lists.newArrayList();
+		long length = file.length();
+		GzipIndex gzipIndex = GzipIndex.load(file);
+		long start = 0;
+		if (gzipIndex != null) {
+			int blocks = gzipIndex.getBlockCount();
+			for (int i = 1; i < count; i++) {
+				int block = Math.min(blocks, (int) ((long) blocks * i / count));
+				long end = block < blocks ? gzipIndex.getCompressedOffset(block) : length;
+				if (end > start && end < length) {
+					ranges.add(new LineRange(ranges.size(), start, end, true));
+					start = end;
+				}
+			}
+		}
+		ranges.add(new LineRange(ranges.size(), start, length, true));
+		return ranges;
+	}
+
+	/**
+	 * Position after the first line break at or after the given position.
+	 */
+	private static long nextLineStart(RandomAccessFile in, long position) throws IOException {
+		byte[] buffer = new byte[64 * 1024];
+		in.seek(position);
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			for (int i = 0; i < read; i++) {
+				if (buffer[i] == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return position;
+	}
+
+	/**
+	 * Opens a reader for the lines of this range.
+	 */
+	public BufferedReader openReader(File file) throws IOException {
+		FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+		channel.position(start);
+		InputStream in = ByteStreams.limit(Channels.newInputStream(channel), end - start);
+		if (compressed) {
+			in = new GZIPInputStream(in, 64 * 1024);
+		}
+		return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+	}
+
+	/**
+	 * Position of this range in the file, the first range has index 0.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long getEnd() {
+		return end;
+	}
+
+	@Override
+	public String toString() {
+		return "LineRange [index=" + index + ", start=" + start + ", end=" + end + "]";
+	}
+
+}
@@ -0,0 +1,30 @@
+package de.tudarmstadt.lt.structuredtopics.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads the lines of a text file into a reusable {@link LineBuffer} instead of
+ * creating a {@link String} per line. Lines are terminated by <code>\n</code>
+ * or <code>\r\n</code>, the terminator is not part of the line.
+ */
+public interface LineReader extends Closeable {
+
+	/**
+	 * Reads the next line into {@link #getLine()}.
+	 *
+	 * @return false if the end of the input is reached
+	 */
+	boolean nextLine() throws IOException;
+
+	/**
+	 * The current line, overwritten by the next call of {@link #nextLine()}.
+	 */
+	LineBuffer getLine();
+
+	/**
+	 * Number of the current line, the first line has number 1.
+	 */
+	long getLineNumber();
+
+}
@@ -0,0 +1,113 @@
+package de.tudarmstadt.lt.structuredtopics.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.CharsetDecoder;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link LineReader} for uncompressed UTF-8 files based on memory mapping.
+ * The file is mapped in windows of at most {@link #MAX_WINDOW_SIZE} bytes
+ * which end after a line break, files larger than 2 GB are read with multiple
+ * windows. Lines are decoded directly from the mapped bytes into the
+ * {@link LineBuffer}.
+ */
+public class MappedLineReader implements LineReader {
+
+	public static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+	private final FileChannel channel;
+	private final long fileLength;
+	private final int maxWindowSize;
+	private final CharsetDecoder decoder = LineBuffer.newDecoder();
+	private final LineBuffer line = new LineBuffer();
+
+	private ByteBuffer window;
+	private long windowStart = 0;
+	private int windowLimit = 0;
+	private int position = 0;
+	private long lineNumber = 0;
+
+	public MappedLineReader(File file) throws IOException {
+		this(file, MAX_WINDOW_SIZE);
+	}
+
+	/**
+	 * @param maxWindowSize
+	 *            maximum number of bytes per mapping, limits the length of a
+	 *            single line
+	 */
+	public MappedLineReader(File file, int maxWindowSize) throws IOException {
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		this.fileLength = channel.size();
+		this.maxWindowSize = maxWindowSize;
+	}
+
+	@Override
+	public boolean nextLine() throws IOException {
+		if (window == null || position == windowLimit) {
+			if (!mapNextWindow()) {
+				return false;
+			}
+		}
+		int start = position;
+		int end = start;
+		while (end < windowLimit && window.get(end) != '\n') {
+			end++;
+		}
+		// skip the line break
+		position = end < windowLimit ? end + 1 : end;
+		if (end > start && window.get(end - 1) == '\r') {
+			end--;
+		}
+		line.decode(window, start, end, decoder);
+		lineNumber++;
+		return true;
+	}
+
+	private boolean mapNextWindow() throws IOException {
+		if (window != null) {
+			windowStart += windowLimit;
+		}
+		long remaining = fileLength - windowStart;
+		if (remaining <= 0) {
+			return false;
+		}
+		int size = (int) Math.min(remaining, maxWindowSize);
+		window = channel.map(MapMode.READ_ONLY, windowStart, size);
+		position = 0;
+		windowLimit = size;
+		if (size < remaining) {
+			// end the window after the last complete line
+			int lastLineBreak = size - 1;
+			while (lastLineBreak >= 0 && window.get(lastLineBreak) != '\n') {
+				lastLineBreak--;
+			}
+			if (lastLineBreak < 0) {
+				throw new IOException("Line at byte " + windowStart + " is longer than " + maxWindowSize + " bytes");
+			}
+			windowLimit = lastLineBreak + 1;
+		}
+		return true;
+	}
+
+	@Override
+	public LineBuffer getLine() {
+		return line;
+	}
+
+	@Override
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		channel.close();
+	}
+
+}
@@ -0,0 +1,88 @@
+package de.tudarmstadt.lt.structuredtopics.io;
+
+import java.io.File;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.zip.Checksum;
+
+/**
+ * Counts the lines written to a file and saves the {@link FileMetadata} next
+ * to the file on close. Lines are counted like
+ * {@link java.io.BufferedReader#readLine()} reads them, a last line without a
+ * line break is counted as well.
+ * <p>
+ * The checksum must be updated with the bytes written to the file, e.g. by a
+ * {@link java.util.zip.CheckedOutputStream} below the compression, so the file
+ * is not read again.
+ */
+public class MetadataWriter extends FilterWriter {
+
+	private final File file;
+	private final Checksum checksum;
+	private final Map<String, String> settings;
+	private long lines = 0;
+	private boolean afterCarriageReturn = false;
+	private boolean lineOpen = false;
+	private boolean closed = false;
+
+	public MetadataWriter(Writer out, File file, Checksum checksum, Map<String, String> settings) {
+		super(out);
+		this.file = file;
+		this.checksum = checksum;
+		this.settings = settings;
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		out.write(c);
+		count((char) c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		out.write(cbuf, off, len);
+		for (int i = off; i < off + len; i++) {
+			count(cbuf[i]);
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		out.write(str, off, len);
+		for (int i = off; i < off + len; i++) {
+			count(str.charAt(i));
+		}
+	}
+
+	private void count(char c) {
+		if (c == '\n') {
+			// \r\n is one line break
+			if (!afterCarriageReturn) {
+				lines++;
+			}
+			afterCarriageReturn = false;
+			lineOpen = false;
+		} else if (c == '\r') {
+			lines++;
+			afterCarriageReturn = true;
+			lineOpen = false;
+		} else {
+			afterCarriageReturn = false;
+			lineOpen = true;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		super.close();
+		long total = lineOpen ? lines + 1 : lines;
+		new FileMetadata(total, file.length(), file.lastModified(), checksum.getValue(), settings).save(file);
+	}
+
+}
@@ -0,0 +1,352 @@
+package de.tudarmstadt.lt.structuredtopics.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the output of several worker threads and writes it with a single
+ * writer thread. Each worker formats its records into its own
+ * {@link Buffer}, full buffers are handed to the writer thread as chunks over
+ * a bounded queue. The workers only synchronize once per chunk instead of
+ * once per line.
+ * <p>
+ * Without ordering, the records of different workers are written in the
+ * order in which the chunks arrive. In ordered mode, every record has a
+ * sequence number and the records are written in the order of their
+ * sequence numbers, e.g. the line numbers of the input. The sequence numbers
+ * must start at 0 and must not have gaps, so a record has to be ended for
+ * every input even if it has no output. Only the queue of chunks is bounded:
+ * records which arrive before their predecessors are kept by the writer
+ * thread until the predecessors arrive, and a predecessor may sit in the
+ * partial buffer of a worker which has no more input. Callers which process
+ * the input in batches therefore {@link #flush()} the buffers after each
+ * batch, which bounds the waiting records to about one batch.
+ * <p>
+ * {@link #close()} writes the remaining buffers and waits for the writer
+ * thread, the underlying writer is not closed.
+ */
+public class OutputSink implements Closeable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(OutputSink.class);
+
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+	private static final Chunk END = new Chunk(new StringBuilder(), null, null, 0);
+
+	private final Writer out;
+	private final boolean ordered;
+	private final int chunkSize;
+	private final BlockingQueue<Chunk> chunks;
+	private final ConcurrentLinkedQueue<Buffer> buffers = new ConcurrentLinkedQueue<>();
+	private final ThreadLocal<Buffer> threadBuffers = ThreadLocal.withInitial(this::newBuffer);
+	private final Thread writer;
+	private volatile IOException error;
+	private boolean closed = false;
+
+	public OutputSink(Writer out, boolean ordered) {
+		this(out, ordered, DEFAULT_CHUNK_SIZE, 4 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param chunkSize
+	 *            number of chars after which a buffer is handed to the writer
+	 * @param maxPendingChunks
+	 *            workers wait if this many chunks are not written yet
+	 */
+	public OutputSink(Writer out, boolean ordered, int chunkSize, int maxPendingChunks) {
+		this.out = out;
+		this.ordered = ordered;
+		this.chunkSize = chunkSize;
+		this.chunks = new ArrayBlockingQueue<>(maxPendingChunks);
+		this.writer = new Thread(this::writeChunks, "output-sink");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Returns the buffer of the calling thread.
+	 */
+	public Buffer buffer() throws IOException {
+		if (error != null) {
+			throw new IOException("Error while writing the output", error);
+		}
+		return threadBuffers.get();
+	}
+
+	private Buffer newBuffer() {
+		Buffer buffer = new Buffer();
+		buffers.add(buffer);
+		return buffer;
+	}
+
+	/**
+	 * Output of one worker thread. Records are appended and ended with
+	 * {@link #endRecord()} or, in ordered mode, {@link #endRecord(long)}.
+	 */
+	public class Buffer implements Appendable {
+
+		private StringBuilder text = new StringBuilder(chunkSize + 256);
+		private long[] sequences = ordered ? new long[64] : null;
+		private int[] ends = ordered ? new int[64] : null;
+		private int records = 0;
+		/**
+		 * Length of the text when the current record started
+		 */
+		private int recordStart = 0;
+
+		private Buffer() {
+		}
+
+		@Override
+		public Buffer append(CharSequence s) {
+			text.append(s);
+			return this;
+		}
+
+		@Override
+		public Buffer append(CharSequence s, int start, int end) {
+			text.append(s, start, end);
+			return this;
+		}
+
+		@Override
+		public Buffer append(char c) {
+			text.append(c);
+			return this;
+		}
+
+		public Buffer append(int i) {
+			text.append(i);
+			return this;
+		}
+
+		public Buffer append(float f) {
+			text.append(f);
+			return this;
+		}
+
+		public Buffer append(double d) {
+			text.append(d);
+			return this;
+		}
+
+		/**
+		 * Ends a record, the buffer is handed to the writer if it is full.
+		 * Only for sinks without ordering.
+		 */
+		public void endRecord() throws IOException {
+			if (ordered) {
+				throw new IllegalStateException("Ordered sinks require a sequence number");
+			}
+			recordStart = text.length();
+			if (text.length() >= chunkSize) {
+				handOver();
+			}
+		}
+
+		/**
+		 * Ends the record with the given sequence number, which contains
+		 * everything appended since the previous record of this buffer.
+		 */
+		public void endRecord(long sequence) throws IOException {
+			if (!ordered) {
+				throw new IllegalStateException("Sequence numbers require an ordered sink");
+			}
+			if (records == sequences.length) {
+				sequences = Arrays.copyOf(sequences, records * 2);
+				ends = Arrays.copyOf(ends, records * 2);
+			}
+			sequences[records] = sequence;
+			ends[records] = text.length();
+			records++;
+			recordStart = text.length();
+			if (text.length() >= chunkSize) {
+				handOver();
+			}
+		}
+
+		private void handOver() throws IOException {
+			Chunk chunk = new Chunk(text, sequences, ends, records);
+			text = new StringBuilder(chunkSize + 256);
+			if (ordered) {
+				sequences = new long[sequences.length];
+				ends = new int[ends.length];
+			}
+			records = 0;
+			recordStart = 0;
+			put(chunk);
+		}
+
+		/**
+		 * Drops everything appended since the previous record, e.g. the
+		 * partial output of a failed input.
+		 */
+		public void discardRecord() {
+			text.setLength(recordStart);
+		}
+
+		private boolean isEmpty() {
+			return text.length() == 0 && records == 0;
+		}
+	}
+
+	private static class Chunk {
+		private final StringBuilder text;
+		private final long[] sequences;
+		private final int[] ends;
+		private final int records;
+
+		private Chunk(StringBuilder text, long[] sequences, int[] ends, int records) {
+			this.text = text;
+			this.sequences = sequences;
+			this.ends = ends;
+			this.records = records;
+		}
+	}
+
+	/**
+	 * Record of an ordered chunk which waits for its predecessors.
+	 */
+	private static class Pending implements Comparable<Pending> {
+		private final long sequence;
+		private final Chunk chunk;
+		private final int start;
+		private final int end;
+
+		private Pending(long sequence, Chunk chunk, int start, int end) {
+			this.sequence = sequence;
+			this.chunk = chunk;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int compareTo(Pending o) {
+			return Long.compare(sequence, o.sequence);
+		}
+	}
+
+	private void put(Chunk chunk) throws IOException {
+		try {
+			while (!chunks.offer(chunk, 1, TimeUnit.SECONDS)) {
+				if (error != null) {
+					throw new IOException("Error while writing the output", error);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing the output");
+		}
+	}
+
+	private void writeChunks() {
+		char[] chars = new char[chunkSize + 256];
+		PriorityQueue<Pending> pending = new PriorityQueue<>();
+		long next = 0;
+		try {
+			while (true) {
+				Chunk chunk = chunks.take();
+				if (chunk == END) {
+					break;
+				}
+				if (!ordered) {
+					chars = write(chunk.text, 0, chunk.text.length(), chars);
+					continue;
+				}
+				int start = 0;
+				for (int i = 0; i < chunk.records; i++) {
+					int end = chunk.ends[i];
+					if (chunk.sequences[i] == next) {
+						chars = write(chunk.text, start, end, chars);
+						next++;
+						while (!pending.isEmpty() && pending.peek().sequence == next) {
+							Pending p = pending.poll();
+							chars = write(p.chunk.text, p.start, p.end, chars);
+							next++;
+						}
+					} else {
+						pending.add(new Pending(chunk.sequences[i], chunk, start, end));
+					}
+					start = end;
+				}
+			}
+			if (!pending.isEmpty()) {
+				LOG.warn("Missing record {}, writing {} remaining records in order", next, pending.size());
+				while (!pending.isEmpty()) {
+					Pending p = pending.poll();
+					chars = write(p.chunk.text, p.start, p.end, chars);
+				}
+			}
+		} catch (InterruptedException e) {
+			// closed after an error of a worker
+		} catch (IOException e) {
+			error = e;
+			// unblock the workers
+			chunks.clear();
+		}
+	}
+
+	private char[] write(StringBuilder text, int start, int end, char[] chars) throws IOException {
+		int length = end - start;
+		if (chars.length < length) {
+			chars = new char[length];
+		}
+		text.getChars(start, end, chars, 0);
+		out.write(chars, 0, length);
+		return chars;
+	}
+
+	/**
+	 * Hands the partial buffers of all threads to the writer thread. Must
+	 * only be called while no worker appends to its buffer, e.g. between two
+	 * batches of parallel work.
+	 */
+	public void flush() throws IOException {
+		if (error != null) {
+			throw new IOException("Error while writing the output", error);
+		}
+		for (Buffer buffer : buffers) {
+			if (!buffer.isEmpty()) {
+				buffer.handOver();
+			}
+		}
+	}
+
+	/**
+	 * Writes the remaining buffers of all threads and waits until everything
+	 * is written. Must be called after all workers are finished.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			flush();
+			put(END);
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing the output");
+		} finally {
+			writer.interrupt();
+			buffers.clear();
+		}
+		if (error != null) {
+			throw new IOException("Error while writing the output", error);
+		}
+	}
+
+}
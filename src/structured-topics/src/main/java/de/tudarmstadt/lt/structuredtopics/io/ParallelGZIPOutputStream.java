@@ -0,0 +1,233 @@
+package de.tudarmstadt.lt.structuredtopics.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Gzip output stream which compresses independent blocks on multiple threads
+ * (similar to pigz). Each block is written as a complete gzip member, the
+ * result is a standard multi-member gzip file which can be read by any gzip
+ * reader including {@link java.util.zip.GZIPInputStream}.
+ * <p>
+ * The blocks are written in order, at most two blocks per thread are
+ * compressed or waiting at the same time. Each call of {@link #flush()} ends
+ * the current block, avoid flushing frequently.
+ * <p>
+ * If an index file is given, the blocks end at line breaks and the offsets of
+ * the blocks are stored in a {@link GzipIndex}, which allows readers to
+ * decompress blocks in parallel and to seek to lines. Lines longer than the
+ * block size enlarge the block.
+ */
+public class ParallelGZIPOutputStream extends OutputStream {
+
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+	private final OutputStream out;
+	private final int blockSize;
+	private final int maxPendingBlocks;
+	private final ExecutorService executor;
+	private final Deque<Future<Block>> pending = new ArrayDeque<>();
+	private final File indexFile;
+	private final GzipIndex index;
+
+	private byte[] buffer;
+	private int position = 0;
+	private boolean anyBlockWritten = false;
+	private boolean closed = false;
+
+	private static class Block {
+		private final byte[] compressed;
+		private final int uncompressedLength;
+		private final int lines;
+
+		private Block(byte[] compressed, int uncompressedLength, int lines) {
+			this.compressed = compressed;
+			this.uncompressedLength = uncompressedLength;
+			this.lines = lines;
+		}
+	}
+
+	public ParallelGZIPOutputStream(OutputStream out, int threads) {
+		this(out, threads, DEFAULT_BLOCK_SIZE);
+	}
+
+	public ParallelGZIPOutputStream(OutputStream out, int threads, int blockSize) {
+		this(out, threads, blockSize, null);
+	}
+
+	/**
+	 * @param indexFile
+	 *            the gzip file, the {@link GzipIndex} is saved next to it on
+	 *            close. Null disables the index and the line alignment.
+	 */
+	public ParallelGZIPOutputStream(OutputStream out, int threads, int blockSize, File indexFile) {
+		this.out = out;
+		this.indexFile = indexFile;
+		this.index = indexFile == null ? null : new GzipIndex();
+		this.blockSize = blockSize;
+		this.maxPendingBlocks = 2 * threads;
+		this.buffer = new byte[blockSize];
+		this.executor = Executors.newFixedThreadPool(threads,
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("gzip-%d").build());
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		buffer[position++] = (byte) b;
+		if (position == buffer.length) {
+			submitFullBlock();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			int length = Math.min(len, buffer.length - position);
+			System.arraycopy(b, off, buffer, position, length);
+			position += length;
+			off += length;
+			len -= length;
+			if (position == buffer.length) {
+				submitFullBlock();
+			}
+		}
+	}
+
+	private void submitFullBlock() throws IOException {
+		if (index == null) {
+			submitBlock(position);
+			return;
+		}
+		int end = lineAlignedEnd();
+		if (end == 0) {
+			// no line break in the whole block
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		} else {
+			submitBlock(end);
+		}
+	}
+
+	/**
+	 * End of the last complete line in the buffer or 0.
+	 */
+	private int lineAlignedEnd() {
+		for (int i = position - 1; i >= 0; i--) {
+			if (buffer[i] == '\n') {
+				return i + 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Submits the first <code>length</code> bytes of the buffer, the remaining
+	 * bytes are moved to a new buffer.
+	 */
+	private void submitBlock(int length) throws IOException {
+		byte[] block = buffer;
+		boolean countLines = index != null;
+		pending.add(executor.submit(() -> compress(block, length, countLines)));
+		int remaining = position - length;
+		buffer = new byte[Math.max(blockSize, remaining * 2)];
+		System.arraycopy(block, length, buffer, 0, remaining);
+		position = remaining;
+		while (pending.size() >= maxPendingBlocks) {
+			writeOldestBlock();
+		}
+	}
+
+	private void writeOldestBlock() throws IOException {
+		try {
+			Block block = pending.poll().get();
+			out.write(block.compressed);
+			if (index != null) {
+				index.addBlock(block.compressed.length, block.uncompressedLength, block.lines);
+			}
+			anyBlockWritten = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while compressing");
+		} catch (ExecutionException e) {
+			throw new IOException("Error while compressing", e.getCause());
+		}
+	}
+
+	private static Block compress(byte[] block, int length, boolean countLines) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 64 * 1024)) {
+			gzip.write(block, 0, length);
+		}
+		int lines = 0;
+		if (countLines) {
+			for (int i = 0; i < length; i++) {
+				if (block[i] == '\n') {
+					lines++;
+				}
+			}
+			if (length > 0 && block[length - 1] != '\n') {
+				// last line without line break
+				lines++;
+			}
+		}
+		return new Block(compressed.toByteArray(), length, lines);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		flush(false);
+	}
+
+	/**
+	 * Ends the current block, in line aligned mode only complete lines are
+	 * written unless the stream is closed.
+	 */
+	private void flush(boolean closing) throws IOException {
+		int end = index == null || closing ? position : lineAlignedEnd();
+		if (end > 0) {
+			submitBlock(end);
+		}
+		while (!pending.isEmpty()) {
+			writeOldestBlock();
+		}
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			flush(true);
+			if (!anyBlockWritten) {
+				// an empty gzip member, keeps empty files readable
+				byte[] empty = compress(buffer, 0, false).compressed;
+				out.write(empty);
+				if (index != null) {
+					index.addPadding(empty.length);
+				}
+			}
+			if (index != null) {
+				index.save(indexFile);
+			}
+		} finally {
+			executor.shutdownNow();
+			out.close();
+		}
+	}
+
+}
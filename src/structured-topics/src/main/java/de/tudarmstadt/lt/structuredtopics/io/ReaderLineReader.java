@@ -0,0 +1,80 @@
+package de.tudarmstadt.lt.structuredtopics.io;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * {@link LineReader} on top of a {@link Reader}, e.g. for compressed files.
+ * The characters are copied from a read buffer into the {@link LineBuffer}
+ * without creating a {@link String} per line.
+ */
+public class ReaderLineReader implements LineReader {
+
+	private final Reader in;
+	private final char[] buffer = new char[64 * 1024];
+	private final LineBuffer line = new LineBuffer();
+
+	private int position = 0;
+	private int limit = 0;
+	private long lineNumber = 0;
+
+	public ReaderLineReader(Reader in) {
+		this.in = in;
+	}
+
+	@Override
+	public boolean nextLine() throws IOException {
+		int length = 0;
+		boolean anyRead = false;
+		while (true) {
+			if (position == limit) {
+				limit = in.read(buffer);
+				position = 0;
+				if (limit <= 0) {
+					limit = 0;
+					if (!anyRead) {
+						return false;
+					}
+					// last line without line break
+					break;
+				}
+			}
+			anyRead = true;
+			int end = position;
+			while (end < limit && buffer[end] != '\n') {
+				end++;
+			}
+			char[] chars = line.ensureCapacity(length + end - position);
+			System.arraycopy(buffer, position, chars, length, end - position);
+			length += end - position;
+			if (end < limit) {
+				// skip the line break
+				position = end + 1;
+				break;
+			}
+			position = end;
+		}
+		if (length > 0 && line.ensureCapacity(length)[length - 1] == '\r') {
+			length--;
+		}
+		line.setLength(length);
+		lineNumber++;
+		return true;
+	}
+
+	@Override
+	public LineBuffer getLine() {
+		return line;
+	}
+
+	@Override
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
@@ -0,0 +1,89 @@
+package de.tudarmstadt.lt.structuredtopics.io;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * Options of {@link de.tudarmstadt.lt.structuredtopics.Utils#openWriter(File, WriterOptions)}.
+ * By default the file is overwritten and compressed on a single thread if
+ * its name ends with .gz.
+ */
+public class WriterOptions {
+
+	private boolean append = false;
+	private boolean gzip = false;
+	private int compressionThreads = 1;
+	private boolean indexed = false;
+	private Map<String, String> settings = null;
+
+	/**
+	 * Appends to an existing file, not possible with an index or metadata.
+	 */
+	public WriterOptions append(boolean append) {
+		this.append = append;
+		return this;
+	}
+
+	/**
+	 * Compresses the output regardless of the file name.
+	 */
+	public WriterOptions gzip(boolean gzip) {
+		this.gzip = gzip;
+		return this;
+	}
+
+	/**
+	 * With more than one thread, the output is compressed in parallel by a
+	 * {@link ParallelGZIPOutputStream}.
+	 */
+	public WriterOptions compressionThreads(int compressionThreads) {
+		this.compressionThreads = compressionThreads;
+		return this;
+	}
+
+	/**
+	 * Writes line aligned blocks and a {@link GzipIndex} next to a compressed
+	 * output, which remains readable by any gzip reader.
+	 */
+	public WriterOptions indexed(boolean indexed) {
+		this.indexed = indexed;
+		return this;
+	}
+
+	/**
+	 * Saves the {@link FileMetadata} with line count, size, checksum and the
+	 * given settings next to the file on close, see {@link MetadataWriter}.
+	 */
+	public WriterOptions metadata(Map<String, String> settings) {
+		this.settings = settings;
+		return this;
+	}
+
+	public boolean isAppend() {
+		return append;
+	}
+
+	/**
+	 * True if the output is compressed, explicitly or by the file name.
+	 */
+	public boolean isGzip(File file) {
+		return gzip || file.getName().endsWith(".gz");
+	}
+
+	public int getCompressionThreads() {
+		return compressionThreads;
+	}
+
+	public boolean isIndexed() {
+		return indexed;
+	}
+
+	/**
+	 * The settings for the {@link FileMetadata} or null if no metadata is
+	 * written.
+	 */
+	public Map<String, String> getSettings() {
+		return settings;
+	}
+
+}
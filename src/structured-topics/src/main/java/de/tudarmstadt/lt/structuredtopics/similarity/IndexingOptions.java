@@ -0,0 +1,99 @@
+package de.tudarmstadt.lt.structuredtopics.similarity;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.TieredMergePolicy;
+
+import de.tudarmstadt.lt.structuredtopics.Utils;
+
+/**
+ * Settings for building the Lucene index of {@link SenseSimilarityCalculator}.
+ * The documents are added by several threads to the same IndexWriter, the
+ * size of the flushed segments depends on the RAM buffer. A larger buffer and
+ * fewer segments per tier reduce the merging, a force merge to few segments
+ * makes the searches faster at the cost of a longer indexing. With weights,
+ * the cluster words are also indexed with their weights as payloads for the
+ * weighted dot product scoring.
+ */
+public class IndexingOptions {
+
+	public static final double DEFAULT_RAM_BUFFER_MB = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
+	/**
+	 * Default of the {@link TieredMergePolicy}
+	 */
+	public static final double DEFAULT_SEGMENTS_PER_TIER = 10;
+	public static final int NO_FORCE_MERGE = 0;
+
+	private final int indexThreads;
+	private final double ramBufferMB;
+	private final double segmentsPerTier;
+	private final int forceMergeSegments;
+	private final boolean weights;
+
+	public IndexingOptions(int indexThreads) {
+		this(indexThreads, DEFAULT_RAM_BUFFER_MB, DEFAULT_SEGMENTS_PER_TIER, NO_FORCE_MERGE);
+	}
+
+	public IndexingOptions(int indexThreads, double ramBufferMB, double segmentsPerTier, int forceMergeSegments) {
+		this(indexThreads, ramBufferMB, segmentsPerTier, forceMergeSegments, false);
+	}
+
+	/**
+	 * @param forceMergeSegments
+	 *            maximum number of segments after the indexing,
+	 *            {@link #NO_FORCE_MERGE} keeps the segments of the merge
+	 *            policy
+	 * @param weights
+	 *            also index the weights of the cluster words
+	 */
+	public IndexingOptions(int indexThreads, double ramBufferMB, double segmentsPerTier, int forceMergeSegments,
+			boolean weights) {
+		this.indexThreads = indexThreads;
+		this.ramBufferMB = ramBufferMB;
+		this.segmentsPerTier = segmentsPerTier;
+		this.forceMergeSegments = forceMergeSegments;
+		this.weights = weights;
+	}
+
+	public static IndexingOptions defaults() {
+		return new IndexingOptions(Utils.DEFAULT_THREADS);
+	}
+
+	public int getIndexThreads() {
+		return indexThreads;
+	}
+
+	public double getRamBufferMB() {
+		return ramBufferMB;
+	}
+
+	public double getSegmentsPerTier() {
+		return segmentsPerTier;
+	}
+
+	public int getForceMergeSegments() {
+		return forceMergeSegments;
+	}
+
+	public boolean isWeights() {
+		return weights;
+	}
+
+	/**
+	 * Config for a new index, an existing index in the directory is replaced.
+	 */
+	public IndexWriterConfig createIndexConfig() {
+		TieredMergePolicy mergePolicy = new TieredMergePolicy();
+		mergePolicy.setSegmentsPerTier(segmentsPerTier);
+		return new IndexWriterConfig(new KeywordAnalyzer()).setOpenMode(OpenMode.CREATE)
+				.setRAMBufferSizeMB(ramBufferMB).setMergePolicy(mergePolicy);
+	}
+
+	@Override
+	public String toString() {
+		return "indexThreads=" + indexThreads + ", ramBufferMB=" + ramBufferMB + ", segmentsPerTier="
+				+ segmentsPerTier + ", forceMergeSegments=" + forceMergeSegments + ", weights=" + weights;
+	}
+
+}
@@ -0,0 +1,274 @@
+package de.tudarmstadt.lt.structuredtopics.similarity;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.lt.structuredtopics.ddts.ClusterWord;
+import de.tudarmstadt.lt.structuredtopics.ddts.Parser;
+import de.tudarmstadt.lt.structuredtopics.ddts.Parser.DDTIterator;
+import de.tudarmstadt.lt.structuredtopics.ddts.SenseClusterView;
+
+/**
+ * In-memory inverted index from cluster words to senses for the top-N
+ * similar senses of a sense. Each sense of the ddt is a document with the
+ * cluster words of its cluster as terms, the postings are int arrays of
+ * sense numbers in ddt order. A query is the list of cluster words of a
+ * cluster, the scores are accumulated in a dense array per {@link Searcher}.
+ * <p>
+ * Two scorings are supported:
+ * <ul>
+ * <li>{@link Scoring#OVERLAP}: number of distinct cluster words shared with
+ * the query.</li>
+ * <li>{@link Scoring#LUCENE_CLASSIC}: the score of a Lucene BooleanQuery with
+ * one SHOULD TermQuery per cluster word on a StringField with the default
+ * (TF-IDF) similarity, as used by
+ * {@link SenseSimilarityCalculator#writeLuceneBasedSimilarities(File, int, File, org.apache.lucene.store.Directory, int, boolean)}.
+ * This gives the same ranking, senses with the same score are ordered by
+ * their position in the ddt.</li>
+ * </ul>
+ */
+public class InvertedSenseIndex {
+
+	private static final Logger LOG = LoggerFactory.getLogger(InvertedSenseIndex.class);
+
+	public static enum Scoring {
+		OVERLAP, LUCENE_CLASSIC
+	}
+
+	private final Map<String, Integer> termIds;
+	private final int[][] postings;
+	/**
+	 * "word#senseId" for each sense, same as the sense_word_id of the Lucene
+	 * index
+	 */
+	private final String[] senseWordIds;
+
+	private InvertedSenseIndex(Map<String, Integer> termIds, int[][] postings, String[] senseWordIds) {
+		this.termIds = termIds;
+		this.postings = postings;
+		this.senseWordIds = senseWordIds;
+	}
+
+	/**
+	 * Reads the ddt once and builds the index.
+	 *
+	 * @param total
+	 *            number of lines of the ddt, used for the initial capacity and
+	 *            to log the progress
+	 */
+	public static InvertedSenseIndex build(File ddt, int parserThreads, int total) throws IOException {
+		Map<String, Integer> termIds = new HashMap<>(Math.max(16, total));
+		int[][] postings = new int[1024][];
+		int[] postingLengths = new int[1024];
+		String[] senseWordIds = new String[Math.max(16, total)];
+		int senseCount = 0;
+		try (DDTIterator it = new Parser().iterateDDT(ddt, parserThreads)) {
+			while (it.hasNext()) {
+				SenseClusterView cluster = it.nextView();
+				if (cluster == null) {
+					continue;
+				}
+				if (senseCount % 100000 == 0) {
+					LOG.info("indexing sense {}/{}, terms: {}", senseCount, total, termIds.size());
+				}
+				int sense = senseCount++;
+				if (sense == senseWordIds.length) {
+					senseWordIds = Arrays.copyOf(senseWordIds, senseWordIds.length * 2);
+				}
+				senseWordIds[sense] = cluster.getSenseFullWord() + "#" + cluster.getSenseId();
+				for (int i = 0; i < cluster.getClusterWordCount(); i++) {
+					String word = cluster.getClusterWordFullWord(i);
+					Integer termId = termIds.get(word);
+					if (termId == null) {
+						termId = termIds.size();
+						termIds.put(word, termId);
+						if (termId == postings.length) {
+							postings = Arrays.copyOf(postings, postings.length * 2);
+							postingLengths = Arrays.copyOf(postingLengths, postingLengths.length * 2);
+						}
+						postings[termId] = new int[4];
+					}
+					int[] list = postings[termId];
+					int length = postingLengths[termId];
+					if (length > 0 && list[length - 1] == sense) {
+						// the same word twice in a cluster
+						continue;
+					}
+					if (length == list.length) {
+						list = Arrays.copyOf(list, length + (length >> 1) + 1);
+						postings[termId] = list;
+					}
+					list[length] = sense;
+					postingLengths[termId] = length + 1;
+				}
+			}
+		}
+		int[][] trimmed = new int[termIds.size()][];
+		for (int termId = 0; termId < trimmed.length; termId++) {
+			trimmed[termId] = Arrays.copyOf(postings[termId], postingLengths[termId]);
+		}
+		LOG.info("Indexed {} senses with {} cluster words", senseCount, termIds.size());
+		return new InvertedSenseIndex(termIds, trimmed, Arrays.copyOf(senseWordIds, senseCount));
+	}
+
+	public int getSenseCount() {
+		return senseWordIds.length;
+	}
+
+	public String getSenseWordId(int sense) {
+		return senseWordIds[sense];
+	}
+
+	/**
+	 * Number of senses with the cluster word.
+	 */
+	public int getDocFreq(String word) {
+		Integer termId = termIds.get(word);
+		return termId == null ? 0 : postings[termId].length;
+	}
+
+	/**
+	 * Creates a searcher with its own score accumulator. A searcher is not
+	 * thread-safe, use one per thread.
+	 */
+	public Searcher newSearcher(Scoring scoring) {
+		return new Searcher(scoring);
+	}
+
+	/**
+	 * Same as Lucene's DefaultSimilarity.idf.
+	 */
+	private float idf(int docFreq) {
+		return (float) (Math.log(senseWordIds.length / (double) (docFreq + 1)) + 1.0);
+	}
+
+	public class Searcher {
+
+		private final Scoring scoring;
+		private final double[] scores;
+		private final int[] matches;
+		private final int[] touched;
+		private int touchedCount = 0;
+		private int[] termBuffer = new int[16];
+		private float[] termValues = new float[16];
+		private final TopSenses top = new TopSenses();
+
+		private Searcher(Scoring scoring) {
+			this.scoring = scoring;
+			this.scores = new double[senseWordIds.length];
+			this.matches = new int[senseWordIds.length];
+			this.touched = new int[senseWordIds.length];
+		}
+
+		/**
+		 * Finds the top n senses for the cluster words, ordered by descending
+		 * score, then by position in the ddt.
+		 *
+		 * @return the number of results, see {@link #getSense(int)} and
+		 *         {@link #getScore(int)}
+		 */
+		public int search(List<ClusterWord> clusterWords, int n) {
+			int clauses = collectTerms(clusterWords);
+			top.reset(n);
+			if (clauses == 0 || n <= 0) {
+				return 0;
+			}
+			for (int i = 0; i < clauses; i++) {
+				if (termBuffer[i] < 0) {
+					continue;
+				}
+				float value = termValues[i];
+				for (int sense : postings[termBuffer[i]]) {
+					if (matches[sense]++ == 0) {
+						touched[touchedCount++] = sense;
+					}
+					scores[sense] += value;
+				}
+			}
+			for (int i = 0; i < touchedCount; i++) {
+				int sense = touched[i];
+				float score = scoring == Scoring.LUCENE_CLASSIC
+						? (float) scores[sense] * (matches[sense] / (float) clauses) : (float) scores[sense];
+				top.offer(sense, score);
+				scores[sense] = 0;
+				matches[sense] = 0;
+			}
+			touchedCount = 0;
+			return top.sort();
+		}
+
+		/**
+		 * Sense of the i-th result of the last search.
+		 */
+		public int getSense(int i) {
+			return top.getSense(i);
+		}
+
+		public float getScore(int i) {
+			return top.getScore(i);
+		}
+
+		/**
+		 * Resolves the cluster words to term ids (-1 for unknown words) and
+		 * computes the score of a match for each clause.
+		 *
+		 * @return number of clauses
+		 */
+		private int collectTerms(List<ClusterWord> clusterWords) {
+			int size = clusterWords.size();
+			if (termBuffer.length < size) {
+				termBuffer = new int[size];
+				termValues = new float[size];
+			}
+			int clauses = 0;
+			for (int i = 0; i < size; i++) {
+				Integer termId = termIds.get(clusterWords.get(i).getFullWord());
+				int id = termId == null ? -1 : termId;
+				if (scoring == Scoring.OVERLAP && id >= 0 && contains(termBuffer, clauses, id)) {
+					// distinct words only
+					continue;
+				}
+				termBuffer[clauses++] = id;
+			}
+			if (scoring == Scoring.OVERLAP) {
+				Arrays.fill(termValues, 0, clauses, 1f);
+				return clauses;
+			}
+			// TF-IDF of a boolean query, see TFIDFSimilarity: each clause
+			// contributes queryNorm * idf^2 (tf and norms are 1 for string
+			// fields), unknown words count for the query norm only
+			float sumOfSquaredWeights = 0;
+			for (int i = 0; i < clauses; i++) {
+				float idf = idf(termBuffer[i] < 0 ? 0 : postings[termBuffer[i]].length);
+				termValues[i] = idf;
+				sumOfSquaredWeights += idf * idf;
+			}
+			float queryNorm = (float) (1.0 / Math.sqrt(sumOfSquaredWeights));
+			if (Float.isInfinite(queryNorm) || Float.isNaN(queryNorm)) {
+				queryNorm = 1f;
+			}
+			for (int i = 0; i < clauses; i++) {
+				float idf = termValues[i];
+				termValues[i] = idf * queryNorm * idf;
+			}
+			return clauses;
+		}
+
+		private boolean contains(int[] values, int length, int value) {
+			for (int i = 0; i < length; i++) {
+				if (values[i] == value) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,206 @@
+package de.tudarmstadt.lt.structuredtopics.similarity;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Stopwatch;
+import com.google.common.io.Files;
+
+import de.tudarmstadt.lt.structuredtopics.Utils;
+import de.tudarmstadt.lt.structuredtopics.similarity.MinHashSenseIndex.MinHashScoring;
+
+/**
+ * Measures the recall of the approximate search of a
+ * {@link MinHashSenseIndex} against the exact search on a sample of the
+ * senses of a ddt. For each configuration of bands and rows, the report
+ * contains the share of the exact top-N similar senses which are also found
+ * by the approximate search, the average number of scored candidates per
+ * sense and the search times. Both searches use the same exact scoring and
+ * tie-breaking, so a similar sense is only missed if it is not a candidate.
+ */
+public class MinHashRecallReport {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MinHashRecallReport.class);
+
+	private static final String OPTION_IN_FILE = "in";
+	private static final String OPTION_OUT_FILE = "out";
+	private static final String OPTION_SIMILAR_SENSES = "N";
+	private static final String OPTION_LSH = "lsh";
+	private static final String OPTION_SAMPLE = "sample";
+	private static final String OPTION_OVERLAP = "overlap";
+	private static final String OPTION_PARSER_THREADS = "parserThreads";
+
+	private static final int DEFAULT_SAMPLE = 1000;
+	private static final String DEFAULT_LSH = "16x1,32x1,64x2,128x2,32x4";
+
+	public static void main(String[] args) {
+		Options options = createOptions();
+		try {
+			CommandLine cl = new DefaultParser().parse(options, args, true);
+			File ddt = new File(cl.getOptionValue(OPTION_IN_FILE));
+			File output = new File(cl.getOptionValue(OPTION_OUT_FILE));
+			int n = Integer.parseInt(cl.getOptionValue(OPTION_SIMILAR_SENSES));
+			int sample = cl.hasOption(OPTION_SAMPLE) ? Integer.parseInt(cl.getOptionValue(OPTION_SAMPLE))
+					: DEFAULT_SAMPLE;
+			MinHashScoring scoring = cl.hasOption(OPTION_OVERLAP) ? MinHashScoring.OVERLAP : MinHashScoring.JACCARD;
+			int parserThreads = cl.hasOption(OPTION_PARSER_THREADS)
+					? Integer.parseInt(cl.getOptionValue(OPTION_PARSER_THREADS))
+					: Utils.DEFAULT_THREADS;
+			List<int[]> configurations = new ArrayList<>();
+			for (String configuration : cl.getOptionValue(OPTION_LSH, DEFAULT_LSH).split(",")) {
+				String[] bandsAndRows = configuration.trim().split("x");
+				if (bandsAndRows.length != 2) {
+					throw new ParseException("Invalid bands x rows: " + configuration);
+				}
+				configurations.add(
+						new int[] { Integer.parseInt(bandsAndRows[0]), Integer.parseInt(bandsAndRows[1]) });
+			}
+			writeReport(ddt, output, n, sample, scoring, parserThreads, configurations);
+		} catch (ParseException e) {
+			LOG.error("Invalid arguments", e);
+			StringWriter sw = new StringWriter();
+			try (PrintWriter w = new PrintWriter(sw)) {
+				new HelpFormatter().printHelp(w, Integer.MAX_VALUE, "application", "", options, 0, 0, "", true);
+			}
+			LOG.error(sw.toString());
+		} catch (Exception e) {
+			LOG.error("Error", e);
+		}
+	}
+
+	/**
+	 * Writes one tab separated line per configuration.
+	 *
+	 * @param sample
+	 *            number of senses which are searched, evenly spread over the
+	 *            ddt
+	 * @param configurations
+	 *            bands and rows of each configuration
+	 */
+	protected static void writeReport(File ddt, File output, int n, int sample, MinHashScoring scoring,
+			int parserThreads, List<int[]> configurations) throws IOException {
+		int total = Utils.countLines(ddt);
+		int[][] exact = null;
+		long exactMillis = 0;
+		int[] senses = null;
+		try (BufferedWriter out = Files.newWriter(output, Charsets.UTF_8)) {
+			out.write("bands\trows\tthreshold\trecall\tcandidates\tindexing_ms\tsearch_ms\texact_search_ms\n");
+			for (int[] configuration : configurations) {
+				Stopwatch watch = Stopwatch.createStarted();
+				MinHashSenseIndex index = MinHashSenseIndex.build(ddt, parserThreads, total, configuration[0],
+						configuration[1]);
+				long indexingMillis = watch.elapsed(TimeUnit.MILLISECONDS);
+				MinHashSenseIndex.Searcher searcher = index.newSearcher(scoring);
+				if (exact == null) {
+					// the exact results do not depend on the configuration
+					senses = sample(index.getSenseCount(), sample);
+					exact = new int[senses.length][];
+					watch.reset().start();
+					for (int i = 0; i < senses.length; i++) {
+						exact[i] = results(searcher, searcher.searchExact(senses[i], n));
+					}
+					exactMillis = watch.elapsed(TimeUnit.MILLISECONDS);
+				}
+				long found = 0;
+				long expected = 0;
+				long candidates = 0;
+				watch.reset().start();
+				for (int i = 0; i < senses.length; i++) {
+					int[] approximate = results(searcher, searcher.search(senses[i], n));
+					candidates += searcher.getCandidates();
+					found += intersection(exact[i], approximate);
+					expected += exact[i].length;
+				}
+				long searchMillis = watch.elapsed(TimeUnit.MILLISECONDS);
+				double recall = expected == 0 ? 1 : found / (double) expected;
+				double candidatesPerSense = candidates / (double) Math.max(1, senses.length);
+				LOG.info("{}x{}: recall {} ({}/{}), {} candidates per sense, search {}ms, exact search {}ms",
+						configuration[0], configuration[1], recall, found, expected, candidatesPerSense, searchMillis,
+						exactMillis);
+				out.write(String.format(Locale.US, "%d\t%d\t%.4f\t%.4f\t%.1f\t%d\t%d\t%d\n", configuration[0],
+						configuration[1], index.getThreshold(), recall, candidatesPerSense, indexingMillis,
+						searchMillis, exactMillis));
+			}
+		}
+	}
+
+	/**
+	 * Evenly spread senses, all senses if the sample is larger than the ddt.
+	 */
+	private static int[] sample(int senseCount, int sample) {
+		int size = Math.min(senseCount, sample);
+		int[] senses = new int[size];
+		for (int i = 0; i < size; i++) {
+			senses[i] = (int) ((long) i * senseCount / size);
+		}
+		return senses;
+	}
+
+	private static int[] results(MinHashSenseIndex.Searcher searcher, int hits) {
+		int[] senses = new int[hits];
+		for (int i = 0; i < hits; i++) {
+			senses[i] = searcher.getSense(i);
+		}
+		return senses;
+	}
+
+	private static int intersection(int[] senses1, int[] senses2) {
+		int shared = 0;
+		for (int sense1 : senses1) {
+			for (int sense2 : senses2) {
+				if (sense1 == sense2) {
+					shared++;
+					break;
+				}
+			}
+		}
+		return shared;
+	}
+
+	private static Options createOptions() {
+		Options options = new Options();
+		Option input = Option.builder(OPTION_IN_FILE).argName("file").desc("The input ddt").hasArg().required()
+				.type(String.class).build();
+		options.addOption(input);
+		Option output = Option.builder(OPTION_OUT_FILE).argName("output file")
+				.desc("Path of the tab separated report").hasArg().required().type(String.class).build();
+		options.addOption(output);
+		Option similarSenses = Option.builder(OPTION_SIMILAR_SENSES).argName("similar senses")
+				.desc("Number of top similar senses per sense").hasArg().required().type(Integer.class).build();
+		options.addOption(similarSenses);
+		Option lsh = Option.builder(OPTION_LSH).argName("bands x rows")
+				.desc("Comma separated configurations of bands and rows, default: " + DEFAULT_LSH).hasArg()
+				.type(String.class).build();
+		options.addOption(lsh);
+		Option sample = Option.builder(OPTION_SAMPLE).argName("senses")
+				.desc("Number of senses which are searched, default: " + DEFAULT_SAMPLE).hasArg().type(Integer.class)
+				.build();
+		options.addOption(sample);
+		Option overlap = Option.builder(OPTION_OVERLAP)
+				.desc("Score the number of shared cluster words instead of the Jaccard similarity").build();
+		options.addOption(overlap);
+		Option parserThreads = Option.builder(OPTION_PARSER_THREADS).argName("parser threads")
+				.desc("Number of threads which parse the ddt while indexing, default: number of cores").hasArg()
+				.type(Integer.class).build();
+		options.addOption(parserThreads);
+		return options;
+	}
+
+}
@@ -0,0 +1,397 @@
+package de.tudarmstadt.lt.structuredtopics.similarity;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import de.tudarmstadt.lt.structuredtopics.ddts.Parser;
+import de.tudarmstadt.lt.structuredtopics.ddts.Parser.DDTIterator;
+import de.tudarmstadt.lt.structuredtopics.ddts.SenseClusterView;
+
+/**
+ * Approximate top-N similar senses by MinHash locality sensitive hashing. The
+ * distinct cluster words of each sense get a MinHash signature of bands *
+ * rows hash values, senses whose signatures agree in all rows of at least one
+ * band are candidates. Only the candidates are scored, exactly, by
+ * {@link MinHashScoring}.
+ * <p>
+ * Two senses with a Jaccard similarity s of their cluster words become
+ * candidates with the probability 1 - (1 - s^rows)^bands. More rows per band
+ * produce fewer candidates with a lower Jaccard similarity, more bands find
+ * more of the similar senses at the cost of more candidates, see
+ * {@link #getThreshold()}. {@link Searcher#searchExact(int, int)} scores all
+ * senses for a comparison with the approximate search, see
+ * {@link MinHashRecallReport}.
+ */
+public class MinHashSenseIndex {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MinHashSenseIndex.class);
+
+	public static final int DEFAULT_BANDS = 64;
+	public static final int DEFAULT_ROWS = 2;
+	/**
+	 * Seed of the MinHash functions, fixed for reproducible results
+	 */
+	private static final long SEED = 42;
+
+	public enum MinHashScoring {
+		/**
+		 * Number of shared distinct cluster words divided by the number of
+		 * distinct cluster words of both senses
+		 */
+		JACCARD,
+		/**
+		 * Number of shared distinct cluster words
+		 */
+		OVERLAP
+	}
+
+	private final int bands;
+	private final int rows;
+	private final long[] seeds;
+	/**
+	 * Hash of each cluster word, the input of the MinHash functions
+	 */
+	private final long[] termHashes;
+	/**
+	 * Sorted distinct term ids of the cluster words of each sense
+	 */
+	private final int[][] senseTerms;
+	/**
+	 * "word#senseId" for each sense, same as the sense_word_id of the Lucene
+	 * index
+	 */
+	private final String[] senseWordIds;
+	/**
+	 * The buckets of each band: band hash << 32 | sense, sorted, senses
+	 * without cluster words are not in a bucket
+	 */
+	private final long[][] buckets;
+
+	private MinHashSenseIndex(int bands, int rows, long[] seeds, long[] termHashes, int[][] senseTerms,
+			String[] senseWordIds, long[][] buckets) {
+		this.bands = bands;
+		this.rows = rows;
+		this.seeds = seeds;
+		this.termHashes = termHashes;
+		this.senseTerms = senseTerms;
+		this.senseWordIds = senseWordIds;
+		this.buckets = buckets;
+	}
+
+	/**
+	 * Reads the ddt once and builds the signatures and buckets.
+	 *
+	 * @param total
+	 *            number of lines of the ddt, used for the initial capacity and
+	 *            to log the progress
+	 */
+	public static MinHashSenseIndex build(File ddt, int parserThreads, int total, int bands, int rows)
+			throws IOException {
+		if (bands <= 0 || rows <= 0) {
+			throw new IllegalArgumentException("Bands and rows must be positive: " + bands + "x" + rows);
+		}
+		long[] seeds = new long[bands * rows];
+		Random random = new Random(SEED);
+		for (int i = 0; i < seeds.length; i++) {
+			seeds[i] = random.nextLong();
+		}
+		HashFunction wordHash = Hashing.murmur3_128();
+		Map<String, Integer> termIds = new HashMap<>(Math.max(16, total));
+		long[] termHashes = new long[1024];
+		int capacity = Math.max(16, total);
+		int[][] senseTerms = new int[capacity][];
+		String[] senseWordIds = new String[capacity];
+		long[][] buckets = new long[bands][capacity];
+		long[] minima = new long[bands * rows];
+		int[] terms = new int[16];
+		int senseCount = 0;
+		int bucketEntries = 0;
+		try (DDTIterator it = new Parser().iterateDDT(ddt, parserThreads)) {
+			while (it.hasNext()) {
+				SenseClusterView cluster = it.nextView();
+				if (cluster == null) {
+					continue;
+				}
+				if (senseCount % 100000 == 0) {
+					LOG.info("hashing sense {}/{}, terms: {}", senseCount, total, termIds.size());
+				}
+				int sense = senseCount++;
+				if (sense == senseWordIds.length) {
+					senseWordIds = Arrays.copyOf(senseWordIds, senseWordIds.length * 2);
+					senseTerms = Arrays.copyOf(senseTerms, senseTerms.length * 2);
+				}
+				senseWordIds[sense] = cluster.getSenseFullWord() + "#" + cluster.getSenseId();
+				int wordCount = cluster.getClusterWordCount();
+				if (terms.length < wordCount) {
+					terms = new int[wordCount];
+				}
+				for (int i = 0; i < wordCount; i++) {
+					String word = cluster.getClusterWordFullWord(i);
+					Integer termId = termIds.get(word);
+					if (termId == null) {
+						termId = termIds.size();
+						termIds.put(word, termId);
+						if (termId == termHashes.length) {
+							termHashes = Arrays.copyOf(termHashes, termHashes.length * 2);
+						}
+						termHashes[termId] = wordHash.hashString(word, Charsets.UTF_8).asLong();
+					}
+					terms[i] = termId;
+				}
+				senseTerms[sense] = distinct(terms, wordCount);
+				if (senseTerms[sense].length == 0) {
+					continue;
+				}
+				signature(senseTerms[sense], termHashes, seeds, minima);
+				if (bucketEntries == buckets[0].length) {
+					for (int band = 0; band < bands; band++) {
+						buckets[band] = Arrays.copyOf(buckets[band], bucketEntries * 2);
+					}
+				}
+				for (int band = 0; band < bands; band++) {
+					buckets[band][bucketEntries] = bucketEntry(bandHash(minima, band, rows), sense);
+				}
+				bucketEntries++;
+			}
+		}
+		for (int band = 0; band < bands; band++) {
+			buckets[band] = Arrays.copyOf(buckets[band], bucketEntries);
+			Arrays.sort(buckets[band]);
+		}
+		LOG.info("Hashed {} senses with {} cluster words into {} bands of {} rows", senseCount, termIds.size(),
+				bands, rows);
+		return new MinHashSenseIndex(bands, rows, seeds, termHashes, Arrays.copyOf(senseTerms, senseCount),
+				Arrays.copyOf(senseWordIds, senseCount), buckets);
+	}
+
+	public int getSenseCount() {
+		return senseWordIds.length;
+	}
+
+	public String getSenseWordId(int sense) {
+		return senseWordIds[sense];
+	}
+
+	public int getBands() {
+		return bands;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Jaccard similarity at which two senses become candidates with a
+	 * probability of about 1/2: (1 / bands)^(1 / rows).
+	 */
+	public double getThreshold() {
+		return Math.pow(1.0 / bands, 1.0 / rows);
+	}
+
+	/**
+	 * Creates a searcher with its own candidate marks. A searcher is not
+	 * thread-safe, use one per thread.
+	 */
+	public Searcher newSearcher(MinHashScoring scoring) {
+		return new Searcher(scoring);
+	}
+
+	private static int[] distinct(int[] terms, int length) {
+		int[] sorted = Arrays.copyOf(terms, length);
+		Arrays.sort(sorted);
+		int distinct = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (distinct == 0 || sorted[distinct - 1] != sorted[i]) {
+				sorted[distinct++] = sorted[i];
+			}
+		}
+		return distinct == sorted.length ? sorted : Arrays.copyOf(sorted, distinct);
+	}
+
+	/**
+	 * The minimum of each hash function over the terms.
+	 */
+	private static void signature(int[] terms, long[] termHashes, long[] seeds, long[] minima) {
+		Arrays.fill(minima, Long.MAX_VALUE);
+		for (int term : terms) {
+			long termHash = termHashes[term];
+			for (int i = 0; i < seeds.length; i++) {
+				long value = mix(termHash ^ seeds[i]);
+				if (value < minima[i]) {
+					minima[i] = value;
+				}
+			}
+		}
+	}
+
+	private static int bandHash(long[] minima, int band, int rows) {
+		long hash = 0;
+		for (int row = band * rows; row < (band + 1) * rows; row++) {
+			hash = hash * 0x9E3779B97F4A7C15L + minima[row];
+		}
+		return (int) (mix(hash) >>> 32);
+	}
+
+	private static long bucketEntry(int bandHash, int sense) {
+		return ((long) bandHash << 32) | sense;
+	}
+
+	/**
+	 * Finalization mix of MurmurHash3
+	 */
+	private static long mix(long z) {
+		z ^= z >>> 33;
+		z *= 0xff51afd7ed558ccdL;
+		z ^= z >>> 33;
+		z *= 0xc4ceb9fe1a85ec53L;
+		z ^= z >>> 33;
+		return z;
+	}
+
+	public class Searcher {
+
+		private final MinHashScoring scoring;
+		private final long[] minima = new long[bands * rows];
+		/**
+		 * Number of the last search which scored the sense, each candidate
+		 * is scored once per search
+		 */
+		private final int[] scored;
+		private int search = 0;
+		private int candidates = 0;
+		private final TopSenses top = new TopSenses();
+
+		private Searcher(MinHashScoring scoring) {
+			this.scoring = scoring;
+			this.scored = new int[senseWordIds.length];
+		}
+
+		/**
+		 * Finds the top n candidates of the sense, ordered by descending
+		 * score, then by position in the ddt. The sense itself is not a
+		 * result.
+		 *
+		 * @param sense
+		 *            position of the sense in the ddt
+		 * @return the number of results, see {@link #getSense(int)} and
+		 *         {@link #getScore(int)}
+		 */
+		public int search(int sense, int n) {
+			candidates = 0;
+			top.reset(n);
+			int[] terms = senseTerms[sense];
+			if (terms.length == 0 || n <= 0) {
+				return 0;
+			}
+			startSearch();
+			scored[sense] = search;
+			signature(terms, termHashes, seeds, minima);
+			for (int band = 0; band < bands; band++) {
+				int bandHash = bandHash(minima, band, rows);
+				long[] bucket = buckets[band];
+				int start = Arrays.binarySearch(bucket, bucketEntry(bandHash, 0));
+				if (start < 0) {
+					start = -start - 1;
+				}
+				for (int i = start; i < bucket.length && (int) (bucket[i] >> 32) == bandHash; i++) {
+					int candidate = (int) bucket[i];
+					if (scored[candidate] != search) {
+						scored[candidate] = search;
+						candidates++;
+						offer(candidate, score(terms, senseTerms[candidate]));
+					}
+				}
+			}
+			return top.sort();
+		}
+
+		/**
+		 * Same as {@link #search(int, int)}, but scores all senses instead of
+		 * the candidates.
+		 */
+		public int searchExact(int sense, int n) {
+			int[] terms = senseTerms[sense];
+			candidates = 0;
+			top.reset(n);
+			if (terms.length == 0 || n <= 0) {
+				return 0;
+			}
+			for (int other = 0; other < senseTerms.length; other++) {
+				if (other != sense) {
+					candidates++;
+					offer(other, score(terms, senseTerms[other]));
+				}
+			}
+			return top.sort();
+		}
+
+		/**
+		 * Number of senses scored by the last search.
+		 */
+		public int getCandidates() {
+			return candidates;
+		}
+
+		/**
+		 * Sense of the i-th result of the last search.
+		 */
+		public int getSense(int i) {
+			return top.getSense(i);
+		}
+
+		public float getScore(int i) {
+			return top.getScore(i);
+		}
+
+		private void startSearch() {
+			if (++search == 0) {
+				// wrapped around, forget the marks of old searches
+				Arrays.fill(scored, 0);
+				search = 1;
+			}
+		}
+
+		/**
+		 * Exact score of two sorted term arrays, 0 if they share no term.
+		 */
+		private float score(int[] terms1, int[] terms2) {
+			int shared = 0;
+			int i = 0;
+			int j = 0;
+			while (i < terms1.length && j < terms2.length) {
+				if (terms1[i] < terms2[j]) {
+					i++;
+				} else if (terms1[i] > terms2[j]) {
+					j++;
+				} else {
+					shared++;
+					i++;
+					j++;
+				}
+			}
+			if (scoring == MinHashScoring.OVERLAP) {
+				return shared;
+			}
+			return shared / (float) (terms1.length + terms2.length - shared);
+		}
+
+		private void offer(int sense, float score) {
+			// senses without a shared word are not similar
+			if (score > 0) {
+				top.offer(sense, score);
+			}
+		}
+	}
+
+}
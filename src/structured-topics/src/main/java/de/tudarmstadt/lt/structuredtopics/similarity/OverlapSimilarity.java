@@ -0,0 +1,61 @@
+package de.tudarmstadt.lt.structuredtopics.similarity;
+
+import org.apache.lucene.analysis.payloads.PayloadHelper;
+import org.apache.lucene.index.FieldInvertState;
+import org.apache.lucene.search.similarities.DefaultSimilarity;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Scores a boolean query of cluster words by the overlap with the cluster
+ * words of a sense: each matching clause contributes its boost, without idf,
+ * coordination, query or length normalization. With a boost of 1 per distinct
+ * cluster word, the score is the number of shared cluster words, with the
+ * weights of the query cluster words as boosts it is the sum of the weights of
+ * the shared words.
+ * <p>
+ * For payload term queries on the weights of the cluster words (see
+ * {@link WeightedWordsTokenStream}), a clause contributes its boost times the
+ * weight of the word in the sense, so the weights of the query cluster words
+ * as boosts give the weighted dot product.
+ * <p>
+ * The cluster words are indexed without norms and term frequencies, so the
+ * similarity only has to be set on the searcher.
+ */
+public class OverlapSimilarity extends DefaultSimilarity {
+
+	@Override
+	public float coord(int overlap, int maxOverlap) {
+		return 1f;
+	}
+
+	@Override
+	public float queryNorm(float sumOfSquaredWeights) {
+		return 1f;
+	}
+
+	@Override
+	public float tf(float freq) {
+		return freq > 0 ? 1f : 0f;
+	}
+
+	@Override
+	public float idf(long docFreq, long numDocs) {
+		return 1f;
+	}
+
+	@Override
+	public float lengthNorm(FieldInvertState state) {
+		return state.getBoost();
+	}
+
+	@Override
+	public float scorePayload(int doc, int start, int end, BytesRef payload) {
+		return payload == null ? 1f : PayloadHelper.decodeFloat(payload.bytes, payload.offset);
+	}
+
+	@Override
+	public String toString() {
+		return "OverlapSimilarity";
+	}
+
+}
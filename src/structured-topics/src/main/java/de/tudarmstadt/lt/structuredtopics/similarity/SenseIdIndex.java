@@ -0,0 +1,93 @@
+package de.tudarmstadt.lt.structuredtopics.similarity;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.tudarmstadt.lt.structuredtopics.ddts.Parser;
+import de.tudarmstadt.lt.structuredtopics.ddts.Parser.DDTIterator;
+import de.tudarmstadt.lt.structuredtopics.ddts.SenseClusterView;
+
+/**
+ * Sense ids of each sense word of a ddt, used to expand cluster words without
+ * a related sense id to all senses of the word. The index is built in a
+ * single pass and not modified afterwards, so it can be read from multiple
+ * threads.
+ */
+public class SenseIdIndex {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SenseIdIndex.class);
+
+	/**
+	 * Sense ids of words which are not a sense of the ddt
+	 */
+	private static final int[] NOT_INDEXED = { 0 };
+
+	private final Map<String, int[]> senseIds;
+	private final int senseCount;
+
+	private SenseIdIndex(Map<String, int[]> senseIds, int senseCount) {
+		this.senseIds = senseIds;
+		this.senseCount = senseCount;
+	}
+
+	/**
+	 * Reads the ddt once and collects the sense ids of each sense word in ddt
+	 * order.
+	 *
+	 * @param expectedSenses
+	 *            used for the initial capacity, may be 0 if unknown
+	 */
+	public static SenseIdIndex build(File ddt, int parserThreads, int expectedSenses) throws IOException {
+		Map<String, int[]> senseIds = new HashMap<>(Math.max(16, expectedSenses / 2));
+		int senseCount = 0;
+		try (DDTIterator it = new Parser().iterateDDT(ddt, parserThreads)) {
+			while (it.hasNext()) {
+				SenseClusterView cluster = it.nextView();
+				if (cluster == null) {
+					continue;
+				}
+				senseCount++;
+				String senseFullWord = cluster.getSenseFullWord();
+				int senseId = cluster.getSenseId();
+				int[] ids = senseIds.get(senseFullWord);
+				if (ids == null) {
+					ids = new int[] { senseId };
+				} else {
+					// most words have only a few senses
+					ids = Arrays.copyOf(ids, ids.length + 1);
+					ids[ids.length - 1] = senseId;
+				}
+				senseIds.put(senseFullWord, ids);
+			}
+		}
+		LOG.info("Indexed {} sense ids of {} words", senseCount, senseIds.size());
+		return new SenseIdIndex(senseIds, senseCount);
+	}
+
+	/**
+	 * Sense ids of the word in ddt order. A word which is not a sense of the
+	 * ddt has the sense id 0. The returned array must not be modified.
+	 */
+	public int[] getSenseIds(String fullWord) {
+		int[] ids = senseIds.get(fullWord);
+		return ids != null ? ids : NOT_INDEXED;
+	}
+
+	/**
+	 * Number of parsed clusters of the ddt.
+	 */
+	public int getSenseCount() {
+		return senseCount;
+	}
+
+	public int getWordCount() {
+		return senseIds.size();
+	}
+
+}
@@ -0,0 +1,110 @@
+package de.tudarmstadt.lt.structuredtopics.similarity;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.util.Bits;
+
+/**
+ * In-memory table from the ordinal of a sense (its position in the ddt, stored
+ * as DocValues in the Lucene index) to its sense word id. The table is read
+ * once from the stored fields of the index, so the hits of a search are
+ * resolved by an array lookup instead of loading a document per hit.
+ */
+class SenseOrdinals {
+
+	private final String[] senseWordIds;
+	/**
+	 * Ordinal of the first sense with the same sense word id, a ddt may
+	 * contain the same sense twice
+	 */
+	private final int[] firstOrdinals;
+	/**
+	 * True for the leaves of the reader whose documents are in ddt order
+	 */
+	private final boolean[] orderedLeaves;
+
+	private SenseOrdinals(String[] senseWordIds, int[] firstOrdinals, boolean[] orderedLeaves) {
+		this.senseWordIds = senseWordIds;
+		this.firstOrdinals = firstOrdinals;
+		this.orderedLeaves = orderedLeaves;
+	}
+
+	/**
+	 * @param ordinalField
+	 *            numeric DocValues with the ordinal of each document, from 0
+	 *            to the number of documents - 1
+	 * @param senseWordIdField
+	 *            stored field with the sense word id
+	 */
+	static SenseOrdinals load(IndexReader reader, String ordinalField, String senseWordIdField) throws IOException {
+		String[] senseWordIds = new String[reader.numDocs()];
+		Set<String> fields = Collections.singleton(senseWordIdField);
+		boolean[] orderedLeaves = new boolean[reader.leaves().size()];
+		for (LeafReaderContext context : reader.leaves()) {
+			LeafReader leaf = context.reader();
+			NumericDocValues ordinals = leaf.getNumericDocValues(ordinalField);
+			if (ordinals == null) {
+				throw new IllegalStateException("Index without " + ordinalField + ", rebuild the index");
+			}
+			Bits liveDocs = leaf.getLiveDocs();
+			boolean ordered = true;
+			long previous = -1;
+			for (int doc = 0; doc < leaf.maxDoc(); doc++) {
+				if (liveDocs == null || liveDocs.get(doc)) {
+					long ordinal = ordinals.get(doc);
+					if (ordinal >= senseWordIds.length) {
+						// the ordinals are distinct, a document of a lower
+						// ordinal is missing
+						throw new IllegalStateException("Index with missing senses, rebuild the index");
+					}
+					senseWordIds[(int) ordinal] = leaf.document(doc, fields).get(senseWordIdField);
+					ordered &= ordinal > previous;
+					previous = ordinal;
+				}
+			}
+			orderedLeaves[context.ord] = ordered;
+		}
+		Map<String, Integer> firstOrdinalOfId = new HashMap<>(senseWordIds.length);
+		int[] firstOrdinals = new int[senseWordIds.length];
+		for (int ordinal = 0; ordinal < senseWordIds.length; ordinal++) {
+			Integer first = firstOrdinalOfId.putIfAbsent(senseWordIds[ordinal], ordinal);
+			firstOrdinals[ordinal] = first == null ? ordinal : first;
+		}
+		return new SenseOrdinals(senseWordIds, firstOrdinals, orderedLeaves);
+	}
+
+	int size() {
+		return senseWordIds.length;
+	}
+
+	String getSenseWordId(int ordinal) {
+		return senseWordIds[ordinal];
+	}
+
+	/**
+	 * True if the ordinals of the documents of the leaf increase with the
+	 * document ids.
+	 *
+	 * @param leafOrd
+	 *            see {@link LeafReaderContext#ord}
+	 */
+	boolean isOrderedByOrdinal(int leafOrd) {
+		return orderedLeaves[leafOrd];
+	}
+
+	/**
+	 * True if both ordinals have the same sense word id.
+	 */
+	boolean isSameSense(int ordinal1, int ordinal2) {
+		return firstOrdinals[ordinal1] == firstOrdinals[ordinal2];
+	}
+
+}
@@ -3,18 +3,27 @@ package de.tudarmstadt.lt.structuredtopics.similarity;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Spliterator;
-import java.util.Spliterators;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.StreamSupport;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
@@ -22,29 +31,33 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.core.KeywordAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.payloads.MaxPayloadFunction;
+import org.apache.lucene.search.payloads.PayloadTermQuery;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.RAMDirectory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
 
 import de.tudarmstadt.lt.structuredtopics.Utils;
 import de.tudarmstadt.lt.structuredtopics.ddts.ClusterWord;
@@ -52,6 +65,12 @@ import de.tudarmstadt.lt.structuredtopics.ddts.Parser;
 import de.tudarmstadt.lt.structuredtopics.ddts.Parser.DDTIterator;
 import de.tudarmstadt.lt.structuredtopics.ddts.Sense;
 import de.tudarmstadt.lt.structuredtopics.ddts.SenseCluster;
+import de.tudarmstadt.lt.structuredtopics.io.FileMetadata;
+import de.tudarmstadt.lt.structuredtopics.io.OutputSink;
+import de.tudarmstadt.lt.structuredtopics.io.WriterOptions;
+import de.tudarmstadt.lt.structuredtopics.similarity.InvertedSenseIndex.Scoring;
+import de.tudarmstadt.lt.structuredtopics.similarity.MinHashSenseIndex.MinHashScoring;
+import de.tudarmstadt.lt.structuredtopics.similarity.SimilarityPruning.TopSimilarities;
 
 public class SenseSimilarityCalculator {
 
@@ -59,10 +78,91 @@ public class SenseSimilarityCalculator {
 	private static final String OPTION_SIMILAR_SENSES = "N";
 	private static final String OPTION_OUT_FILE = "out";
 	private static final String OPTION_IN_FILE = "in";
+	private static final String OPTION_COMPRESSION_THREADS = "compressionThreads";
+	private static final String OPTION_INDEXED_GZIP = "indexedGzip";
+	private static final String OPTION_PARSER_THREADS = "parserThreads";
+	private static final String OPTION_INDEX_DIR = "index";
+	private static final String OPTION_ENGINE = "engine";
+	private static final String OPTION_SENSES_TO_KEEP = "sensesToKeep";
+	private static final String OPTION_SIMILARITY_THRESHOLD = "similarityThreshold";
+	private static final String OPTION_BINARIZE = "binarize";
+	private static final String OPTION_INDEX_THREADS = "indexThreads";
+	private static final String OPTION_RAM_BUFFER = "ramBufferMB";
+	private static final String OPTION_SEGMENTS_PER_TIER = "segmentsPerTier";
+	private static final String OPTION_FORCE_MERGE = "forceMerge";
+	private static final String OPTION_LUCENE_SCORING = "luceneScoring";
+	private static final String OPTION_MIN_SCORE = "minScore";
+	private static final String OPTION_BANDS = "bands";
+	private static final String OPTION_ROWS = "rows";
+	private static final String OPTION_MINHASH_SCORING = "minHashScoring";
+
+	private static final int CLUSTER_BATCH_SIZE = 4096;
+	private static final int INDEX_BATCH_SIZE = 1024;
+	private static final String ENGINE_LUCENE = "lucene";
+	private static final String ENGINE_CLASSIC = "classic";
+	private static final String ENGINE_OVERLAP = "overlap";
+	private static final String ENGINE_MINHASH = "minhash";
+	private static final String SCORING_TFIDF = "tfidf";
+	private static final String SCORING_OVERLAP = "overlap";
+	private static final String SCORING_WEIGHTED = "weighted";
+	private static final String SCORING_DOT = "dot";
+	private static final String SCORING_JACCARD = "jaccard";
 	private static final Logger LOG = LoggerFactory.getLogger(SenseSimilarityCalculator.class);
 
 	public static final String WORD_REGEX = ".*[a-zA-Z]+.*";
 
+	/**
+	 * Commit data of a persistent index, the index is reused if both values
+	 * match the ddt and this version of the index layout.
+	 */
+	static final String COMMIT_DDT_CHECKSUM = "ddt_checksum";
+	static final String COMMIT_INDEX_VERSION = "index_version";
+	static final String INDEX_VERSION = "2";
+	/**
+	 * Commit data of a persistent index, "true" if the index contains
+	 * {@link #FIELD_WEIGHTED_CLUSTER_WORD}
+	 */
+	static final String COMMIT_WEIGHTS = "weights";
+
+	/**
+	 * Position of the sense in the ddt, the ordinal of the sense in
+	 * {@link SenseOrdinals}. The documents are added concurrently, so senses
+	 * with the same score are ordered by this field instead of the document
+	 * id.
+	 */
+	private static final String FIELD_DDT_POSITION = "ddt_position";
+
+	/**
+	 * The cluster words with their weights as payloads, only indexed with
+	 * {@link IndexingOptions#isWeights()}, see {@link WeightedWordsTokenStream}
+	 */
+	private static final String FIELD_WEIGHTED_CLUSTER_WORD = "sense_cluster_word_weight";
+
+	/**
+	 * Similarity of the Lucene search
+	 */
+	public static enum LuceneScoring {
+		/**
+		 * The default Lucene similarity
+		 */
+		TFIDF,
+		/**
+		 * Number of shared cluster words, see {@link OverlapSimilarity}
+		 */
+		OVERLAP,
+		/**
+		 * Sum of the weights of the query cluster words in the cluster, see
+		 * {@link OverlapSimilarity}
+		 */
+		WEIGHTED_OVERLAP,
+		/**
+		 * Dot product of the weights of the shared cluster words, the weights
+		 * of the senses are read from the payloads of an index with
+		 * {@link IndexingOptions#isWeights()}
+		 */
+		WEIGHTED_DOT_PRODUCT
+	}
+
 	public static void main(String[] args) {
 		Options options = createOptions();
 		try {
@@ -70,21 +170,102 @@ public class SenseSimilarityCalculator {
 			CommandLine line = new DefaultParser().parse(options, args, true);
 			File ddt = new File(line.getOptionValue(OPTION_IN_FILE));
 			File output = new File(line.getOptionValue(OPTION_OUT_FILE));
-			Parser parser = new Parser();
-			Analyzer analyzer = new KeywordAnalyzer();
-			IndexWriterConfig config = new IndexWriterConfig(analyzer);
+			int compressionThreads = line.hasOption(OPTION_COMPRESSION_THREADS)
+					? Integer.parseInt(line.getOptionValue(OPTION_COMPRESSION_THREADS))
+					: Utils.DEFAULT_COMPRESSION_THREADS;
+			boolean indexedGzip = line.hasOption(OPTION_INDEXED_GZIP);
+			int parserThreads = line.hasOption(OPTION_PARSER_THREADS)
+					? Integer.parseInt(line.getOptionValue(OPTION_PARSER_THREADS))
+					: Utils.DEFAULT_THREADS;
+			SimilarityPruning pruning = null;
+			if (line.hasOption(OPTION_SENSES_TO_KEEP)) {
+				double similarityThreshold = line.hasOption(OPTION_SIMILARITY_THRESHOLD)
+						? Double.parseDouble(line.getOptionValue(OPTION_SIMILARITY_THRESHOLD))
+						: SimilarityPruning.NO_THRESHOLD;
+				pruning = new SimilarityPruning(Integer.parseInt(line.getOptionValue(OPTION_SENSES_TO_KEEP)),
+						similarityThreshold, line.hasOption(OPTION_BINARIZE));
+				LOG.info("Pruning similarities: {}", pruning);
+			} else if (line.hasOption(OPTION_SIMILARITY_THRESHOLD) || line.hasOption(OPTION_BINARIZE)) {
+				throw new ParseException("-" + OPTION_SIMILARITY_THRESHOLD + " and -" + OPTION_BINARIZE + " require -"
+						+ OPTION_SENSES_TO_KEEP);
+			}
 			if (line.hasOption(OPTION_ALL_SIMILARITIES)) {
 				LOG.info("Calculating all similarities");
-				writeAllSimilarities(output, ddt);
+				writeAllSimilarities(output, ddt, compressionThreads, indexedGzip, parserThreads, pruning);
 			} else if (line.hasOption(OPTION_SIMILAR_SENSES)) {
 				LOG.info("Calculating similarities using index");
 				Stopwatch watch2 = Stopwatch.createStarted();
-				LOG.info("Starting indexing");
-				RAMDirectory index = new RAMDirectory();
-				buildIndex(ddt, config, index);
-				LOG.info("Creating index took {}ms", watch2.elapsed(TimeUnit.MILLISECONDS));
+				// counted once for the progress of both passes
+				int total = Utils.countLines(ddt);
 				int collectSimilarSensesPerSense = Integer.parseInt(line.getOptionValue(OPTION_SIMILAR_SENSES));
-				writeLuceneBasedSimilarities(output, collectSimilarSensesPerSense, ddt, index);
+				String engine = line.getOptionValue(OPTION_ENGINE, ENGINE_LUCENE);
+				if (ENGINE_CLASSIC.equals(engine) || ENGINE_OVERLAP.equals(engine)) {
+					InvertedSenseIndex index = InvertedSenseIndex.build(ddt, parserThreads, total);
+					LOG.info("Creating index took {}ms", watch2.elapsed(TimeUnit.MILLISECONDS));
+					Scoring scoring = ENGINE_CLASSIC.equals(engine) ? Scoring.LUCENE_CLASSIC : Scoring.OVERLAP;
+					writeInvertedIndexSimilarities(output, collectSimilarSensesPerSense, ddt, index, scoring,
+							compressionThreads, indexedGzip, parserThreads, total, pruning);
+				} else if (ENGINE_MINHASH.equals(engine)) {
+					String scoringName = line.getOptionValue(OPTION_MINHASH_SCORING, SCORING_JACCARD);
+					MinHashScoring scoring;
+					if (SCORING_JACCARD.equals(scoringName)) {
+						scoring = MinHashScoring.JACCARD;
+					} else if (SCORING_OVERLAP.equals(scoringName)) {
+						scoring = MinHashScoring.OVERLAP;
+					} else {
+						throw new ParseException("Unknown minhash scoring " + scoringName);
+					}
+					int bands = line.hasOption(OPTION_BANDS) ? Integer.parseInt(line.getOptionValue(OPTION_BANDS))
+							: MinHashSenseIndex.DEFAULT_BANDS;
+					int rows = line.hasOption(OPTION_ROWS) ? Integer.parseInt(line.getOptionValue(OPTION_ROWS))
+							: MinHashSenseIndex.DEFAULT_ROWS;
+					MinHashSenseIndex index = MinHashSenseIndex.build(ddt, parserThreads, total, bands, rows);
+					LOG.info("Creating index took {}ms", watch2.elapsed(TimeUnit.MILLISECONDS));
+					writeMinHashSimilarities(output, collectSimilarSensesPerSense, ddt, index, scoring,
+							compressionThreads, indexedGzip, pruning);
+				} else if (ENGINE_LUCENE.equals(engine)) {
+					String scoringName = line.getOptionValue(OPTION_LUCENE_SCORING, SCORING_TFIDF);
+					LuceneScoring luceneScoring;
+					if (SCORING_TFIDF.equals(scoringName)) {
+						luceneScoring = LuceneScoring.TFIDF;
+					} else if (SCORING_OVERLAP.equals(scoringName)) {
+						luceneScoring = LuceneScoring.OVERLAP;
+					} else if (SCORING_WEIGHTED.equals(scoringName)) {
+						luceneScoring = LuceneScoring.WEIGHTED_OVERLAP;
+					} else if (SCORING_DOT.equals(scoringName)) {
+						luceneScoring = LuceneScoring.WEIGHTED_DOT_PRODUCT;
+					} else {
+						throw new ParseException("Unknown lucene scoring " + scoringName);
+					}
+					float minScore = line.hasOption(OPTION_MIN_SCORE)
+							? Float.parseFloat(line.getOptionValue(OPTION_MIN_SCORE)) : 0f;
+					IndexingOptions indexingOptions = new IndexingOptions(
+							line.hasOption(OPTION_INDEX_THREADS)
+									? Integer.parseInt(line.getOptionValue(OPTION_INDEX_THREADS))
+									: Utils.DEFAULT_THREADS,
+							line.hasOption(OPTION_RAM_BUFFER) ? Double.parseDouble(line.getOptionValue(OPTION_RAM_BUFFER))
+									: IndexingOptions.DEFAULT_RAM_BUFFER_MB,
+							line.hasOption(OPTION_SEGMENTS_PER_TIER)
+									? Double.parseDouble(line.getOptionValue(OPTION_SEGMENTS_PER_TIER))
+									: IndexingOptions.DEFAULT_SEGMENTS_PER_TIER,
+							line.hasOption(OPTION_FORCE_MERGE) ? Integer.parseInt(line.getOptionValue(OPTION_FORCE_MERGE))
+									: IndexingOptions.NO_FORCE_MERGE,
+							luceneScoring == LuceneScoring.WEIGHTED_DOT_PRODUCT);
+					try (Directory index = line.hasOption(OPTION_INDEX_DIR)
+							? openIndex(ddt, new File(line.getOptionValue(OPTION_INDEX_DIR)), parserThreads, total,
+									indexingOptions)
+							: new RAMDirectory()) {
+						if (index instanceof RAMDirectory) {
+							LOG.info("Starting indexing: {}", indexingOptions);
+							buildIndex(ddt, index, parserThreads, total, indexingOptions, null);
+						}
+						LOG.info("Creating index took {}ms", watch2.elapsed(TimeUnit.MILLISECONDS));
+						writeLuceneBasedSimilarities(output, collectSimilarSensesPerSense, ddt, index,
+								compressionThreads, indexedGzip, parserThreads, total, pruning, luceneScoring, minScore);
+					}
+				} else {
+					throw new ParseException("Unknown engine " + engine);
+				}
 			} else {
 				LOG.error("Missing option, provide either " + OPTION_SIMILAR_SENSES + " or " + OPTION_ALL_SIMILARITIES);
 			}
@@ -105,183 +286,683 @@ public class SenseSimilarityCalculator {
 
 	@VisibleForTesting
 	protected static void writeAllSimilarities(File output, File ddt) {
-		int total = Utils.countLines(ddt);
-		try (BufferedWriter out = Utils.openWriter(output, false)) {
-			int count = 0;
-			try (DDTIterator it = new Parser().iterateDDT(ddt)) {
-				while (it.hasNext()) {
-					SenseCluster cluster = it.next();
-					if (cluster == null) {
-						continue;
-					}
+		writeAllSimilarities(output, ddt, 1, false, 1, null);
+	}
+
+	/**
+	 * Reads the ddt twice: once for the {@link SenseIdIndex} which expands
+	 * cluster words without a sense id to all senses of the word, once for the
+	 * similarities. The clusters of the second pass are processed in parallel
+	 * batches, the output keeps the order of the ddt.
+	 *
+	 * @param parserThreads
+	 *            threads which parse the ddt ahead of the similarity
+	 *            calculation, see {@link Parser#iterateDDT(File, int)}
+	 * @param pruning
+	 *            prunes the similar senses of each sense while writing, null
+	 *            writes all similarities
+	 */
+	protected static void writeAllSimilarities(File output, File ddt, int compressionThreads, boolean indexedGzip,
+			int parserThreads, SimilarityPruning pruning) {
+		Map<String, String> settings = outputSettings(ddt, pruning, "mode", OPTION_ALL_SIMILARITIES);
+		ThreadLocal<TopSimilarities> tops = ThreadLocal
+				.withInitial(() -> pruning != null ? pruning.newTopSimilarities() : null);
+		try {
+			Stopwatch watch = Stopwatch.createStarted();
+			SenseIdIndex senseIds = SenseIdIndex.build(ddt, parserThreads, 0);
+			int total = senseIds.getSenseCount();
+			LOG.info("Building the sense id index took {}ms, heap used: {}MB", watch.elapsed(TimeUnit.MILLISECONDS),
+					usedHeapMegabytes());
+			watch.reset().start();
+			try (BufferedWriter out = Utils.openWriter(output, new WriterOptions()
+					.compressionThreads(compressionThreads).indexed(indexedGzip).metadata(settings));
+					OutputSink sink = new OutputSink(out, true)) {
+				forEachCluster(ddt, parserThreads, total, sink, (cluster, position, buffer) -> {
 					Sense sense = cluster.getSense();
-					String senseWord = sense.getFullWord();
-					if (count++ % 100 == 0) {
-						LOG.info("Searching similarities for sense {}/{}", count, total);
-					}
-					Integer senseId = sense.getSenseId();
-					String senseWordId1 = senseWord + "#" + senseId;
-					for (ClusterWord clusterWord : cluster.getClusterWords()) {
-						String word = clusterWord.getFullWord();
-						if (clusterWord.getRelatedSenseId() != null) {
-							Integer wordSenseId = clusterWord.getRelatedSenseId();
-							String senseWordId2 = word + "#" + wordSenseId;
+					String senseWordId1 = sense.getFullWord() + "#" + sense.getSenseId();
+					TopSimilarities top = tops.get();
+					try {
+						for (ClusterWord clusterWord : cluster.getClusterWords()) {
+							String word = clusterWord.getFullWord();
 							double score = clusterWord.getWeight() == null ? 1 : clusterWord.getWeight();
-							String similarity = senseWordId1 + "\t" + senseWordId2 + "\t" + score;
-							out.write(similarity);
-							out.write("\n");
-						} else {
-							// special handling for clusters without sense ids,
-							// in this case the sense is equal to all other
-							// senses with the same id
-							for (Integer id : findSenseIdsWithSameFullWord(ddt, word, total)) {
-								Integer wordSenseId = id;
-								String senseWordId2 = word + "#" + wordSenseId;
-								double score = clusterWord.getWeight() == null ? 1 : clusterWord.getWeight();
-								String similarity = senseWordId1 + "\t" + senseWordId2 + "\t" + score;
-								out.write(similarity);
-								out.write("\n");
+							if (clusterWord.getRelatedSenseId() != null) {
+								writeSimilarity(buffer, top, senseWordId1, word, clusterWord.getRelatedSenseId(),
+										score);
+							} else {
+								// special handling for clusters without sense
+								// ids, in this case the sense is equal to all
+								// other senses with the same id
+								for (int wordSenseId : senseIds.getSenseIds(word)) {
+									writeSimilarity(buffer, top, senseWordId1, word, wordSenseId, score);
+								}
 							}
 						}
+						if (top != null) {
+							top.write(senseWordId1, buffer);
+						}
+					} catch (Exception e) {
+						clear(top);
+						throw e;
 					}
-				}
+				});
 			}
+			LOG.info("Writing all similarities took {}ms, peak heap used: {}MB",
+					watch.elapsed(TimeUnit.MILLISECONDS), peakHeapMegabytes());
 		} catch (Exception e) {
 			LOG.error("Error", e);
 		}
 	}
 
-	private static Map<String, List<Integer>> fullWordSenseIdIndex;
-	private static List<Integer> NOT_INDEXED = new ArrayList<>();
-	static {
-		NOT_INDEXED.add(0);
+	/**
+	 * Output of the similarities of one cluster.
+	 */
+	@FunctionalInterface
+	private static interface ClusterTask {
+		/**
+		 * @param position
+		 *            position of the cluster among the parsed clusters of the
+		 *            ddt, the same as the ordinal of its sense in the Lucene
+		 *            index
+		 */
+		void process(SenseCluster cluster, int position, OutputSink.Buffer buffer) throws Exception;
 	}
 
-	private static List<Integer> findSenseIdsWithSameFullWord(File ddt, String fullWord, int total) {
-		if (fullWordSenseIdIndex == null) {
-			LOG.info(
-					"Building full word sense index for {} clusters to generate all similarities without sense ids in cluster words",
-					total);
-			Stopwatch watch = Stopwatch.createStarted();
-			fullWordSenseIdIndex = new HashMap<>(total / 4);
-			try (DDTIterator it = new Parser().iterateDDT(ddt)) {
-				while (it.hasNext()) {
-					SenseCluster cluster = it.next();
-					if (cluster == null) {
-						continue;
-					}
-					String senseFullWord = cluster.getSense().getFullWord();
-					Integer senseId = cluster.getSense().getSenseId();
-					List<Integer> ids = fullWordSenseIdIndex.get(senseFullWord);
-					if (ids == null) {
-						ids = new ArrayList<>(4);
-						fullWordSenseIdIndex.put(senseFullWord, ids);
-					}
-					ids.add(senseId);
+	/**
+	 * Output of the similarities of the sense at a position of an index.
+	 */
+	@FunctionalInterface
+	private static interface SenseTask {
+		void process(int position, OutputSink.Buffer buffer) throws Exception;
+	}
+
+	/**
+	 * Reads the ddt with the parser threads and processes batches of clusters
+	 * in parallel. The output of each cluster is a record of the ordered sink,
+	 * so the output keeps the order of the ddt.
+	 */
+	private static void forEachCluster(File ddt, int parserThreads, int total, OutputSink sink, ClusterTask task)
+			throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(Utils.DEFAULT_THREADS);
+		try (DDTIterator it = new Parser().iterateDDT(ddt, parserThreads)) {
+			List<SenseCluster> batch = new ArrayList<>(CLUSTER_BATCH_SIZE);
+			int firstPosition = 0;
+			while (it.hasNext()) {
+				SenseCluster cluster = it.next();
+				if (cluster == null) {
+					continue;
 				}
-			} catch (IOException e) {
+				batch.add(cluster);
+				if (batch.size() == CLUSTER_BATCH_SIZE) {
+					processBatch(pool, batch, firstPosition, sink, task);
+					firstPosition += batch.size();
+					batch.clear();
+					LOG.info("Similarities for sense {}/{}", firstPosition, total);
+				}
+			}
+			if (!batch.isEmpty()) {
+				processBatch(pool, batch, firstPosition, sink, task);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static void processBatch(ForkJoinPool pool, List<SenseCluster> batch, int firstPosition, OutputSink sink,
+			ClusterTask task) throws IOException {
+		processBatch(pool, firstPosition, batch.size(), sink,
+				(position, buffer) -> task.process(batch.get(position - firstPosition), position, buffer));
+	}
+
+	/**
+	 * Processes the senses of an index which are numbered in ddt order, in
+	 * batches like {@link #forEachCluster(File, int, int, OutputSink, ClusterTask)}
+	 * but without reading the ddt again.
+	 */
+	private static void forEachSense(int senseCount, OutputSink sink, SenseTask task) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(Utils.DEFAULT_THREADS);
+		try {
+			for (int firstPosition = 0; firstPosition < senseCount; firstPosition += CLUSTER_BATCH_SIZE) {
+				processBatch(pool, firstPosition, Math.min(CLUSTER_BATCH_SIZE, senseCount - firstPosition), sink,
+						task);
+				LOG.info("Similarities for sense {}/{}", Math.min(firstPosition + CLUSTER_BATCH_SIZE, senseCount),
+						senseCount);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Processes the batch on the pool of the run, not on the common pool: the
+	 * per thread state of a run (searchers, collectors, top similarities and
+	 * buffers in {@link ThreadLocal}s) stays reachable as long as the thread
+	 * lives, the threads of the pool end when the run shuts it down.
+	 */
+	private static void processBatch(ForkJoinPool pool, int firstPosition, int size, OutputSink sink, SenseTask task)
+			throws IOException {
+		invoke(pool, () -> IntStream.range(firstPosition, firstPosition + size).parallel().forEach(position -> {
+			OutputSink.Buffer buffer = null;
+			try {
+				buffer = sink.buffer();
+				task.process(position, buffer);
+			} catch (Exception e) {
 				LOG.error("Error", e);
+				if (buffer != null) {
+					// no partial output of the failed sense
+					buffer.discardRecord();
+				}
+			} finally {
+				if (buffer != null) {
+					try {
+						// also for failed senses, the sink waits for every
+						// position
+						buffer.endRecord(position);
+					} catch (IOException e) {
+						LOG.error("Error", e);
+					}
+				}
 			}
-			LOG.info("Full index created in {}s", watch.elapsed(TimeUnit.SECONDS));
+		}));
+		// a thread which is idle in the next batch would otherwise keep the
+		// early records of this batch, all later records wait for them
+		sink.flush();
+	}
+
+	/**
+	 * Runs the work on the pool and waits for it, parallel streams of the work
+	 * use the threads of the pool.
+	 */
+	private static void invoke(ForkJoinPool pool, Runnable work) throws IOException {
+		try {
+			pool.submit(work).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while calculating the similarities");
+		} catch (ExecutionException e) {
+			Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+			throw Throwables.propagate(e.getCause());
 		}
-		List<Integer> ids = fullWordSenseIdIndex.get(fullWord);
-		if (ids != null) {
-			return ids;
+	}
+
+	/**
+	 * Drops the similarities which a failed sense collected, the next sense
+	 * of the thread would write them otherwise.
+	 */
+	private static void clear(TopSimilarities top) {
+		if (top != null) {
+			top.clear();
+		}
+	}
+
+	private static void writeSimilarity(OutputSink.Buffer buffer, TopSimilarities top, String senseWordId1,
+			String word, int wordSenseId, double score) {
+		if (top != null) {
+			top.add(word + "#" + wordSenseId, score);
 		} else {
-			// in case the cluster words contain a sense which is not included
-			// in the senses
-			return NOT_INDEXED;
+			buffer.append(senseWordId1).append('\t').append(word).append('#').append(wordSenseId).append('\t')
+					.append(score).append('\n');
 		}
 	}
 
+	private static long usedHeapMegabytes() {
+		Runtime runtime = Runtime.getRuntime();
+		return (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+	}
+
+	/**
+	 * Sum of the peak usage of the heap memory pools since the start of the
+	 * jvm.
+	 */
+	private static long peakHeapMegabytes() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak >> 20;
+	}
+
 	@VisibleForTesting
 	protected static void writeLuceneBasedSimilarities(File output, int collectSimilarSensesPerSense, File ddt,
-			Directory index) throws InterruptedException, IOException {
-		int total = Utils.countLines(ddt);
+			Directory index, int compressionThreads, boolean indexedGzip) throws IOException {
+		writeLuceneBasedSimilarities(output, collectSimilarSensesPerSense, ddt, index, compressionThreads, indexedGzip,
+				Utils.DEFAULT_THREADS, Utils.countLines(ddt), null);
+	}
+
+	/**
+	 * @param parserThreads
+	 *            number of threads which read and parse the ddt
+	 * @param total
+	 *            number of lines of the ddt, only used to log the progress
+	 * @param pruning
+	 *            prunes the similar senses of each sense while writing, null
+	 *            writes all similarities
+	 */
+	protected static void writeLuceneBasedSimilarities(File output, int collectSimilarSensesPerSense, File ddt,
+			Directory index, int compressionThreads, boolean indexedGzip, int parserThreads, int total,
+			SimilarityPruning pruning) throws IOException {
+		writeLuceneBasedSimilarities(output, collectSimilarSensesPerSense, ddt, index, compressionThreads, indexedGzip,
+				parserThreads, total, pruning, LuceneScoring.TFIDF, 0f);
+	}
+
+	/**
+	 * @param scoring
+	 *            similarity of the search, {@link LuceneScoring#TFIDF}
+	 *            reproduces the results of previous versions,
+	 *            {@link LuceneScoring#WEIGHTED_DOT_PRODUCT} requires an index
+	 *            with weights
+	 * @param minScore
+	 *            similar senses with a lower score are not collected
+	 */
+	protected static void writeLuceneBasedSimilarities(File output, int collectSimilarSensesPerSense, File ddt,
+			Directory index, int compressionThreads, boolean indexedGzip, int parserThreads, int total,
+			SimilarityPruning pruning, LuceneScoring scoring, float minScore) throws IOException {
+		Stopwatch watch = Stopwatch.createStarted();
+		Map<String, String> settings = outputSettings(ddt, pruning, "mode", OPTION_SIMILAR_SENSES,
+				OPTION_SIMILAR_SENSES, Integer.toString(collectSimilarSensesPerSense), OPTION_LUCENE_SCORING,
+				scoring.name(), OPTION_MIN_SCORE, Float.toString(minScore));
+		ThreadLocal<TopSimilarities> tops = ThreadLocal
+				.withInitial(() -> pruning != null ? pruning.newTopSimilarities() : null);
+		BooleanQuery.setMaxClauseCount(1000000);
+		try (IndexReader reader = DirectoryReader.open(index);
+				BufferedWriter out = Utils.openWriter(output, new WriterOptions()
+						.compressionThreads(compressionThreads).indexed(indexedGzip).metadata(settings));
+				OutputSink sink = new OutputSink(out, true)) {
+			if (scoring == LuceneScoring.WEIGHTED_DOT_PRODUCT && reader.numDocs() > 0
+					&& MultiFields.getMergedFieldInfos(reader).fieldInfo(FIELD_WEIGHTED_CLUSTER_WORD) == null) {
+				throw new IllegalStateException("Index without weights, rebuild the index for " + scoring);
+			}
+			IndexSearcher searcher = new IndexSearcher(reader);
+			if (scoring != LuceneScoring.TFIDF) {
+				searcher.setSimilarity(new OverlapSimilarity());
+			}
+			SenseOrdinals senses = SenseOrdinals.load(reader, FIELD_DDT_POSITION, "sense_word_id");
+			LOG.info("Loaded {} sense ordinals in {}ms", senses.size(), watch.elapsed(TimeUnit.MILLISECONDS));
+			ThreadLocal<TopSensesCollector> collectors = ThreadLocal
+					.withInitial(() -> new TopSensesCollector(senses, FIELD_DDT_POSITION));
+			forEachCluster(ddt, parserThreads, total, sink, (cluster, position, buffer) -> {
+				String senseWordId1 = senses.getSenseWordId(position);
+				TopSimilarities top = tops.get();
+				try {
+					BooleanQuery query = createQuery(cluster.getClusterWords(), scoring);
+					// with overlap scoring, a sense which contains all words
+					// has the highest possible score
+					float maxScore = scoring == LuceneScoring.OVERLAP ? query.clauses().size()
+							: Float.POSITIVE_INFINITY;
+					TopSensesCollector collector = collectors.get();
+					collector.reset(collectSimilarSensesPerSense, minScore, maxScore);
+					searcher.search(query, collector);
+					int hits = collector.sortHits();
+					for (int i = 0; i < hits; i++) {
+						int ordinal = collector.getOrdinal(i);
+						if (senses.isSameSense(position, ordinal)) {
+							// ignore self-similarity
+							continue;
+						}
+						String senseWordId2 = senses.getSenseWordId(ordinal);
+						float score = collector.getScore(i);
+						if (top != null) {
+							top.add(senseWordId2, score);
+						} else {
+							buffer.append(senseWordId1).append('\t').append(senseWordId2).append('\t')
+									.append(score).append('\n');
+						}
+					}
+					if (top != null) {
+						top.write(senseWordId1, buffer);
+					}
+				} catch (Exception e) {
+					clear(top);
+					throw e;
+				}
+			});
+			LOG.info("Searching similarities took {}ms", watch.elapsed(TimeUnit.MILLISECONDS));
+			LOG.info("Done");
+		}
+	}
+
+	/**
+	 * One SHOULD clause per cluster word. The overlap scorings have one clause
+	 * per distinct word, weighted by the sum of its weights for
+	 * {@link LuceneScoring#WEIGHTED_OVERLAP}. For
+	 * {@link LuceneScoring#WEIGHTED_DOT_PRODUCT} the weighted clauses are
+	 * payload queries, which multiply the weight with the weight of the word in
+	 * the sense.
+	 */
+	private static BooleanQuery createQuery(List<ClusterWord> clusterWords, LuceneScoring scoring) {
+		BooleanQuery.Builder builder = new BooleanQuery.Builder();
+		if (scoring == LuceneScoring.TFIDF) {
+			for (ClusterWord clusterWord : clusterWords) {
+				String word = clusterWord.getFullWord();
+				builder.add(new TermQuery(new Term("sense_cluster_word", word)), Occur.SHOULD);
+			}
+			return builder.build();
+		}
+		Map<String, Float> boosts = new LinkedHashMap<>();
+		for (ClusterWord clusterWord : clusterWords) {
+			if (scoring != LuceneScoring.OVERLAP) {
+				float weight = clusterWord.getWeight() == null ? 1f : clusterWord.getWeight().floatValue();
+				boosts.merge(clusterWord.getFullWord(), weight, Float::sum);
+			} else {
+				boosts.put(clusterWord.getFullWord(), 1f);
+			}
+		}
+		for (Map.Entry<String, Float> boost : boosts.entrySet()) {
+			Query query;
+			if (scoring == LuceneScoring.WEIGHTED_DOT_PRODUCT) {
+				// the max of a single payload, a word occurs once per sense
+				query = new PayloadTermQuery(new Term(FIELD_WEIGHTED_CLUSTER_WORD, boost.getKey()),
+						new MaxPayloadFunction(), true);
+			} else {
+				query = new TermQuery(new Term("sense_cluster_word", boost.getKey()));
+			}
+			query.setBoost(boost.getValue());
+			builder.add(query, Occur.SHOULD);
+		}
+		builder.setDisableCoord(true);
+		return builder.build();
+	}
+
+	/**
+	 * Same as
+	 * {@link #writeLuceneBasedSimilarities(File, int, File, Directory, int, boolean, int, int, SimilarityPruning)}
+	 * with an {@link InvertedSenseIndex}. The clauses of the Lucene query are
+	 * scored directly on int postings, with {@link Scoring#LUCENE_CLASSIC} the
+	 * ranking of the Lucene search is reproduced.
+	 */
+	protected static void writeInvertedIndexSimilarities(File output, int collectSimilarSensesPerSense, File ddt,
+			InvertedSenseIndex index, Scoring scoring, int compressionThreads, boolean indexedGzip, int parserThreads,
+			int total, SimilarityPruning pruning) throws IOException {
 		Stopwatch watch = Stopwatch.createStarted();
-		IndexReader reader = DirectoryReader.open(index);
-		IndexSearcher searcher = new IndexSearcher(reader);
-		CountDownLatch latch = new CountDownLatch(total);
-		try (BufferedWriter out = Utils.openWriter(output, false)) {
+		Map<String, String> settings = outputSettings(ddt, pruning, "mode", OPTION_SIMILAR_SENSES,
+				OPTION_SIMILAR_SENSES, Integer.toString(collectSimilarSensesPerSense), OPTION_ENGINE, scoring.name());
+		ThreadLocal<TopSimilarities> tops = ThreadLocal
+				.withInitial(() -> pruning != null ? pruning.newTopSimilarities() : null);
+		// one score accumulator per thread of the stream
+		ThreadLocal<InvertedSenseIndex.Searcher> searchers = ThreadLocal.withInitial(() -> index.newSearcher(scoring));
+		try (BufferedWriter out = Utils.openWriter(output, new WriterOptions()
+				.compressionThreads(compressionThreads).indexed(indexedGzip).metadata(settings));
+				OutputSink sink = new OutputSink(out, false)) {
 			AtomicInteger count = new AtomicInteger();
-			try (DDTIterator iterator = new Parser().iterateDDT(ddt)) {
-				StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), true)
-						.forEach(cluster -> {
-							try {
-								if (cluster != null) {
-									String senseWord = cluster.getSense().getFullWord();
-									if (count.incrementAndGet() % 100 == 0) {
-										LOG.info("Searching similarities for sense {}/{}", count, total);
-									}
-									Integer senseId = cluster.getSense().getSenseId();
-									String senseWordId1 = senseWord + "#" + senseId;
-									BooleanQuery.Builder builder = new BooleanQuery.Builder();
-									BooleanQuery.setMaxClauseCount(1000000);
-									for (ClusterWord clusterWord : cluster.getClusterWords()) {
-										String word = clusterWord.getFullWord();
-										builder.add(new TermQuery(new Term("sense_cluster_word", word)), Occur.SHOULD);
-									}
-									BooleanQuery query = builder.build();
-									TopDocs result = searcher.search(query, collectSimilarSensesPerSense);
-									for (ScoreDoc s : result.scoreDocs) {
-										String senseWordId2 = reader.document(s.doc).getField("sense_word_id")
-												.stringValue();
-										if (senseWordId1.equals(senseWordId2)) {
-											// ignore self-similarity
-											continue;
-										}
-										float score = s.score;
-										String similarity = senseWordId1 + "\t" + senseWordId2 + "\t" + score;
-										synchronized (out) {
-											out.write(similarity);
-											out.write("\n");
-										}
-									}
-								}
-							} catch (Exception e) {
-								LOG.error("Error", e);
-							} finally {
-								latch.countDown();
+			// like the batches of the other engines, see processBatch
+			ForkJoinPool pool = new ForkJoinPool(Utils.DEFAULT_THREADS);
+			try (Stream<SenseCluster> clusters = new Parser().streamDDT(ddt, false,
+					Parser.DEFAULT_STREAM_BATCH_SIZE, parserThreads)) {
+				invoke(pool, () -> clusters.forEach(cluster -> {
+					OutputSink.Buffer buffer = null;
+					TopSimilarities top = tops.get();
+					try {
+						buffer = sink.buffer();
+						String senseWord = cluster.getSense().getFullWord();
+						if (count.incrementAndGet() % 100 == 0) {
+							LOG.info("Searching similarities for sense {}/{}", count, total);
+						}
+						Integer senseId = cluster.getSense().getSenseId();
+						String senseWordId1 = senseWord + "#" + senseId;
+						InvertedSenseIndex.Searcher searcher = searchers.get();
+						int hits = searcher.search(cluster.getClusterWords(), collectSimilarSensesPerSense);
+						for (int i = 0; i < hits; i++) {
+							String senseWordId2 = index.getSenseWordId(searcher.getSense(i));
+							if (senseWordId1.equals(senseWordId2)) {
+								// ignore self-similarity
+								continue;
+							}
+							if (top != null) {
+								top.add(senseWordId2, searcher.getScore(i));
+							} else {
+								buffer.append(senseWordId1).append('\t').append(senseWordId2).append('\t')
+										.append(searcher.getScore(i)).append('\n');
 							}
-						});
+						}
+						if (top != null) {
+							top.write(senseWordId1, buffer);
+						}
+						buffer.endRecord();
+					} catch (Exception e) {
+						LOG.error("Error", e);
+						// no partial output of the failed sense
+						clear(top);
+						if (buffer != null) {
+							buffer.discardRecord();
+						}
+					}
+				}));
+			} finally {
+				pool.shutdown();
 			}
-			// don't close the stream before all work is done
-			latch.await();
 			LOG.info("Searching similarities took {}ms", watch.elapsed(TimeUnit.MILLISECONDS));
-			LOG.info("Done");
 		}
 	}
 
-	private static void buildIndex(File ddt, IndexWriterConfig config, RAMDirectory index) throws IOException {
-		int total = Utils.countLines(ddt);
-		try (IndexWriter w = new IndexWriter(index, config)) {
-			int count = 0;
-			try (DDTIterator it = new Parser().iterateDDT(ddt)) {
+	/**
+	 * Approximate top-N similar senses: only the candidates of the
+	 * {@link MinHashSenseIndex} are scored. The index holds all it needs, the
+	 * ddt is not read again. The output keeps the order of the senses of the
+	 * index, which is the order of the ddt.
+	 */
+	protected static void writeMinHashSimilarities(File output, int collectSimilarSensesPerSense, File ddt,
+			MinHashSenseIndex index, MinHashScoring scoring, int compressionThreads, boolean indexedGzip,
+			SimilarityPruning pruning) throws IOException {
+		Stopwatch watch = Stopwatch.createStarted();
+		Map<String, String> settings = outputSettings(ddt, pruning, "mode", OPTION_SIMILAR_SENSES,
+				OPTION_SIMILAR_SENSES, Integer.toString(collectSimilarSensesPerSense), OPTION_ENGINE, ENGINE_MINHASH,
+				OPTION_MINHASH_SCORING, scoring.name(), OPTION_BANDS, Integer.toString(index.getBands()), OPTION_ROWS,
+				Integer.toString(index.getRows()));
+		ThreadLocal<TopSimilarities> tops = ThreadLocal
+				.withInitial(() -> pruning != null ? pruning.newTopSimilarities() : null);
+		ThreadLocal<MinHashSenseIndex.Searcher> searchers = ThreadLocal.withInitial(() -> index.newSearcher(scoring));
+		AtomicLong candidates = new AtomicLong();
+		try (BufferedWriter out = Utils.openWriter(output, new WriterOptions()
+				.compressionThreads(compressionThreads).indexed(indexedGzip).metadata(settings));
+				OutputSink sink = new OutputSink(out, true)) {
+			forEachSense(index.getSenseCount(), sink, (position, buffer) -> {
+				String senseWordId1 = index.getSenseWordId(position);
+				MinHashSenseIndex.Searcher searcher = searchers.get();
+				TopSimilarities top = tops.get();
+				try {
+					int hits = searcher.search(position, collectSimilarSensesPerSense);
+					candidates.addAndGet(searcher.getCandidates());
+					for (int i = 0; i < hits; i++) {
+						String senseWordId2 = index.getSenseWordId(searcher.getSense(i));
+						if (senseWordId1.equals(senseWordId2)) {
+							// ignore self-similarity
+							continue;
+						}
+						if (top != null) {
+							top.add(senseWordId2, searcher.getScore(i));
+						} else {
+							buffer.append(senseWordId1).append('\t').append(senseWordId2).append('\t')
+									.append(searcher.getScore(i)).append('\n');
+						}
+					}
+					if (top != null) {
+						top.write(senseWordId1, buffer);
+					}
+				} catch (Exception e) {
+					clear(top);
+					throw e;
+				}
+			});
+			LOG.info("Searching similarities took {}ms, scored {} candidates per sense",
+					watch.elapsed(TimeUnit.MILLISECONDS), candidates.get() / Math.max(1, index.getSenseCount()));
+		}
+	}
+
+	private static Map<String, String> outputSettings(File ddt, SimilarityPruning pruning, String... keyValues) {
+		Map<String, String> settings = new LinkedHashMap<>();
+		settings.put("producer", SenseSimilarityCalculator.class.getName());
+		settings.put("input", ddt.getPath());
+		for (int i = 0; i < keyValues.length; i += 2) {
+			settings.put(keyValues[i], keyValues[i + 1]);
+		}
+		if (pruning != null) {
+			settings.put("pruning", pruning.toString());
+		}
+		return settings;
+	}
+
+	/**
+	 * Opens the persistent index of the ddt in the directory. The index is
+	 * built on the first run and reused by later runs on the same ddt, e.g.
+	 * with different values for the number of similar senses. An index of a
+	 * different ddt in the directory is replaced. The ddt is identified by the
+	 * checksum from its {@link FileMetadata} if available, otherwise the
+	 * checksum is computed.
+	 * <p>
+	 * The directory is memory mapped where supported, so the index does not
+	 * occupy the heap.
+	 */
+	protected static Directory openIndex(File ddt, File indexDir, int parserThreads, int total) throws IOException {
+		return openIndex(ddt, indexDir, parserThreads, total, IndexingOptions.defaults());
+	}
+
+	/**
+	 * Same as {@link #openIndex(File, File, int, int)}, the options are only
+	 * used if the index is built. An existing index without weights is rebuilt
+	 * if the options require weights.
+	 */
+	protected static Directory openIndex(File ddt, File indexDir, int parserThreads, int total,
+			IndexingOptions options) throws IOException {
+		FileMetadata metadata = FileMetadata.load(ddt);
+		long checksum = metadata != null ? metadata.getChecksum() : FileMetadata.checksum(ddt);
+		String ddtChecksum = Long.toHexString(checksum) + ":" + ddt.length();
+		Directory index = FSDirectory.open(indexDir.toPath());
+		try {
+			if (DirectoryReader.indexExists(index)) {
+				Map<String, String> commitData = SegmentInfos.readLatestCommit(index).getUserData();
+				if (ddtChecksum.equals(commitData.get(COMMIT_DDT_CHECKSUM))
+						&& INDEX_VERSION.equals(commitData.get(COMMIT_INDEX_VERSION))
+						&& (!options.isWeights() || Boolean.parseBoolean(commitData.get(COMMIT_WEIGHTS)))) {
+					LOG.info("Reusing index {} of {}", indexDir.getAbsolutePath(), ddt.getAbsolutePath());
+					return index;
+				}
+				LOG.info("Index {} does not match {}, rebuilding", indexDir.getAbsolutePath(), ddt.getAbsolutePath());
+			}
+			LOG.info("Starting indexing into {}: {}", indexDir.getAbsolutePath(), options);
+			buildIndex(ddt, index, parserThreads, total, options,
+					ImmutableMap.of(COMMIT_DDT_CHECKSUM, ddtChecksum, COMMIT_INDEX_VERSION, INDEX_VERSION,
+							COMMIT_WEIGHTS, Boolean.toString(options.isWeights())));
+			return index;
+		} catch (IOException | RuntimeException e) {
+			index.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the ddt with the parser threads and adds the senses in batches
+	 * with the index threads to the same IndexWriter.
+	 *
+	 * @param commitData
+	 *            stored with the commit of a persistent index, may be null
+	 */
+	private static void buildIndex(File ddt, Directory index, int parserThreads, int total, IndexingOptions options,
+			Map<String, String> commitData) throws IOException {
+		Stopwatch watch = Stopwatch.createStarted();
+		ExecutorService executor = Executors.newFixedThreadPool(options.getIndexThreads());
+		// bounds the parsed clusters which wait for the index threads
+		Semaphore pendingBatches = new Semaphore(2 * options.getIndexThreads());
+		List<Future<Void>> futures = new ArrayList<>();
+		AtomicInteger count = new AtomicInteger();
+		IndexWriter w = new IndexWriter(index, options.createIndexConfig());
+		boolean committed = false;
+		try {
+			try (DDTIterator it = new Parser().iterateDDT(ddt, parserThreads)) {
+				List<SenseCluster> batch = new ArrayList<>(INDEX_BATCH_SIZE);
+				long firstPosition = 0;
 				while (it.hasNext()) {
 					SenseCluster cluster = it.next();
 					if (cluster == null) {
 						continue;
 					}
-					String senseWord = cluster.getSense().getFullWord();
-					Document senseDocument = new Document();
-					if (count++ % 100 == 0) {
-						LOG.info("indexing sense {}/{}, index size: {} bytes", count, total, index.ramBytesUsed());
+					batch.add(cluster);
+					if (batch.size() == INDEX_BATCH_SIZE) {
+						futures.add(submitBatch(executor, pendingBatches, w, index, batch, firstPosition, count, total,
+								options.isWeights()));
+						firstPosition += batch.size();
+						batch = new ArrayList<>(INDEX_BATCH_SIZE);
 					}
-					Integer senseId = cluster.getSense().getSenseId();
+				}
+				if (!batch.isEmpty()) {
+					futures.add(submitBatch(executor, pendingBatches, w, index, batch, firstPosition, count, total,
+							options.isWeights()));
+				}
+				for (Future<Void> future : futures) {
+					future.get();
+				}
+			} finally {
+				// no batch may add documents after the writer is closed or
+				// rolled back
+				executor.shutdownNow();
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+			}
+			LOG.info("Added {} senses in {}ms", count, watch.elapsed(TimeUnit.MILLISECONDS));
+			if (options.getForceMergeSegments() > 0) {
+				watch.reset().start();
+				w.forceMerge(options.getForceMergeSegments());
+				LOG.info("Force merge to {} segments took {}ms", options.getForceMergeSegments(),
+						watch.elapsed(TimeUnit.MILLISECONDS));
+			}
+			if (commitData != null) {
+				w.setCommitData(commitData);
+			}
+			w.commit();
+			committed = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while indexing");
+		} catch (ExecutionException e) {
+			Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+			throw Throwables.propagate(e.getCause());
+		} finally {
+			if (committed) {
+				w.close();
+			} else {
+				// closing would commit the partial index
+				w.rollback();
+			}
+		}
+	}
+
+	private static Future<Void> submitBatch(ExecutorService executor, Semaphore pendingBatches, IndexWriter w,
+			Directory index, List<SenseCluster> batch, long firstPosition, AtomicInteger count, int total,
+			boolean weights) throws InterruptedException {
+		pendingBatches.acquire();
+		return executor.submit(() -> {
+			try {
+				for (int i = 0; i < batch.size(); i++) {
+					SenseCluster cluster = batch.get(i);
+					Document senseDocument = new Document();
+					String senseWord = cluster.getSense().getFullWord();
+					int senseId = cluster.getSense().getSenseId();
 					senseDocument.add(new StringField("sense_word_id", senseWord + "#" + senseId, Store.YES));
+					senseDocument.add(new NumericDocValuesField(FIELD_DDT_POSITION, firstPosition + i));
 					for (ClusterWord clusterWord : cluster.getClusterWords()) {
-						String word = clusterWord.getFullWord();
-						senseDocument.add(new StringField("sense_cluster_word", word, Store.NO));
+						senseDocument.add(new StringField("sense_cluster_word", clusterWord.getFullWord(), Store.NO));
+					}
+					if (weights) {
+						senseDocument.add(WeightedWordsTokenStream.createField(FIELD_WEIGHTED_CLUSTER_WORD,
+								cluster.getClusterWords()));
 					}
 					try {
 						w.addDocument(senseDocument);
-					} catch (Exception e) {
-						LOG.warn("Error while adding document for cluster {} to index {}.", count, senseDocument, e);
+					} catch (IllegalArgumentException e) {
+						// a missing document would leave its ordinal without a
+						// sense
+						throw new IllegalArgumentException("Unable to index the sense " + senseWord + "#" + senseId
+								+ " of cluster " + (firstPosition + i), e);
+					}
+					if (count.incrementAndGet() % 10000 == 0) {
+						LOG.info("indexing sense {}/{}, ram used: {} bytes", count, total,
+								index instanceof RAMDirectory ? ((RAMDirectory) index).ramBytesUsed() : w.ramBytesUsed());
 					}
 				}
-				w.commit();
+			} finally {
+				pendingBatches.release();
 			}
-		}
+			return null;
+		});
 	}
 
 	private static Options createOptions() {
@@ -300,6 +981,92 @@ public class SenseSimilarityCalculator {
 						+ OPTION_SIMILAR_SENSES + " option is ignored in this case.")
 				.build();
 		options.addOption(allSimilarities);
+		Option compressionThreads = Option.builder(OPTION_COMPRESSION_THREADS).argName("compression threads")
+				.desc("Number of threads for the gzip compression of the output (if it ends with .gz), default: number of cores")
+				.hasArg().type(Integer.class).build();
+		options.addOption(compressionThreads);
+		Option indexedGzip = Option.builder(OPTION_INDEXED_GZIP).argName("indexed gzip")
+				.desc("Write gzip output as line aligned blocks with a .idx offset index for parallel reads").build();
+		options.addOption(indexedGzip);
+		Option parserThreads = Option.builder(OPTION_PARSER_THREADS).argName("parser threads")
+				.desc("Number of threads which read, decompress and parse the ddt ahead of the indexing and similarity calculation, default: number of cores")
+				.hasArg().type(Integer.class).build();
+		options.addOption(parserThreads);
+		Option indexDir = Option.builder(OPTION_INDEX_DIR).argName("index dir")
+				.desc("Directory for a persistent, memory mapped index for " + OPTION_SIMILAR_SENSES
+						+ ". The index is built once and reused by later runs on the same ddt, default: in-memory index")
+				.hasArg().type(String.class).build();
+		options.addOption(indexDir);
+		Option engine = Option.builder(OPTION_ENGINE).argName("engine")
+				.desc("Search engine for " + OPTION_SIMILAR_SENSES + ": " + ENGINE_LUCENE
+						+ " (Lucene index, default), " + ENGINE_CLASSIC
+						+ " (in-memory inverted index, same ranking as lucene), " + ENGINE_OVERLAP
+						+ " (in-memory inverted index, number of shared cluster words), " + ENGINE_MINHASH
+						+ " (approximate, only scores the candidates of MinHash LSH)")
+				.hasArg().type(String.class).build();
+		options.addOption(engine);
+		Option indexThreads = Option.builder(OPTION_INDEX_THREADS).argName("index threads")
+				.desc("Number of threads which add the senses to the Lucene index, default: number of cores").hasArg()
+				.type(Integer.class).build();
+		options.addOption(indexThreads);
+		Option ramBuffer = Option.builder(OPTION_RAM_BUFFER).argName("ram buffer")
+				.desc("RAM buffer of the Lucene index in MB, a segment is flushed when it is full, default: "
+						+ IndexingOptions.DEFAULT_RAM_BUFFER_MB)
+				.hasArg().type(Double.class).build();
+		options.addOption(ramBuffer);
+		Option segmentsPerTier = Option.builder(OPTION_SEGMENTS_PER_TIER).argName("segments per tier")
+				.desc("Segments per tier of the merge policy of the Lucene index, higher values merge less often, default: "
+						+ IndexingOptions.DEFAULT_SEGMENTS_PER_TIER)
+				.hasArg().type(Double.class).build();
+		options.addOption(segmentsPerTier);
+		Option forceMerge = Option.builder(OPTION_FORCE_MERGE).argName("segments")
+				.desc("Force merge the Lucene index to at most this many segments after indexing, for faster searches, default: no force merge")
+				.hasArg().type(Integer.class).build();
+		options.addOption(forceMerge);
+		Option luceneScoring = Option.builder(OPTION_LUCENE_SCORING).argName("scoring")
+				.desc("Similarity of the " + ENGINE_LUCENE + " engine: " + SCORING_TFIDF
+						+ " (default Lucene similarity, default), " + SCORING_OVERLAP + " (number of shared cluster words), "
+						+ SCORING_WEIGHTED + " (sum of the weights of the query cluster words which the sense shares), "
+						+ SCORING_DOT
+						+ " (dot product of the weights of the shared cluster words, indexes the weights as payloads)")
+				.hasArg().type(String.class).build();
+		options.addOption(luceneScoring);
+		Option minScore = Option.builder(OPTION_MIN_SCORE).argName("min score")
+				.desc("Minimum score of a similar sense of the " + ENGINE_LUCENE + " engine, default: 0").hasArg()
+				.type(Float.class).build();
+		options.addOption(minScore);
+		Option bands = Option.builder(OPTION_BANDS).argName("bands")
+				.desc("Number of LSH bands of the " + ENGINE_MINHASH
+						+ " engine, more bands find more similar senses but score more candidates, default: "
+						+ MinHashSenseIndex.DEFAULT_BANDS)
+				.hasArg().type(Integer.class).build();
+		options.addOption(bands);
+		Option rows = Option.builder(OPTION_ROWS).argName("rows")
+				.desc("Number of MinHash values per LSH band of the " + ENGINE_MINHASH
+						+ " engine, more rows score fewer candidates with a lower similarity, default: "
+						+ MinHashSenseIndex.DEFAULT_ROWS)
+				.hasArg().type(Integer.class).build();
+		options.addOption(rows);
+		Option minHashScoring = Option.builder(OPTION_MINHASH_SCORING).argName("scoring")
+				.desc("Exact similarity of the candidates of the " + ENGINE_MINHASH + " engine: " + SCORING_JACCARD
+						+ " (Jaccard similarity of the distinct cluster words, default), " + SCORING_OVERLAP
+						+ " (number of shared cluster words)")
+				.hasArg().type(String.class).build();
+		options.addOption(minHashScoring);
+		Option sensesToKeep = Option.builder(OPTION_SENSES_TO_KEEP).argName("senses to keep")
+				.desc("Prune the output to the top n similar senses of each sense, sorted by descending similarity. Same as "
+						+ SortedSenseSimilarityPruner.class.getSimpleName()
+						+ " on the sorted output, default: no pruning")
+				.hasArg().type(Integer.class).build();
+		options.addOption(sensesToKeep);
+		Option similarityThreshold = Option.builder(OPTION_SIMILARITY_THRESHOLD).argName("similarity threshold")
+				.desc("Additional pruning with " + OPTION_SENSES_TO_KEEP
+						+ ": If the similarity drops below this threshold (factor to the top similarity), all further senses are pruned.")
+				.hasArg().type(Double.class).build();
+		options.addOption(similarityThreshold);
+		Option binarize = Option.builder(OPTION_BINARIZE).argName("binarize")
+				.desc("Flag to write all kept similarities as 1.0, requires " + OPTION_SENSES_TO_KEEP).build();
+		options.addOption(binarize);
 		return options;
 	}
 }
@@ -0,0 +1,131 @@
+package de.tudarmstadt.lt.structuredtopics.similarity;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.store.Directory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Stopwatch;
+import com.google.common.io.Files;
+
+import de.tudarmstadt.lt.structuredtopics.Utils;
+import de.tudarmstadt.lt.structuredtopics.similarity.InvertedSenseIndex.Scoring;
+
+/**
+ * Compares the Lucene search of {@link SenseSimilarityCalculator} with the
+ * {@link InvertedSenseIndex} on a ddt: logs the time for indexing and
+ * searching of each engine and checks that the classic scoring produces the
+ * same similarities as Lucene.
+ */
+public class SimilarityEngineBenchmark {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SimilarityEngineBenchmark.class);
+
+	private static final String OPTION_IN_FILE = "in";
+	private static final String OPTION_OUT_DIR = "out";
+	private static final String OPTION_SIMILAR_SENSES = "N";
+	private static final String OPTION_PARSER_THREADS = "parserThreads";
+
+	public static void main(String[] args) {
+		Options options = createOptions();
+		try {
+			CommandLine cl = new DefaultParser().parse(options, args, true);
+			File ddt = new File(cl.getOptionValue(OPTION_IN_FILE));
+			File outDir = new File(cl.getOptionValue(OPTION_OUT_DIR));
+			int n = Integer.parseInt(cl.getOptionValue(OPTION_SIMILAR_SENSES));
+			int parserThreads = cl.hasOption(OPTION_PARSER_THREADS)
+					? Integer.parseInt(cl.getOptionValue(OPTION_PARSER_THREADS))
+					: Utils.DEFAULT_THREADS;
+			outDir.mkdirs();
+			int total = Utils.countLines(ddt);
+
+			File lucene = new File(outDir, "similarities-lucene.csv");
+			Stopwatch watch = Stopwatch.createStarted();
+			File indexDir = new File(outDir, "lucene-index");
+			// measure the indexing, not the reuse of an index from a previous run
+			FileUtils.deleteDirectory(indexDir);
+			try (Directory index = SenseSimilarityCalculator.openIndex(ddt, indexDir, parserThreads, total)) {
+				long indexing = watch.elapsed(TimeUnit.MILLISECONDS);
+				watch.reset().start();
+				SenseSimilarityCalculator.writeLuceneBasedSimilarities(lucene, n, ddt, index, 1, false, parserThreads,
+						total, null);
+				LOG.info("lucene: indexing {}ms, searching {}ms", indexing, watch.elapsed(TimeUnit.MILLISECONDS));
+			}
+
+			watch.reset().start();
+			InvertedSenseIndex index = InvertedSenseIndex.build(ddt, parserThreads, total);
+			long indexing = watch.elapsed(TimeUnit.MILLISECONDS);
+			for (Scoring scoring : Scoring.values()) {
+				File output = new File(outDir, "similarities-" + scoring.name().toLowerCase() + ".csv");
+				watch.reset().start();
+				SenseSimilarityCalculator.writeInvertedIndexSimilarities(output, n, ddt, index, scoring, 1, false,
+						parserThreads, total, null);
+				LOG.info("inverted index {}: indexing {}ms, searching {}ms", scoring, indexing,
+						watch.elapsed(TimeUnit.MILLISECONDS));
+				if (scoring == Scoring.LUCENE_CLASSIC) {
+					compare(lucene, output);
+				}
+			}
+		} catch (ParseException e) {
+			LOG.error("Invalid arguments", e);
+			StringWriter sw = new StringWriter();
+			try (PrintWriter w = new PrintWriter(sw)) {
+				new HelpFormatter().printHelp(w, Integer.MAX_VALUE, "application", "", options, 0, 0, "", true);
+			}
+			LOG.error(sw.toString());
+		} catch (Exception e) {
+			LOG.error("Error", e);
+		}
+	}
+
+	private static void compare(File expectedFile, File actualFile) throws IOException {
+		// the similarities are written in parallel
+		List<String> expected = Files.readLines(expectedFile, Charsets.UTF_8);
+		List<String> actual = Files.readLines(actualFile, Charsets.UTF_8);
+		Collections.sort(expected);
+		Collections.sort(actual);
+		if (expected.equals(actual)) {
+			LOG.info("{} and {} contain the same {} similarities", expectedFile.getName(), actualFile.getName(),
+					expected.size());
+		} else {
+			expected.removeAll(actual);
+			LOG.warn("{} and {} differ, {} similarities of {} are missing", expectedFile.getName(),
+					actualFile.getName(), expected.size(), expectedFile.getName());
+		}
+	}
+
+	private static Options createOptions() {
+		Options options = new Options();
+		Option input = Option.builder(OPTION_IN_FILE).argName("file").desc("The input ddt").hasArg().required()
+				.type(String.class).build();
+		options.addOption(input);
+		Option output = Option.builder(OPTION_OUT_DIR).argName("output dir")
+				.desc("Directory for the similarities and the Lucene index").hasArg().required().type(String.class)
+				.build();
+		options.addOption(output);
+		Option similarSenses = Option.builder(OPTION_SIMILAR_SENSES).argName("similar senses")
+				.desc("Number of top similar senses per sense").hasArg().required().type(Integer.class).build();
+		options.addOption(similarSenses);
+		Option parserThreads = Option.builder(OPTION_PARSER_THREADS).argName("parser threads")
+				.desc("Number of threads which parse the ddt while indexing, default: number of cores").hasArg()
+				.type(Integer.class).build();
+		options.addOption(parserThreads);
+		return options;
+	}
+
+}
@@ -0,0 +1,205 @@
+package de.tudarmstadt.lt.structuredtopics.similarity;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pruning of the similar senses of a sense, as done by
+ * {@link SortedSenseSimilarityPruner} on sorted similarities and by the
+ * similarity calculators while writing. Of the similar senses sorted by
+ * descending similarity, at most <code>sensesToKeep</code> are kept, and only
+ * while the top similarity divided by the similarity is below the similarity
+ * threshold. Binarized similarities are written as 1.0.
+ */
+public class SimilarityPruning {
+
+	public static final double NO_THRESHOLD = Double.MAX_VALUE;
+
+	private final int sensesToKeep;
+	private final double similarityThreshold;
+	private final boolean binarize;
+
+	public SimilarityPruning(int sensesToKeep, double similarityThreshold, boolean binarize) {
+		this.sensesToKeep = sensesToKeep;
+		this.similarityThreshold = similarityThreshold;
+		this.binarize = binarize;
+	}
+
+	public int getSensesToKeep() {
+		return sensesToKeep;
+	}
+
+	public double getSimilarityThreshold() {
+		return similarityThreshold;
+	}
+
+	public boolean isBinarize() {
+		return binarize;
+	}
+
+	/**
+	 * @param rank
+	 *            position of the similar sense in the descending order of its
+	 *            sense, starting at 0
+	 * @param topSimilarity
+	 *            the highest similarity of the sense
+	 */
+	public boolean keep(int rank, double topSimilarity, double similarity) {
+		return rank < sensesToKeep && (topSimilarity / similarity) < similarityThreshold;
+	}
+
+	/**
+	 * Creates a collector for the similar senses of one sense at a time. A
+	 * collector is not thread-safe.
+	 */
+	public TopSimilarities newTopSimilarities() {
+		return new TopSimilarities();
+	}
+
+	@Override
+	public String toString() {
+		return "sensesToKeep=" + sensesToKeep + ", similarityThreshold=" + similarityThreshold + ", binarize="
+				+ binarize;
+	}
+
+	/**
+	 * Keeps the <code>sensesToKeep</code> most similar senses of a sense in a
+	 * bounded heap, so only the pruned similarities are held in memory. Senses
+	 * with the same similarity are ordered by name.
+	 */
+	public class TopSimilarities {
+
+		// min-heap, the least similar sense at the root
+		private String[] senses = new String[Math.min(sensesToKeep, 16)];
+		private double[] similarities = new double[senses.length];
+		private boolean[] floats = new boolean[senses.length];
+		private int size = 0;
+
+		private TopSimilarities() {
+		}
+
+		public void add(String sense, double similarity) {
+			add(sense, similarity, false);
+		}
+
+		/**
+		 * Same as {@link #add(String, double)}, the similarity is written
+		 * with float precision.
+		 */
+		public void add(String sense, float similarity) {
+			add(sense, similarity, true);
+		}
+
+		private void add(String sense, double similarity, boolean isFloat) {
+			if (sensesToKeep <= 0) {
+				return;
+			}
+			if (size < sensesToKeep) {
+				if (size == senses.length) {
+					int capacity = Math.min(sensesToKeep, size * 2);
+					senses = Arrays.copyOf(senses, capacity);
+					similarities = Arrays.copyOf(similarities, capacity);
+					floats = Arrays.copyOf(floats, capacity);
+				}
+				set(size, sense, similarity, isFloat);
+				siftUp(size++);
+			} else if (lessSimilar(senses[0], similarities[0], sense, similarity)) {
+				set(0, sense, similarity, isFloat);
+				siftDown(0);
+			}
+		}
+
+		/**
+		 * Writes the pruned similarities as
+		 * <code>sense\tsimilar sense\tsimilarity</code> lines, sorted by
+		 * descending similarity, and clears the collector.
+		 */
+		public void write(String sense, Appendable out) throws IOException {
+			// sort by heap removal, the least similar sense goes to the end
+			int count = size;
+			for (int last = size - 1; last > 0; last--) {
+				swap(0, last);
+				size = last;
+				siftDown(0);
+			}
+			double topSimilarity = count > 0 ? similarities[0] : 0;
+			for (int rank = 0; rank < count; rank++) {
+				if (!keep(rank, topSimilarity, similarities[rank])) {
+					// the similarities only decrease
+					break;
+				}
+				out.append(sense).append('\t').append(senses[rank]).append('\t');
+				if (binarize) {
+					out.append("1.0");
+				} else if (floats[rank]) {
+					out.append(Float.toString((float) similarities[rank]));
+				} else {
+					out.append(Double.toString(similarities[rank]));
+				}
+				out.append('\n');
+			}
+			clear();
+		}
+
+		public void clear() {
+			Arrays.fill(senses, 0, size, null);
+			size = 0;
+		}
+
+		/**
+		 * True if sense a ranks behind sense b.
+		 */
+		private boolean lessSimilar(String a, double similarityA, String b, double similarityB) {
+			return similarityA < similarityB || (similarityA == similarityB && a.compareTo(b) > 0);
+		}
+
+		private void set(int i, String sense, double similarity, boolean isFloat) {
+			senses[i] = sense;
+			similarities[i] = similarity;
+			floats[i] = isFloat;
+		}
+
+		private void siftUp(int i) {
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (!lessSimilar(senses[i], similarities[i], senses[parent], similarities[parent])) {
+					return;
+				}
+				swap(i, parent);
+				i = parent;
+			}
+		}
+
+		private void siftDown(int i) {
+			while (true) {
+				int left = 2 * i + 1;
+				if (left >= size) {
+					return;
+				}
+				int least = left;
+				int right = left + 1;
+				if (right < size && lessSimilar(senses[right], similarities[right], senses[left], similarities[left])) {
+					least = right;
+				}
+				if (!lessSimilar(senses[least], similarities[least], senses[i], similarities[i])) {
+					return;
+				}
+				swap(i, least);
+				i = least;
+			}
+		}
+
+		private void swap(int i, int j) {
+			String sense = senses[i];
+			senses[i] = senses[j];
+			senses[j] = sense;
+			double similarity = similarities[i];
+			similarities[i] = similarities[j];
+			similarities[j] = similarity;
+			boolean isFloat = floats[i];
+			floats[i] = floats[j];
+			floats[j] = isFloat;
+		}
+	}
+
+}
@@ -1,10 +1,10 @@
 package de.tudarmstadt.lt.structuredtopics.similarity;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Map;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
@@ -15,8 +15,13 @@ import org.apache.commons.cli.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import de.tudarmstadt.lt.structuredtopics.Main.InputMode;
+import com.google.common.collect.ImmutableMap;
+
 import de.tudarmstadt.lt.structuredtopics.Utils;
+import de.tudarmstadt.lt.structuredtopics.ddts.Tokenizer;
+import de.tudarmstadt.lt.structuredtopics.io.LineBuffer;
+import de.tudarmstadt.lt.structuredtopics.io.LineReader;
+import de.tudarmstadt.lt.structuredtopics.io.WriterOptions;
 
 public class SortedSenseSimilarityPruner {
 
@@ -26,6 +31,8 @@ public class SortedSenseSimilarityPruner {
 	private static final String OPTION_SENSES_TO_KEEP = "sensesToKeep";
 	private static final String OPTION_BINARIZE = "binarize";
 	private static final String OPTION_SIMILARITY_THRESHOLD = "similarityThreshold";
+	private static final String OPTION_COMPRESSION_THREADS = "compressionThreads";
+	private static final String OPTION_INDEXED_GZIP = "indexedGzip";
 
 	public static void main(String[] args) {
 		Options options = createOptions();
@@ -34,36 +41,51 @@ public class SortedSenseSimilarityPruner {
 			File input = new File(cl.getOptionValue(OPTION_IN_FILE));
 			File output = new File(cl.getOptionValue(OPTION_OUT_FILE));
 			int sensesToKeep = Integer.parseInt(cl.getOptionValue(OPTION_SENSES_TO_KEEP));
-			boolean binarize = Boolean.parseBoolean(cl.getOptionValue(OPTION_BINARIZE));
-			double similarityThreshold = Double.MAX_VALUE;
+			boolean binarize = cl.hasOption(OPTION_BINARIZE);
+			double similarityThreshold = SimilarityPruning.NO_THRESHOLD;
 			if (cl.hasOption(OPTION_SIMILARITY_THRESHOLD)) {
 				similarityThreshold = Double.parseDouble(cl.getOptionValue(OPTION_SIMILARITY_THRESHOLD));
 			}
-			try (BufferedWriter out = Utils.openGzipWriter(output)) {
-				try (BufferedReader in = Utils.openReader(input, InputMode.GZ)) {
-					String line = null;
+			SimilarityPruning pruning = new SimilarityPruning(sensesToKeep, similarityThreshold, binarize);
+			int compressionThreads = cl.hasOption(OPTION_COMPRESSION_THREADS)
+					? Integer.parseInt(cl.getOptionValue(OPTION_COMPRESSION_THREADS))
+					: Utils.DEFAULT_COMPRESSION_THREADS;
+			boolean indexedGzip = cl.hasOption(OPTION_INDEXED_GZIP);
+			Map<String, String> settings = ImmutableMap.of("producer", SortedSenseSimilarityPruner.class.getName(),
+					"input", input.getPath(), "pruning", pruning.toString());
+			try (BufferedWriter out = Utils.openWriter(output, new WriterOptions().gzip(true)
+					.compressionThreads(compressionThreads).indexed(indexedGzip).metadata(settings))) {
+				try (LineReader in = Utils.openLineReader(input)) {
 					String currentSense = "";
 					int currentSenseCount = 0;
-					while ((line = in.readLine()) != null) {
+					double topSimilarity = 0;
+					while (in.nextLine()) {
+						LineBuffer line = in.getLine();
 						try {
-							String[] split = line.split("\t");
-							String sense = split[0];
-							double topSimilarity = 0;
-							double currentSimilarity = Double.parseDouble(split[2]);
-							if (sense.equals(currentSense)) {
+							// columns: sense, similar sense, similarity
+							int length = line.length();
+							int firstTab = Tokenizer.indexOf(line, '\t', 0, length);
+							int secondTab = Tokenizer.indexOf(line, '\t', firstTab + 1, length);
+							if (firstTab == -1 || secondTab == -1) {
+								throw new IllegalArgumentException("Missing columns");
+							}
+							int thirdTab = Tokenizer.indexOf(line, '\t', secondTab + 1, length);
+							double currentSimilarity = Tokenizer.parseDouble(line, secondTab + 1,
+									thirdTab == -1 ? length : thirdTab);
+							if (line.regionEquals(0, firstTab, currentSense)) {
 								currentSenseCount++;
 							} else {
 								// new sense
-								currentSense = sense;
+								currentSense = line.subSequence(0, firstTab);
 								currentSenseCount = 0;
 								topSimilarity = currentSimilarity;
 							}
-							if (currentSenseCount < sensesToKeep
-									&& (topSimilarity / currentSimilarity) < similarityThreshold) {
+							if (pruning.keep(currentSenseCount, topSimilarity, currentSimilarity)) {
 								if (binarize) {
-									out.write(split[0] + "\t" + split[1] + "\t" + "1.0");
+									line.writeTo(out, 0, secondTab);
+									out.write("\t" + "1.0");
 								} else {
-									out.write(line);
+									line.writeTo(out);
 								}
 								out.write("\n");
 							} else {
@@ -106,6 +128,17 @@ public class SortedSenseSimilarityPruner {
 				.desc("Additional pruning: If the similarity drops below this threshold (factor to the top similarity), all further senses are pruned.")
 				.hasArg().type(Integer.class).build();
 		options.addOption(similarityThreshold);
+		Option binarize = Option.builder(OPTION_BINARIZE).argName("binarize")
+				.desc("Flag to write all kept similarities as 1.0").build();
+		options.addOption(binarize);
+		Option compressionThreads = Option.builder(OPTION_COMPRESSION_THREADS).argName("compression threads")
+				.desc("Number of threads for the gzip compression of the output, default: number of cores").hasArg()
+				.type(Integer.class).build();
+		options.addOption(compressionThreads);
+		Option indexedGzip = Option.builder(OPTION_INDEXED_GZIP).argName("indexed gzip")
+				.desc("Write the output as line aligned gzip blocks with a .idx offset index for parallel reads")
+				.build();
+		options.addOption(indexedGzip);
 		return options;
 	}
 }
@@ -0,0 +1,143 @@
+package de.tudarmstadt.lt.structuredtopics.similarity;
+
+import java.util.Arrays;
+
+/**
+ * The top n senses of a search, ordered by descending score, then by ordinal
+ * (the position in the ddt). The senses are kept in a bounded min-heap with
+ * the worst sense at the root until {@link #sort()} orders them.
+ * <p>
+ * An instance is reused for the searches of one thread, see
+ * {@link #reset(int)}.
+ */
+final class TopSenses {
+
+	private int[] senses = new int[16];
+	private float[] scores = new float[16];
+	private int n;
+	private int size = 0;
+
+	/**
+	 * Prepares the next search.
+	 */
+	void reset(int n) {
+		this.n = n;
+		size = 0;
+	}
+
+	/**
+	 * True if n senses are collected, a sense has to be better than the
+	 * worst sense to enter.
+	 */
+	boolean isFull() {
+		return size >= n;
+	}
+
+	/**
+	 * Ordinal of the worst collected sense, only before {@link #sort()}.
+	 */
+	int getWorstSense() {
+		return senses[0];
+	}
+
+	/**
+	 * Score of the worst collected sense, only before {@link #sort()}.
+	 */
+	float getWorstScore() {
+		return scores[0];
+	}
+
+	/**
+	 * Adds the sense if it is among the top n senses so far.
+	 */
+	void offer(int sense, float score) {
+		if (size < n) {
+			if (size == senses.length) {
+				int capacity = (int) Math.min(n, 2L * size);
+				senses = Arrays.copyOf(senses, capacity);
+				scores = Arrays.copyOf(scores, capacity);
+			}
+			senses[size] = sense;
+			scores[size] = score;
+			siftUp(size++);
+		} else if (n > 0 && worse(senses[0], scores[0], sense, score)) {
+			senses[0] = sense;
+			scores[0] = score;
+			siftDown(0);
+		}
+	}
+
+	/**
+	 * Sorts the collected senses, by descending score, then by ordinal. No
+	 * sense can be offered until the next {@link #reset(int)}.
+	 *
+	 * @return the number of senses, see {@link #getSense(int)} and
+	 *         {@link #getScore(int)}
+	 */
+	int sort() {
+		// sort by heap removal, the worst sense goes to the end
+		int count = size;
+		for (int last = size - 1; last > 0; last--) {
+			swap(0, last);
+			size = last;
+			siftDown(0);
+		}
+		size = count;
+		return count;
+	}
+
+	int getSense(int i) {
+		return senses[i];
+	}
+
+	float getScore(int i) {
+		return scores[i];
+	}
+
+	/**
+	 * True if sense a ranks behind sense b.
+	 */
+	private static boolean worse(int a, float scoreA, int b, float scoreB) {
+		return scoreA < scoreB || (scoreA == scoreB && a > b);
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!worse(senses[i], scores[i], senses[parent], scores[parent])) {
+				return;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int left = 2 * i + 1;
+			if (left >= size) {
+				return;
+			}
+			int worst = left;
+			int right = left + 1;
+			if (right < size && worse(senses[right], scores[right], senses[left], scores[left])) {
+				worst = right;
+			}
+			if (!worse(senses[worst], scores[worst], senses[i], scores[i])) {
+				return;
+			}
+			swap(i, worst);
+			i = worst;
+		}
+	}
+
+	private void swap(int i, int j) {
+		int sense = senses[i];
+		senses[i] = senses[j];
+		senses[j] = sense;
+		float score = scores[i];
+		scores[i] = scores[j];
+		scores[j] = score;
+	}
+
+}
@@ -0,0 +1,112 @@
+package de.tudarmstadt.lt.structuredtopics.similarity;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Scorer;
+
+/**
+ * Collects the top n senses of a search with at least a minimum score, ordered
+ * by descending score, then by ordinal (the position in the ddt) like a sort
+ * by score and ordinal field. Hits which can not enter the top n are rejected
+ * before their ordinal is read.
+ * <p>
+ * If the maximum possible score of the query is known, the collection of a
+ * leaf ends as soon as the top n all have that score and the following
+ * documents of the leaf can only have higher ordinals.
+ * <p>
+ * A collector is reused for the searches of one thread, see
+ * {@link #reset(int, float, float)}.
+ */
+class TopSensesCollector implements Collector {
+
+	private final SenseOrdinals ordinals;
+	private final String ordinalField;
+	private int n;
+	private float minScore;
+	private float maxScore;
+	private final TopSenses top = new TopSenses();
+
+	/**
+	 * @param ordinalField
+	 *            numeric DocValues with the ordinal of each document
+	 */
+	TopSensesCollector(SenseOrdinals ordinals, String ordinalField) {
+		this.ordinals = ordinals;
+		this.ordinalField = ordinalField;
+	}
+
+	/**
+	 * Prepares the collector for the next search.
+	 *
+	 * @param maxScore
+	 *            highest score a document can have for the query, or
+	 *            {@link Float#POSITIVE_INFINITY} if unknown
+	 */
+	void reset(int n, float minScore, float maxScore) {
+		this.n = n;
+		this.minScore = minScore;
+		this.maxScore = maxScore;
+		top.reset(n);
+	}
+
+	@Override
+	public boolean needsScores() {
+		return true;
+	}
+
+	@Override
+	public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+		if (n <= 0) {
+			throw new CollectionTerminatedException();
+		}
+		NumericDocValues docOrdinals = context.reader().getNumericDocValues(ordinalField);
+		boolean ordered = ordinals.isOrderedByOrdinal(context.ord);
+		return new LeafCollector() {
+
+			private Scorer scorer;
+
+			@Override
+			public void setScorer(Scorer scorer) throws IOException {
+				this.scorer = scorer;
+			}
+
+			@Override
+			public void collect(int doc) throws IOException {
+				if (top.isFull() && ordered && top.getWorstScore() >= maxScore
+						&& docOrdinals.get(doc) > top.getWorstSense()) {
+					// the remaining documents can not be better than the worst
+					throw new CollectionTerminatedException();
+				}
+				float score = scorer.score();
+				if (score < minScore || (top.isFull() && score < top.getWorstScore())) {
+					return;
+				}
+				top.offer((int) docOrdinals.get(doc), score);
+			}
+		};
+	}
+
+	/**
+	 * Sorts the collected senses, by descending score, then by ordinal.
+	 *
+	 * @return the number of hits, see {@link #getOrdinal(int)} and
+	 *         {@link #getScore(int)}
+	 */
+	int sortHits() {
+		return top.sort();
+	}
+
+	int getOrdinal(int i) {
+		return top.getSense(i);
+	}
+
+	float getScore(int i) {
+		return top.getScore(i);
+	}
+
+}
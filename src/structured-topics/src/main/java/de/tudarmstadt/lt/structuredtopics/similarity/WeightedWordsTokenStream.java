@@ -0,0 +1,68 @@
+package de.tudarmstadt.lt.structuredtopics.similarity;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.payloads.PayloadHelper;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.util.BytesRef;
+
+import de.tudarmstadt.lt.structuredtopics.ddts.ClusterWord;
+
+/**
+ * The cluster words of a sense as tokens, each with its weight as a float
+ * payload (1 for words without a weight). The payloads are scored by
+ * {@link OverlapSimilarity#scorePayload(int, int, int, BytesRef)}.
+ */
+final class WeightedWordsTokenStream extends TokenStream {
+
+	/**
+	 * Payloads require positions, the norms are not used for scoring
+	 */
+	static final FieldType TYPE = new FieldType();
+
+	static {
+		TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS);
+		TYPE.setTokenized(true);
+		TYPE.setOmitNorms(true);
+		TYPE.freeze();
+	}
+
+	private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+	private final PayloadAttribute payloadAttribute = addAttribute(PayloadAttribute.class);
+	private final List<ClusterWord> clusterWords;
+	private int next = 0;
+
+	WeightedWordsTokenStream(List<ClusterWord> clusterWords) {
+		this.clusterWords = clusterWords;
+	}
+
+	static Field createField(String name, List<ClusterWord> clusterWords) {
+		return new Field(name, new WeightedWordsTokenStream(clusterWords), TYPE);
+	}
+
+	@Override
+	public boolean incrementToken() throws IOException {
+		if (next == clusterWords.size()) {
+			return false;
+		}
+		clearAttributes();
+		ClusterWord clusterWord = clusterWords.get(next++);
+		float weight = clusterWord.getWeight() == null ? 1f : clusterWord.getWeight().floatValue();
+		termAttribute.append(clusterWord.getFullWord());
+		payloadAttribute.setPayload(new BytesRef(PayloadHelper.encodeFloat(weight)));
+		return true;
+	}
+
+	@Override
+	public void reset() throws IOException {
+		super.reset();
+		next = 0;
+	}
+
+}
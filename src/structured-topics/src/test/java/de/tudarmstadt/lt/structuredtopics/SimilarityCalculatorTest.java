@@ -0,0 +1,292 @@
+package de.tudarmstadt.lt.structuredtopics;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import de.tudarmstadt.lt.structuredtopics.similarity.SimilarityPruning;
+
+public class SimilarityCalculatorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private ClusterStore clusters;
+
+	@Before
+	public void setUp() {
+		clusters = new ClusterStore();
+	}
+
+	@Test
+	public void testSimilarity() {
+		int cluster1 = add("a#NN", 0, new String[] { "b#NN", "c#NN", "d#NN" }, new double[] { 1, 0.5, 0.25 });
+		int cluster2 = add("b#NN", 0, new String[] { "d#NN", "x#NN", "c#NN" }, new double[] { 1, 1, 1 });
+		clusters.sortClusterWords();
+
+		double expected = (0.5 * 0.5 + 0.25 * 0.25) / (Math.sqrt(1 + 0.25 + 0.0625) + Math.sqrt(3));
+		assertThat(SimilarityCalculator.computeSimilarity(clusters, cluster1, cluster2), closeTo(expected, 1e-9));
+	}
+
+	@Test
+	public void testNoCommonWords() {
+		int cluster1 = add("a#NN", 0, new String[] { "b#NN" }, new double[] { 1 });
+		int cluster2 = add("b#NN", 0, new String[] { "c#NN" }, new double[] { 1 });
+		clusters.sortClusterWords();
+
+		assertThat(SimilarityCalculator.computeSimilarity(clusters, cluster1, cluster2), is(0.0));
+	}
+
+	@Test
+	public void testSameAsNestedLoops() {
+		Random random = new Random(42);
+		int[] ids = new int[200];
+		for (int i = 0; i < ids.length; i++) {
+			int size = 1 + random.nextInt(30);
+			String[] words = new String[size];
+			double[] weights = new double[size];
+			for (int j = 0; j < size; j++) {
+				// small vocabulary -> many common and duplicate words
+				words[j] = "w" + random.nextInt(40);
+				weights[j] = random.nextDouble();
+			}
+			ids[i] = add("s" + i, 0, words, weights);
+		}
+		clusters.sortClusterWords();
+
+		for (int cluster1 : ids) {
+			for (int cluster2 : ids) {
+				double expected = nestedLoops(cluster1, cluster2);
+				assertThat(SimilarityCalculator.computeSimilarity(clusters, cluster1, cluster2), is(expected));
+			}
+		}
+	}
+
+	@Test
+	public void testSameOutputAsBaselineKernel() throws IOException {
+		// weights which are not representable as binary fractions, and
+		// duplicate cluster words
+		String[] weights = { "0.1", "0.2", "0.3", "0.7", "1.1", "0.333" };
+		Random random = new Random(42);
+		Parser parser = new Parser();
+		Map<String, Map<Integer, List<Feature>>> baselineClusters = Maps.newHashMap();
+		for (int i = 0; i < 200; i++) {
+			StringBuilder line = new StringBuilder("s" + i + "#NN\t" + random.nextInt(2) + "\t");
+			int size = 1 + random.nextInt(10);
+			for (int j = 0; j < size; j++) {
+				line.append(j > 0 ? ", " : "").append("s" + random.nextInt(200) + "#NN#" + random.nextInt(2) + ":"
+						+ weights[random.nextInt(weights.length)]);
+			}
+			parser.addClusterFromLine(line.toString(), i, clusters);
+			parser.addClusterFromLine(line.toString(), i, baselineClusters);
+		}
+		File similarities = new File(folder.getRoot(), "similarities.gz");
+		File ddt = new File(folder.getRoot(), "ddt.gz");
+
+		new SimilarityCalculator().calculateSimilarities(clusters, similarities, 1, false);
+		Utils.writeClustersToFile(clusters, ddt);
+
+		List<String> expected = baselineSimilarities(baselineClusters);
+		assertThat(expected.isEmpty(), is(false));
+		assertThat(readSortedLines(similarities), is(expected));
+		assertThat(readSortedLines(ddt), is(baselineClusterLines(baselineClusters)));
+	}
+
+	@Test
+	public void testShardedSameAsSingleShard() throws IOException {
+		addRandomSenses(300);
+		File single = new File(folder.getRoot(), "single.gz");
+		File merged = new File(folder.getRoot(), "merged.gz");
+		SimilarityCalculator calculator = new SimilarityCalculator();
+
+		calculator.calculateSimilarities(clusters, single, 1, false);
+		List<File> shards = calculator.calculateShardedSimilarities(clusters, folder.newFolder("shards"), 3, 2, false,
+				false);
+		Utils.concatenateFiles(shards, merged);
+
+		assertThat(shards.size(), is(3));
+		List<String> expected = readSortedLines(single);
+		assertThat(expected.isEmpty(), is(false));
+		assertThat(readSortedLines(merged), is(expected));
+	}
+
+	@Test
+	public void testPruningSameAsPrunedOutput() throws IOException {
+		addRandomSenses(300);
+		File all = new File(folder.getRoot(), "all.gz");
+		File pruned = new File(folder.getRoot(), "pruned.gz");
+
+		new SimilarityCalculator().calculateSimilarities(clusters, all, 1, false);
+		new SimilarityCalculator(new SimilarityPruning(3, SimilarityPruning.NO_THRESHOLD, true))
+				.calculateSimilarities(clusters, pruned, 1, false);
+
+		// the 3 most similar senses of each sense, ties by name
+		Map<String, List<String[]>> bySense = new LinkedHashMap<>();
+		for (String line : readSortedLines(all)) {
+			String[] split = line.split("\t");
+			bySense.computeIfAbsent(split[0], sense -> Lists.newArrayList()).add(split);
+		}
+		List<String> expected = Lists.newArrayList();
+		for (List<String[]> similar : bySense.values()) {
+			similar.sort(Comparator.<String[]> comparingDouble(split -> -Double.parseDouble(split[2]))
+					.thenComparing(split -> split[1]));
+			for (String[] split : similar.subList(0, Math.min(3, similar.size()))) {
+				expected.add(split[0] + "\t" + split[1] + "\t1.0");
+			}
+		}
+		Collections.sort(expected);
+		assertThat(expected.isEmpty(), is(false));
+		assertThat(readSortedLines(pruned), is(expected));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testShardedRequiresThreads() throws IOException {
+		new SimilarityCalculator().calculateShardedSimilarities(clusters, folder.newFolder("shards"), 0, false,
+				false);
+	}
+
+	/**
+	 * Senses whose cluster words are other senses, so the senses have
+	 * similarities.
+	 */
+	private void addRandomSenses(int count) {
+		Random random = new Random(42);
+		for (int i = 0; i < count; i++) {
+			int size = 1 + random.nextInt(10);
+			String[] words = new String[size];
+			double[] weights = new double[size];
+			for (int j = 0; j < size; j++) {
+				words[j] = "s" + random.nextInt(count);
+				weights[j] = random.nextDouble();
+			}
+			add("s" + i, 0, words, weights);
+		}
+	}
+
+	/**
+	 * Output of the nested loops over the feature lists, which were replaced
+	 * by the {@link ClusterStore}.
+	 */
+	private static List<String> baselineSimilarities(Map<String, Map<Integer, List<Feature>>> clusters) {
+		List<String> lines = Lists.newArrayList();
+		for (Entry<String, Map<Integer, List<Feature>>> sense : clusters.entrySet()) {
+			for (Entry<Integer, List<Feature>> senseIdClusters : sense.getValue().entrySet()) {
+				List<Feature> clusterWords1 = senseIdClusters.getValue();
+				for (Feature feature : clusterWords1) {
+					Map<Integer, List<Feature>> possibleSensesForClusterWord = clusters.get(feature.getWord());
+					if (possibleSensesForClusterWord == null) {
+						continue;
+					}
+					for (Entry<Integer, List<Feature>> senseForWord : possibleSensesForClusterWord.entrySet()) {
+						double similarity = baselineSimilarity(clusterWords1, senseForWord.getValue());
+						if (similarity != 0) {
+							lines.add(sense.getKey() + "#" + senseIdClusters.getKey() + "\t" + feature.getWord() + "#"
+									+ senseForWord.getKey() + "\t" + similarity);
+						}
+					}
+				}
+			}
+		}
+		Collections.sort(lines);
+		return lines;
+	}
+
+	private static double baselineSimilarity(List<Feature> clusterWords1, List<Feature> clusterWords2) {
+		double commonWeights = 0;
+		for (Feature f : clusterWords1) {
+			for (Feature f2 : clusterWords2) {
+				if (f2.getWord().equals(f.getWord())) {
+					commonWeights += f.getWeight() * f.getWeight();
+				}
+			}
+		}
+		return commonWeights / (baselineVectorLength(clusterWords1) + baselineVectorLength(clusterWords2));
+	}
+
+	private static double baselineVectorLength(List<Feature> clusterWords) {
+		double sum = 0;
+		for (Feature f : clusterWords) {
+			sum += (f.getWeight() * f.getWeight());
+		}
+		return Math.sqrt(sum);
+	}
+
+	private static List<String> baselineClusterLines(Map<String, Map<Integer, List<Feature>>> clusters) {
+		List<String> lines = Lists.newArrayList();
+		for (Entry<String, Map<Integer, List<Feature>>> senseClusters : clusters.entrySet()) {
+			for (Entry<Integer, List<Feature>> senseCluster : senseClusters.getValue().entrySet()) {
+				StringBuilder line = new StringBuilder(senseClusters.getKey() + "\t" + senseCluster.getKey() + "\t");
+				for (Feature f : senseCluster.getValue()) {
+					if (f.getSenseId() != null) {
+						line.append(f.getWord() + "#" + f.getSenseId() + ":" + f.getWeight());
+					} else {
+						line.append(f.getWord());
+					}
+					line.append(", ");
+				}
+				lines.add(line.toString());
+			}
+		}
+		Collections.sort(lines);
+		return lines;
+	}
+
+	private static List<String> readSortedLines(File file) throws IOException {
+		List<String> lines = Lists.newArrayList();
+		try (BufferedReader in = Utils.openReader(file)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				lines.add(line);
+			}
+		}
+		// the shards are written in parallel
+		Collections.sort(lines);
+		return lines;
+	}
+
+	private double nestedLoops(int cluster1, int cluster2) {
+		double commonWeights = 0;
+		for (int i = clusters.getClusterStart(cluster1); i < clusters.getClusterEnd(cluster1); i++) {
+			double weight = clusters.getClusterWordWeight(i);
+			for (int j = clusters.getClusterStart(cluster2); j < clusters.getClusterEnd(cluster2); j++) {
+				if (clusters.getClusterWordId(i) == clusters.getClusterWordId(j)) {
+					commonWeights += weight * weight;
+				}
+			}
+		}
+		return commonWeights / (vectorLength(cluster1) + vectorLength(cluster2));
+	}
+
+	private double vectorLength(int cluster) {
+		double sum = 0;
+		for (int i = clusters.getClusterStart(cluster); i < clusters.getClusterEnd(cluster); i++) {
+			double weight = clusters.getClusterWordWeight(i);
+			sum += weight * weight;
+		}
+		return Math.sqrt(sum);
+	}
+
+	private int add(String senseWord, int senseId, String[] words, double[] weights) {
+		int[] senseIds = new int[words.length];
+		return clusters.addCluster(senseWord, senseId, words, weights, senseIds, words.length);
+	}
+}
@@ -0,0 +1,55 @@
+package de.tudarmstadt.lt.structuredtopics.convert;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import de.tudarmstadt.lt.structuredtopics.Utils;
+import de.tudarmstadt.lt.structuredtopics.ddts.FilterChain;
+import de.tudarmstadt.lt.structuredtopics.ddts.Parser;
+import de.tudarmstadt.lt.structuredtopics.ddts.SenseCluster;
+import de.tudarmstadt.lt.structuredtopics.ddts.WordFilter;
+
+public class DdtFilterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSameAsFilteringTheList() throws IOException {
+		File ddt = folder.newFile("ddt.csv.gz");
+		try (BufferedWriter out = Utils.openWriter(ddt, false)) {
+			for (int i = 0; i < 3000; i++) {
+				String pos = i % 7 == 0 ? "JJ" : "NN";
+				String word = i % 11 == 0 ? "1990" : "word" + i;
+				out.write(word + "#" + pos + "\t" + i + "\t" + "a#NN#1:0.5, 42#NN#2:0.25, b#" + pos + "#3:0.125\n");
+			}
+		}
+		Set<String> tags = Sets.newHashSet("NN");
+		Parser parser = new Parser();
+		List<SenseCluster> expected = parser.parseDDT(ddt);
+		Utils.filterClustersByPosTag(expected, tags);
+		Utils.filterClustersByRegEx(expected, DdtFilter.WORD_REGEX);
+		File output = new File(folder.getRoot(), "filtered.csv.gz");
+
+		FilterChain filter = new FilterChain(
+				Lists.newArrayList(WordFilter.posTags(tags), WordFilter.containsAsciiLetter()));
+		int written = DdtFilter.filter(ddt, output, filter, 3);
+
+		assertThat(written, is(expected.size()));
+		assertThat(parser.parseDDT(output), is(expected));
+	}
+
+}
@@ -0,0 +1,89 @@
+package de.tudarmstadt.lt.structuredtopics.ddts;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import de.tudarmstadt.lt.structuredtopics.Utils;
+import de.tudarmstadt.lt.structuredtopics.ddts.Parser.DDTIterator;
+
+public class BinaryDDTTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File ddt;
+
+	@Before
+	public void setUp() throws IOException {
+		ddt = folder.newFile("ddt.csv");
+		try (BufferedWriter out = Utils.openWriter(ddt, false)) {
+			out.write("word#NN\t0\tword2#NN#1:0.5, word3#JJ#0:0.25\n");
+			out.write("unparseable\n");
+			out.write("wordA wordB\t1.0\tw\u00f6rd1 word2#1:1.000, word3, ##\n");
+			out.write("word#NN\t1\tword4#VB\n");
+		}
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		File binary = new File(folder.getRoot(), "ddt" + BinaryDDT.SUFFIX);
+		Parser parser = new Parser();
+
+		assertThat(BinaryDDT.convert(ddt, binary), is(3L));
+
+		List<SenseCluster> expected = parser.parseDDT(ddt);
+		assertThat(parser.parseDDT(binary, 4), is(expected));
+		assertThat(Utils.countLines(binary), is(3));
+		List<SenseCluster> iterated = Lists.newArrayList();
+		try (DDTIterator it = parser.iterateDDT(binary)) {
+			while (it.hasNext()) {
+				iterated.add(it.next());
+			}
+		}
+		assertThat(iterated, is(expected));
+	}
+
+	@Test
+	public void testView() throws IOException {
+		File binary = new File(folder.getRoot(), "ddt" + BinaryDDT.SUFFIX);
+		Parser parser = new Parser();
+		Utils.writeClustersToFile(parser.parseDDT(ddt), binary);
+
+		try (DDTIterator it = parser.iterateDDT(binary)) {
+			SenseClusterView view = it.nextView();
+			assertThat(view.getSenseFullWord(), is("word"));
+			assertThat(view.getClusterWordCount(), is(2));
+			assertThat(view.getRelatedSenseId(1), is(0));
+			assertThat(view.getWeight(1), is(0.25));
+			view = it.nextView();
+			assertThat(view.getSenseFullWord(), is("wordA wordB"));
+			assertThat(view.getSenseId(), is(1));
+			assertThat(view.getClusterWordFullWord(0), is("w\u00f6rd1 word2"));
+			assertThat(view.getRelatedSenseId(1), is(SenseClusterView.NO_SENSE_ID));
+		}
+	}
+
+	@Test(expected = UncheckedIOException.class)
+	public void testCountLinesOfInvalidBinary() throws IOException {
+		File binary = new File(folder.getRoot(), "invalid" + BinaryDDT.SUFFIX);
+		Files.write("not a binary ddt", binary, Charsets.UTF_8);
+
+		Utils.countLines(binary);
+	}
+
+}
@@ -4,9 +4,25 @@ import static com.google.common.collect.Lists.newArrayList;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 import org.hamcrest.Matchers;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import de.tudarmstadt.lt.structuredtopics.Utils;
+import de.tudarmstadt.lt.structuredtopics.ddts.Parser.DDTIterator;
 
 public class ParserTest {
 
@@ -15,6 +31,9 @@ public class ParserTest {
 	private static final String C = ",";
 	private static final String CW = ", ";
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	private Parser sut;
 
 	@Before
@@ -82,6 +101,47 @@ public class ParserTest {
 		assertEquals(actual, expected);
 	}
 
+	@Test
+	public void testStreamDDT() throws IOException {
+		File ddt = writeDDT(5000);
+		List<SenseCluster> expected = sut.parseDDT(ddt);
+
+		try (Stream<SenseCluster> clusters = sut.streamDDT(ddt, true, 64, 2)) {
+			assertThat(clusters.collect(Collectors.toList()), is(expected));
+		}
+		try (Stream<SenseCluster> clusters = sut.streamDDT(ddt, false)) {
+			assertThat(clusters.collect(Collectors.toSet()), is((Set<SenseCluster>) Sets.newHashSet(expected)));
+		}
+	}
+
+	@Test
+	public void testIterateDDTPipelined() throws IOException {
+		File ddt = writeDDT(5000);
+		List<SenseCluster> expected = Lists.newArrayList(sut.iterateDDT(ddt));
+
+		try (DDTIterator it = sut.iterateDDT(ddt, 3)) {
+			// includes null for the unparseable lines
+			assertThat(Lists.newArrayList(it), is(expected));
+		}
+		try (DDTIterator it = sut.iterateDDT(ddt, 3)) {
+			// stop reading early
+			assertThat(it.next(), is(expected.get(0)));
+		}
+	}
+
+	private File writeDDT(int lines) throws IOException {
+		File ddt = folder.newFile("ddt.csv");
+		try (BufferedWriter out = Utils.openWriter(ddt, false)) {
+			for (int i = 0; i < lines; i++) {
+				if (i % 100 == 0) {
+					out.write("unparseable\n");
+				}
+				out.write("word" + i + "#NN" + TAB + i + TAB + "word" + (i + 1) + "#NN#" + (i + 1) + ":0.5\n");
+			}
+		}
+		return ddt;
+	}
+
 	private void assertEquals(SenseCluster actual, SenseCluster expected) {
 		assertThat(actual.getSense().getWords(),
 				Matchers.contains(expected.getSense().getWords().toArray(new SingleWord[0])));
@@ -0,0 +1,87 @@
+package de.tudarmstadt.lt.structuredtopics.ddts;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.tudarmstadt.lt.structuredtopics.ClusterStore;
+
+public class SenseClusterViewTest {
+
+	private final Parser parser = new Parser();
+	private final SenseClusterView view = new SenseClusterView();
+
+	@Test
+	public void testSameAsParsedCluster() {
+		assertSameAsParsed("wordA#NN wordB#NN\t0\tword1#NN word2#JJ#1:1.000, word3#2:0.0667,word4#VB\tx");
+		assertSameAsParsed("word\t1.0\tword2#POS#, #x, ##, a#b#c, a#1:0.5#NN, a#1:0.5 b#2:0.25");
+		assertSameAsParsed("word\t1\t\tword2");
+	}
+
+	@Test
+	public void testRandomLines() {
+		Random random = new Random(42);
+		String alphabet = "ab#:, \t12.";
+		for (int n = 0; n < 10000; n++) {
+			StringBuilder line = new StringBuilder();
+			line.append("w#NN\t").append(random.nextInt(10)).append('\t');
+			int length = random.nextInt(30);
+			for (int i = 0; i < length; i++) {
+				line.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			assertSameAsParsed(line.toString());
+		}
+	}
+
+	@Test
+	public void testNegativeSenseId() {
+		// a sense id of -1 is valid and differs from a cluster word without a
+		// sense id
+		assertThat(view.reset("word#NN\t-1\tword2#NN"), is(true));
+		assertThat(view.getSenseId(), is(-1));
+		assertThat(view.getRelatedSenseId(0), is(SenseClusterView.NO_SENSE_ID));
+		assertThat(SenseClusterView.NO_SENSE_ID, is(not(view.getSenseId())));
+		assertThat(SenseClusterView.NO_SENSE_ID, is(ClusterStore.NO_SENSE_ID));
+	}
+
+	@Test
+	public void testInvalidLines() {
+		assertThat(view.reset("word\t1"), is(false));
+		assertThat(view.reset("word\tx\tword2"), is(false));
+		assertThat(view.reset("word\t1\t\t"), is(false));
+	}
+
+	private void assertSameAsParsed(String line) {
+		SenseCluster expected;
+		try {
+			expected = parser.parseSenseClusterFromLine(line);
+		} catch (NumberFormatException e) {
+			// too large sense ids in the cluster words
+			return;
+		}
+		assertThat(line, view.reset(line), is(expected != null));
+		if (expected == null) {
+			return;
+		}
+		assertThat(line, view.getSenseFullWord(), is(expected.getSense().getFullWord()));
+		assertThat(line, view.getSenseId(), is(expected.getSense().getSenseId()));
+		assertThat(line, view.getClusterWordCount(), is(expected.getClusterWords().size()));
+		for (int i = 0; i < view.getClusterWordCount(); i++) {
+			ClusterWord clusterWord = expected.getClusterWords().get(i);
+			assertThat(line, view.getClusterWordFullWord(i), is(clusterWord.getFullWord()));
+			if (clusterWord.getRelatedSenseId() == null) {
+				assertThat(line, view.getRelatedSenseId(i), is(SenseClusterView.NO_SENSE_ID));
+				assertThat(line, clusterWord.getWeight(), nullValue());
+				assertThat(line, Double.isNaN(view.getWeight(i)), is(true));
+			} else {
+				assertThat(line, view.getRelatedSenseId(i), is(clusterWord.getRelatedSenseId()));
+				assertThat(line, view.getWeight(i), is(clusterWord.getWeight()));
+			}
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package de.tudarmstadt.lt.structuredtopics.ddts;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class TokenizerTest {
+
+	@Test
+	public void testSameAsSplit() {
+		Random random = new Random(42);
+		String alphabet = "ab#:, \t\n";
+		for (int n = 0; n < 10000; n++) {
+			StringBuilder text = new StringBuilder();
+			int length = random.nextInt(20);
+			for (int i = 0; i < length; i++) {
+				text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			String line = text.toString();
+			assertThat(line, tokens(Tokenizer.onChar('#'), line), is(Lists.newArrayList(line.split("[#]"))));
+			assertThat(line, tokens(Tokenizer.onWhitespace(), line), is(Lists.newArrayList(line.split("\\s+"))));
+			assertThat(line, tokens(Tokenizer.onCommaAndWhitespace(), line),
+					is(Lists.newArrayList(line.split("[,]\\s*"))));
+		}
+	}
+
+	@Test
+	public void testCount() {
+		Tokenizer tokenizer = Tokenizer.onChar(':').reset("x1:0.5", 1, 6);
+		assertThat(tokenizer.count(), is(2));
+		assertThat(tokenizer.next(), is(true));
+		assertThat(tokenizer.token(), is("1"));
+	}
+
+	@Test
+	public void testParseNumbers() {
+		assertThat(Tokenizer.parseInt("x-123x", 1, 5), is(-123));
+		assertThat(Tokenizer.parseInt("2147483647", 0, 10), is(Integer.MAX_VALUE));
+		String[] doubles = { "0.0667", "12.5", "1", "-0.25", "1e-3", ".5", "5.", "0.12345678901234567" };
+		for (String value : doubles) {
+			assertThat(value, Tokenizer.parseDouble(value, 0, value.length()), is(Double.parseDouble(value)));
+		}
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testParseInvalidInt() {
+		Tokenizer.parseInt("1a", 0, 2);
+	}
+
+	@Test
+	public void testSenseIdWeight() {
+		assertThat(Tokenizer.isSenseIdWeight("12:0.5", 0, 6), is(true));
+		assertThat(Tokenizer.isSenseIdWeight("12:5", 0, 4), is(false));
+		assertThat(Tokenizer.isSenseIdWeight("NN", 0, 2), is(false));
+	}
+
+	private List<String> tokens(Tokenizer tokenizer, String line) {
+		List<String> tokens = Lists.newArrayList();
+		tokenizer.reset(line, 0, line.length());
+		while (tokenizer.next()) {
+			tokens.add(tokenizer.token());
+		}
+		return tokens;
+	}
+}
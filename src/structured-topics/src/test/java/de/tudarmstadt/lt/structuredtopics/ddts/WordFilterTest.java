@@ -0,0 +1,61 @@
+package de.tudarmstadt.lt.structuredtopics.ddts;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import de.tudarmstadt.lt.structuredtopics.Utils;
+
+public class WordFilterTest {
+
+	@Test
+	public void testAsciiLetterSameAsRegex() {
+		WordFilter letters = WordFilter.containsAsciiLetter();
+		WordFilter regex = WordFilter.regex(".*[a-zA-Z]+.*");
+		Random random = new Random(42);
+		String alphabet = "aZ1#- \n\u00e4\u2028";
+		for (int n = 0; n < 10000; n++) {
+			StringBuilder text = new StringBuilder();
+			int length = random.nextInt(8);
+			for (int i = 0; i < length; i++) {
+				text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			SingleWord word = new SingleWord(text.toString(), null);
+			assertThat(text.toString(), letters.accept(word), is(regex.accept(word)));
+		}
+	}
+
+	@Test
+	public void testPosTags() {
+		WordFilter pos = WordFilter.posTags(Sets.newHashSet("NN", "NP"));
+
+		assertThat(pos.accept(new SingleWord("a", "nn")), is(true));
+		assertThat(pos.accept(new SingleWord("a", "NP")), is(true));
+		assertThat(pos.accept(new SingleWord("a", "JJ")), is(false));
+		assertThat(pos.accept(new SingleWord("a", null)), is(false));
+		// all tags are accepted, not only the first one
+		assertThat(new Utils.PosTagFilter(Sets.newHashSet("NN", "NP"))
+				.filter(Lists.newArrayList(new SingleWord("a", "NP"))), is(false));
+	}
+
+	@Test
+	public void testChain() {
+		FilterChain chain = new FilterChain(Lists.newArrayList(WordFilter.posTags(Sets.newHashSet("NN")),
+				WordFilter.containsAsciiLetter()));
+		List<SingleWord> kept = Lists.newArrayList(new SingleWord("a", "NN"), new SingleWord("b1", "NN"));
+		List<SingleWord> wrongPos = Lists.newArrayList(new SingleWord("a", "NN"), new SingleWord("b", "JJ"));
+		List<SingleWord> noLetters = Lists.newArrayList(new SingleWord("1990", "NN"));
+
+		assertThat(chain.filter(kept), is(false));
+		assertThat(chain.filter(wrongPos), is(true));
+		assertThat(chain.filter(noLetters), is(true));
+	}
+
+}
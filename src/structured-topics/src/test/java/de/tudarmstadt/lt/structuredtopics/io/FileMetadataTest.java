@@ -0,0 +1,97 @@
+package de.tudarmstadt.lt.structuredtopics.io;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableMap;
+
+import de.tudarmstadt.lt.structuredtopics.Utils;
+
+public class FileMetadataTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testWrittenWithFile() throws IOException {
+		for (boolean indexed : new boolean[] { false, true }) {
+			File file = new File(folder.getRoot(), "lines-" + indexed + ".gz");
+			try (BufferedWriter out = Utils.openWriter(file,
+					new WriterOptions().compressionThreads(2).indexed(indexed).metadata(ImmutableMap.of("N", "10")))) {
+				for (int i = 0; i < 1000; i++) {
+					out.write("line\t" + i + "\n");
+				}
+			}
+
+			FileMetadata metadata = FileMetadata.load(file);
+
+			assertThat(metadata, notNullValue());
+			assertThat(metadata.getLineCount(), is(1000L));
+			assertThat(metadata.getLength(), is(file.length()));
+			assertThat(metadata.getChecksum(), is(FileMetadata.checksum(file)));
+			assertThat(metadata.getSettings(), is(ImmutableMap.of("N", "10")));
+		}
+	}
+
+	@Test
+	public void testLinesCountedLikeReadLine() throws IOException {
+		String text = "a\r\nb\rc\n\nd";
+		File file = new File(folder.getRoot(), "lines.csv");
+		try (BufferedWriter out = Utils.openWriter(file, new WriterOptions().metadata(ImmutableMap.of()))) {
+			out.write(text);
+		}
+		File plain = folder.newFile("plain.csv");
+		try (BufferedWriter out = Utils.openWriter(plain, false)) {
+			out.write(text);
+		}
+
+		assertThat(FileMetadata.load(file).getLineCount(), is((long) Utils.countLines(plain)));
+	}
+
+	@Test
+	public void testOutdatedMetadataIgnored() throws IOException {
+		File file = new File(folder.getRoot(), "lines.csv");
+		try (BufferedWriter out = Utils.openWriter(file, new WriterOptions().metadata(ImmutableMap.of()))) {
+			out.write("a\nb\n");
+		}
+		assertThat(Utils.countLines(file), is(2));
+		try (OutputStream out = new FileOutputStream(file, true)) {
+			out.write("c\n".getBytes("UTF-8"));
+		}
+
+		assertThat(FileMetadata.load(file), nullValue());
+		assertThat(Utils.countLines(file), is(3));
+	}
+
+	@Test
+	public void testSidecarsNotListed() throws IOException {
+		File dir = folder.newFolder("results");
+		for (String name : new String[] { "sims-ddt.gz", "sims-ddt.csv" }) {
+			try (BufferedWriter out = Utils.openWriter(new File(dir, name),
+					new WriterOptions().indexed(true).metadata(ImmutableMap.of()))) {
+				out.write("a\n");
+			}
+		}
+
+		File[] files = dir.listFiles(FileMetadata.DATA_FILES);
+		Arrays.sort(files);
+
+		// the .meta and .idx files are not listed
+		assertThat(dir.list().length, is(5));
+		assertThat(files, is(new File[] { new File(dir, "sims-ddt.csv"), new File(dir, "sims-ddt.gz") }));
+	}
+
+}
@@ -0,0 +1,139 @@
+package de.tudarmstadt.lt.structuredtopics.io;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+
+import de.tudarmstadt.lt.structuredtopics.Utils;
+
+public class IndexedGzipTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private List<String> lines;
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		lines = Lists.newArrayList();
+		for (int i = 0; i < 500; i++) {
+			// some lines are longer than a block
+			lines.add(i + "\tw\u00e4rter" + Strings.repeat("x", i % 50 == 0 ? 300 : i % 20));
+		}
+		file = write("lines.gz", lines);
+	}
+
+	@Test
+	public void testReadableAsPlainGzip() throws IOException {
+		assertThat(readPlain(file), is(lines));
+		assertThat(Utils.countLines(file), is(lines.size()));
+	}
+
+	@Test
+	public void testIndex() {
+		GzipIndex index = GzipIndex.load(file);
+
+		assertThat(index, notNullValue());
+		assertThat(index.getBlockCount(), greaterThan(10));
+		assertThat(index.getLineCount(), is((long) lines.size()));
+		assertThat(index.getCompressedLength(), is(file.length()));
+		for (int block = 0; block < index.getBlockCount(); block++) {
+			assertThat(index.findBlock(index.getFirstLine(block)), is(block));
+		}
+	}
+
+	@Test
+	public void testSeek() throws IOException {
+		GzipIndex index = GzipIndex.load(file);
+		int[][] ranges = { { 0, 500 }, { 0, 1 }, { 17, 18 }, { 123, 321 }, { 499, 600 }, { 500, 501 }, { 5, 5 } };
+		for (int[] range : ranges) {
+			try (IndexedGzipLineReader in = new IndexedGzipLineReader(file, index, range[0], range[1], 3)) {
+				List<String> expected = lines.subList(Math.min(range[0], lines.size()),
+						Math.min(range[1], lines.size()));
+				List<String> actual = Lists.newArrayList();
+				while (in.nextLine()) {
+					actual.add(in.getLine().toString());
+					assertThat(in.getLineNumber(), is((long) range[0] + actual.size()));
+				}
+				assertThat(actual, is(expected));
+			}
+		}
+	}
+
+	@Test
+	public void testLineRanges() throws IOException {
+		List<LineRange> ranges = LineRange.split(file, 4);
+
+		assertThat(ranges.size(), is(4));
+		List<String> actual = Lists.newArrayList();
+		for (LineRange range : ranges) {
+			try (BufferedReader in = range.openReader(file)) {
+				String line;
+				while ((line = in.readLine()) != null) {
+					actual.add(line);
+				}
+			}
+		}
+		assertThat(actual, is(lines));
+	}
+
+	@Test
+	public void testConcatenate() throws IOException {
+		File empty = write("empty.gz", Lists.<String> newArrayList());
+		File output = folder.newFile("concatenated.gz");
+
+		Utils.concatenateFiles(Lists.newArrayList(file, empty, file), output);
+
+		List<String> expected = Lists.newArrayList(lines);
+		expected.addAll(lines);
+		assertThat(readPlain(output), is(expected));
+		GzipIndex index = GzipIndex.load(output);
+		assertThat(index.getLineCount(), is((long) expected.size()));
+		try (LineReader in = Utils.openLineReader(output)) {
+			List<String> actual = Lists.newArrayList();
+			while (in.nextLine()) {
+				actual.add(in.getLine().toString());
+			}
+			assertThat(actual, is(expected));
+		}
+	}
+
+	private File write(String name, List<String> content) throws IOException {
+		File output = new File(folder.getRoot(), name);
+		try (OutputStream out = new ParallelGZIPOutputStream(new FileOutputStream(output), 2, 256, output)) {
+			for (String line : content) {
+				out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		return output;
+	}
+
+	private List<String> readPlain(File input) throws IOException {
+		List<String> result = Lists.newArrayList();
+		try (BufferedReader in = Utils.openReader(input)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				result.add(line);
+			}
+		}
+		return result;
+	}
+}
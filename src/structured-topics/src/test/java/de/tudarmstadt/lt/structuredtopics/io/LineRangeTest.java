@@ -0,0 +1,83 @@
+package de.tudarmstadt.lt.structuredtopics.io;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+public class LineRangeTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRangesContainAllLines() throws IOException {
+		List<String> lines = Lists.newArrayList();
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			// lines of different length with multi-byte characters
+			String line = i + "\tw\u00e4rt" + Strings.repeat("x", i % 17);
+			lines.add(line);
+			content.append(line).append("\n");
+		}
+		File file = write(content.toString());
+
+		for (int count = 1; count < 20; count++) {
+			List<LineRange> ranges = LineRange.split(file, count);
+			assertThat(ranges.size(), lessThanOrEqualTo(count));
+			assertThat(readAll(file, ranges), is(lines));
+		}
+	}
+
+	@Test
+	public void testMoreRangesThanLines() throws IOException {
+		File file = write("a\nb");
+
+		List<LineRange> ranges = LineRange.split(file, 10);
+
+		assertThat(ranges.size(), is(2));
+		assertThat(readAll(file, ranges), is(Lists.newArrayList("a", "b")));
+	}
+
+	@Test
+	public void testEmptyFile() throws IOException {
+		File file = write("");
+
+		List<LineRange> ranges = LineRange.split(file, 4);
+
+		assertThat(ranges.size(), is(1));
+		assertThat(readAll(file, ranges).size(), is(0));
+	}
+
+	private File write(String content) throws IOException {
+		File file = folder.newFile();
+		Files.write(content, file, StandardCharsets.UTF_8);
+		return file;
+	}
+
+	private List<String> readAll(File file, List<LineRange> ranges) throws IOException {
+		List<String> lines = Lists.newArrayList();
+		for (LineRange range : ranges) {
+			try (BufferedReader in = range.openReader(file)) {
+				String line;
+				while ((line = in.readLine()) != null) {
+					lines.add(line);
+				}
+			}
+		}
+		return lines;
+	}
+}
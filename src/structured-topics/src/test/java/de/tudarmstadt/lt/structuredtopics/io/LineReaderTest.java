@@ -0,0 +1,91 @@
+package de.tudarmstadt.lt.structuredtopics.io;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import de.tudarmstadt.lt.structuredtopics.Utils;
+
+public class LineReaderTest {
+
+	private static final String CONTENT = "first\tline\r\nw\u00e4rter#NN\n\n\u00fcber 100\u20ac\nlast";
+	private static final List<String> LINES = Lists.newArrayList("first\tline", "w\u00e4rter#NN", "",
+			"\u00fcber 100\u20ac", "last");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testMappedLineReader() throws IOException {
+		File file = folder.newFile();
+		Files.write(CONTENT, file, StandardCharsets.UTF_8);
+
+		assertThat(readAll(new MappedLineReader(file)), is(LINES));
+	}
+
+	@Test
+	public void testMappedLineReaderMultipleWindows() throws IOException {
+		File file = folder.newFile();
+		Files.write(CONTENT, file, StandardCharsets.UTF_8);
+
+		// each window holds only one or two lines
+		assertThat(readAll(new MappedLineReader(file, 16)), is(LINES));
+	}
+
+	@Test(expected = IOException.class)
+	public void testMappedLineReaderLineTooLong() throws IOException {
+		File file = folder.newFile();
+		Files.write(CONTENT, file, StandardCharsets.UTF_8);
+
+		readAll(new MappedLineReader(file, 4));
+	}
+
+	@Test
+	public void testReaderLineReader() throws IOException {
+		assertThat(readAll(new ReaderLineReader(new StringReader(CONTENT))), is(LINES));
+		assertThat(readAll(new ReaderLineReader(new StringReader(CONTENT + "\n"))), is(LINES));
+	}
+
+	@Test
+	public void testOpenGzipWithoutGzSuffix() throws IOException {
+		File gzip = folder.newFile("lines.txt");
+		try (Writer out = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(gzip)),
+				StandardCharsets.UTF_8)) {
+			out.write(CONTENT);
+		}
+		File plain = folder.newFile("plain.gz");
+		Files.write(CONTENT, plain, StandardCharsets.UTF_8);
+
+		assertThat(readAll(Utils.openLineReader(gzip)), is(LINES));
+		assertThat(readAll(Utils.openLineReader(plain)), is(LINES));
+	}
+
+	private List<String> readAll(LineReader in) throws IOException {
+		List<String> lines = Lists.newArrayList();
+		try {
+			while (in.nextLine()) {
+				lines.add(in.getLine().toString());
+				assertThat(in.getLineNumber(), is((long) lines.size()));
+			}
+		} finally {
+			in.close();
+		}
+		return lines;
+	}
+}
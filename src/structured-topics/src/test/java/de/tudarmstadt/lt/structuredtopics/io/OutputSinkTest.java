@@ -0,0 +1,111 @@
+package de.tudarmstadt.lt.structuredtopics.io;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class OutputSinkTest {
+
+	@Test
+	public void testUnordered() throws IOException {
+		StringWriter out = new StringWriter();
+		try (OutputSink sink = new OutputSink(out, false, 100, 2)) {
+			IntStream.range(0, 10000).parallel().forEach(i -> {
+				try {
+					sink.buffer().append("line ").append(i).append('\n').endRecord();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+
+		List<String> lines = Arrays.asList(out.toString().split("\n"));
+		assertThat(lines.stream().sorted().collect(Collectors.toList()), is(expected(10000).stream().sorted()
+				.collect(Collectors.toList())));
+	}
+
+	@Test
+	public void testOrdered() throws IOException {
+		StringWriter out = new StringWriter();
+		try (OutputSink sink = new OutputSink(out, true, 100, 2)) {
+			IntStream.range(0, 10000).parallel().forEach(i -> {
+				try {
+					OutputSink.Buffer buffer = sink.buffer();
+					// some records without output
+					if (i % 7 != 0) {
+						buffer.append("line ").append(i).append('\n');
+					}
+					buffer.endRecord(i);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+
+		List<String> expected = expected(10000).stream().filter(line -> Integer.parseInt(line.substring(5)) % 7 != 0)
+				.collect(Collectors.toList());
+		assertThat(Arrays.asList(out.toString().split("\n")), is(expected));
+	}
+
+	@Test
+	public void testDiscardRecord() throws IOException {
+		StringWriter out = new StringWriter();
+		try (OutputSink sink = new OutputSink(out, true, 100, 2)) {
+			OutputSink.Buffer buffer = sink.buffer();
+			buffer.append("line 0\n").endRecord(0);
+			// a failed record keeps its sequence number without output
+			buffer.append("partial\n");
+			buffer.discardRecord();
+			buffer.endRecord(1);
+			buffer.append("line 2\n").endRecord(2);
+		}
+
+		assertThat(out.toString(), is("line 0\nline 2\n"));
+	}
+
+	@Test
+	public void testFlushEarlyRecordOfQuietWorker() throws Exception {
+		StringWriter out = new StringWriter();
+		try (OutputSink sink = new OutputSink(out, true, 100, 2)) {
+			// the first record stays in the buffer of a thread with no more
+			// work, all later records wait for it
+			Thread quiet = new Thread(() -> {
+				try {
+					sink.buffer().append("line 0\n").endRecord(0);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			quiet.start();
+			quiet.join();
+			OutputSink.Buffer buffer = sink.buffer();
+			for (int i = 1; i < 1000; i++) {
+				buffer.append("line ").append(i).append('\n').endRecord(i);
+			}
+			assertThat(out.toString(), is(""));
+
+			sink.flush();
+
+			// written before the sink is closed
+			long deadline = System.currentTimeMillis() + 10000;
+			while (out.toString().split("\n").length < 1000 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertThat(Arrays.asList(out.toString().split("\n")), is(expected(1000)));
+		}
+	}
+
+	private static List<String> expected(int lines) {
+		return IntStream.range(0, lines).mapToObj(i -> "line " + i).collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,61 @@
+package de.tudarmstadt.lt.structuredtopics.io;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+public class ParallelGZIPOutputStreamTest {
+
+	@Test
+	public void testMultipleBlocks() throws IOException {
+		byte[] data = new byte[100 * 1000];
+		Random random = new Random(42);
+		for (int i = 0; i < data.length; i++) {
+			// compressible data
+			data[i] = (byte) ('a' + random.nextInt(4));
+		}
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(compressed, 3, 1000)) {
+			out.write(data, 0, 12345);
+			out.write(data[12345]);
+			out.write(data, 12346, data.length - 12346);
+		}
+
+		assertThat(decompress(compressed.toByteArray()), is(data));
+	}
+
+	@Test
+	public void testFlushEndsBlock() throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(compressed, 2, 1000)) {
+			out.write("first".getBytes("UTF-8"));
+			out.flush();
+			out.write("second".getBytes("UTF-8"));
+		}
+
+		assertThat(new String(decompress(compressed.toByteArray()), "UTF-8"), is("firstsecond"));
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		new ParallelGZIPOutputStream(compressed, 2).close();
+
+		assertThat(decompress(compressed.toByteArray()).length, is(0));
+	}
+
+	private byte[] decompress(byte[] compressed) throws IOException {
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+			return ByteStreams.toByteArray(in);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package de.tudarmstadt.lt.structuredtopics.similarity;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.lucene.store.Directory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import de.tudarmstadt.lt.structuredtopics.Utils;
+import de.tudarmstadt.lt.structuredtopics.ddts.ClusterWord;
+import de.tudarmstadt.lt.structuredtopics.ddts.SingleWord;
+import de.tudarmstadt.lt.structuredtopics.similarity.InvertedSenseIndex.Scoring;
+
+public class InvertedSenseIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSameRankingAsLucene() throws IOException {
+		File ddt = folder.newFile("ddt.csv");
+		Random random = new Random(42);
+		try (BufferedWriter out = Utils.openWriter(ddt, false)) {
+			for (int i = 0; i < 500; i++) {
+				out.write("w" + i + "#NN\t0\t");
+				int words = 1 + random.nextInt(20);
+				for (int j = 0; j < words; j++) {
+					// small vocabulary for many ties, duplicates and words
+					// without a sense
+					out.write((j > 0 ? ", " : "") + "w" + random.nextInt(600) + "#NN#0:0.5");
+				}
+				out.write("\n");
+			}
+		}
+		File lucene = new File(folder.getRoot(), "lucene.csv");
+		try (Directory index = SenseSimilarityCalculator.openIndex(ddt, folder.newFolder("index"), 1, 500)) {
+			SenseSimilarityCalculator.writeLuceneBasedSimilarities(lucene, 10, ddt, index, 1, false);
+		}
+		File inverted = new File(folder.getRoot(), "inverted.csv");
+
+		SenseSimilarityCalculator.writeInvertedIndexSimilarities(inverted, 10, ddt,
+				InvertedSenseIndex.build(ddt, 2, 500), Scoring.LUCENE_CLASSIC, 1, false, 2, 500, null);
+
+		List<String> expected = Files.readLines(lucene, Charsets.UTF_8);
+		List<String> actual = Files.readLines(inverted, Charsets.UTF_8);
+		// both are written in parallel
+		Collections.sort(expected);
+		Collections.sort(actual);
+		assertThat(actual, is(expected));
+	}
+
+	@Test
+	public void testLuceneOverlapSameAsInvertedOverlap() throws IOException {
+		File ddt = folder.newFile("ddt.csv");
+		Random random = new Random(7);
+		try (BufferedWriter out = Utils.openWriter(ddt, false)) {
+			for (int i = 0; i < 500; i++) {
+				out.write("w" + i + "#NN\t0\t");
+				int words = 1 + random.nextInt(10);
+				for (int j = 0; j < words; j++) {
+					out.write((j > 0 ? ", " : "") + "w" + random.nextInt(50) + "#NN#0:0.5");
+				}
+				out.write("\n");
+			}
+		}
+		File lucene = new File(folder.getRoot(), "lucene.csv");
+		// a single ordered segment, the collection ends early
+		try (Directory index = SenseSimilarityCalculator.openIndex(ddt, folder.newFolder("index"), 1, 500,
+				new IndexingOptions(1, IndexingOptions.DEFAULT_RAM_BUFFER_MB, IndexingOptions.DEFAULT_SEGMENTS_PER_TIER,
+						1))) {
+			SenseSimilarityCalculator.writeLuceneBasedSimilarities(lucene, 10, ddt, index, 1, false, 1, 500, null,
+					SenseSimilarityCalculator.LuceneScoring.OVERLAP, 0f);
+		}
+		File inverted = new File(folder.getRoot(), "inverted.csv");
+
+		SenseSimilarityCalculator.writeInvertedIndexSimilarities(inverted, 10, ddt,
+				InvertedSenseIndex.build(ddt, 1, 500), Scoring.OVERLAP, 1, false, 1, 500, null);
+
+		List<String> expected = Files.readLines(inverted, Charsets.UTF_8);
+		List<String> actual = Files.readLines(lucene, Charsets.UTF_8);
+		Collections.sort(expected);
+		Collections.sort(actual);
+		assertThat(actual, is(expected));
+	}
+
+	@Test
+	public void testOverlap() throws IOException {
+		File ddt = folder.newFile("ddt.csv");
+		String lines = "a#NN\t0\tx#NN, y#NN, z#NN\n";
+		lines += "b#NN\t0\tx#NN, y#NN\n";
+		lines += "c#NN\t0\tz#NN, x#NN, x#NN\n";
+		lines += "d#NN\t0\tq#NN\n";
+		Files.write(lines, ddt, Charsets.UTF_8);
+		InvertedSenseIndex index = InvertedSenseIndex.build(ddt, 1, 4);
+		InvertedSenseIndex.Searcher searcher = index.newSearcher(Scoring.OVERLAP);
+
+		int hits = searcher.search(Lists.newArrayList(word("x"), word("z"), word("x"), word("unknown")), 3);
+
+		assertThat(hits, is(3));
+		// a and c share x and z, ties in ddt order
+		assertThat(index.getSenseWordId(searcher.getSense(0)), is("a#0"));
+		assertThat(searcher.getScore(0), is(2f));
+		assertThat(index.getSenseWordId(searcher.getSense(1)), is("c#0"));
+		assertThat(searcher.getScore(1), is(2f));
+		assertThat(index.getSenseWordId(searcher.getSense(2)), is("b#0"));
+		assertThat(searcher.getScore(2), is(1f));
+		assertThat(index.getDocFreq("x"), is(3));
+	}
+
+	private static ClusterWord word(String text) {
+		return new ClusterWord(Lists.newArrayList(new SingleWord(text, "NN")), null, null);
+	}
+
+}
@@ -0,0 +1,99 @@
+package de.tudarmstadt.lt.structuredtopics.similarity;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import de.tudarmstadt.lt.structuredtopics.Utils;
+import de.tudarmstadt.lt.structuredtopics.similarity.MinHashSenseIndex.MinHashScoring;
+
+public class MinHashSenseIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testCandidatesAreScoredExactly() throws IOException {
+		File ddt = folder.newFile("ddt.csv");
+		String lines = "a#NN\t0\tx#NN, y#NN, z#NN\n";
+		lines += "b#NN\t0\tz#NN, y#NN, x#NN\n";
+		lines += "c#NN\t0\tz#NN, x#NN, x#NN\n";
+		lines += "d#NN\t0\tq#NN\n";
+		Files.write(lines, ddt, Charsets.UTF_8);
+		// with one row per band, a sense which shares a word is a candidate
+		// of almost every band
+		MinHashSenseIndex index = MinHashSenseIndex.build(ddt, 1, 4, 256, 1);
+		MinHashSenseIndex.Searcher searcher = index.newSearcher(MinHashScoring.JACCARD);
+
+		int hits = searcher.search(0, 3);
+
+		assertThat(hits, is(2));
+		assertThat(index.getSenseWordId(searcher.getSense(0)), is("b#0"));
+		assertThat(searcher.getScore(0), is(1f));
+		assertThat(index.getSenseWordId(searcher.getSense(1)), is("c#0"));
+		assertThat(searcher.getScore(1), is(2f / 3));
+		assertThat(searcher.getCandidates(), is(2));
+	}
+
+	@Test
+	public void testSimilaritiesAfterUnparseableLine() throws IOException {
+		File ddt = folder.newFile("ddt.csv");
+		String lines = "a#NN\t0\tx#NN, y#NN, z#NN\n";
+		lines += "unparseable\n";
+		lines += "b#NN\t0\tz#NN, y#NN, x#NN\n";
+		lines += "c#NN\t0\tq#NN\n";
+		lines += "d#NN\t0\tq#NN, r#NN\n";
+		Files.write(lines, ddt, Charsets.UTF_8);
+		File output = new File(folder.getRoot(), "similarities.csv");
+		MinHashSenseIndex index = MinHashSenseIndex.build(ddt, 1, 5, 256, 1);
+
+		SenseSimilarityCalculator.writeMinHashSimilarities(output, 3, ddt, index, MinHashScoring.JACCARD, 1, false,
+				null);
+
+		assertThat(Files.readLines(output, Charsets.UTF_8), is(Lists.newArrayList("a#0\tb#0\t1.0", "b#0\ta#0\t1.0",
+				"c#0\td#0\t0.5", "d#0\tc#0\t0.5")));
+	}
+
+	@Test
+	public void testRecallReport() throws IOException {
+		File ddt = folder.newFile("ddt.csv");
+		Random random = new Random(42);
+		try (BufferedWriter out = Utils.openWriter(ddt, false)) {
+			for (int i = 0; i < 300; i++) {
+				out.write("w" + i + "#NN\t0\t");
+				int words = 1 + random.nextInt(20);
+				for (int j = 0; j < words; j++) {
+					out.write((j > 0 ? ", " : "") + "w" + random.nextInt(400) + "#NN#0:0.5");
+				}
+				out.write("\n");
+			}
+		}
+		File report = new File(folder.getRoot(), "report.tsv");
+
+		MinHashRecallReport.writeReport(ddt, report, 10, 100, MinHashScoring.JACCARD, 1,
+				Lists.newArrayList(new int[] { 1024, 1 }, new int[] { 1, 8 }));
+
+		List<String> lines = Files.readLines(report, Charsets.UTF_8);
+		assertThat(lines.size(), is(3));
+		String[] manyBands = lines.get(1).split("\t");
+		assertThat(manyBands[0] + "x" + manyBands[1], is("1024x1"));
+		assertThat(manyBands[3], is("1.0000"));
+		String[] fewBands = lines.get(2).split("\t");
+		assertThat(Double.parseDouble(fewBands[3]), lessThan(1.0));
+	}
+
+}
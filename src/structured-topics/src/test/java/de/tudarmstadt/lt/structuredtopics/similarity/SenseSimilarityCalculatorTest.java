@@ -1,17 +1,25 @@
 package de.tudarmstadt.lt.structuredtopics.similarity;
 
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.io.Files;
 
@@ -60,4 +68,157 @@ public class SenseSimilarityCalculatorTest {
 		assertThat(similarities, is(expectedSimilarities));
 	}
 
+	@Test
+	public void testUnknownRelatedSensesOfSecondDdt() throws IOException {
+		File ddt1 = folder.newFile("ddt1.csv");
+		Files.write("wordA#POS" + TAB + "0" + TAB + "wordB#POS\n" + "wordB#POS" + TAB + "0" + TAB + "wordA#POS\n",
+				ddt1, Charsets.UTF_8);
+		File ddt2 = folder.newFile("ddt2.csv");
+		Files.write("wordA#POS" + TAB + "0" + TAB + "wordB#POS\n" + "wordB#POS" + TAB + "3" + TAB + "wordA#POS\n",
+				ddt2, Charsets.UTF_8);
+		File similaritiesFile1 = folder.newFile("sim1.csv");
+		File similaritiesFile2 = folder.newFile("sim2.csv");
+
+		SenseSimilarityCalculator.writeAllSimilarities(similaritiesFile1, ddt1);
+		SenseSimilarityCalculator.writeAllSimilarities(similaritiesFile2, ddt2);
+
+		// the sense ids are not reused from the first ddt
+		assertThat(Files.readLines(similaritiesFile2, Charsets.UTF_8),
+				is(Lists.newArrayList("wordA#0\twordB#3\t1.0", "wordB#3\twordA#0\t1.0")));
+	}
+
+	@Test
+	public void testPruning() throws IOException {
+		File ddt = folder.newFile("ddt.csv");
+		String lines = "a#NN" + TAB + "0" + TAB + "e#NN#0:0.1" + CW + "d#NN#0:0.5" + CW + "b#NN#0:0.9" + CW
+				+ "c#NN#0:0.5\n";
+		Files.write(lines, ddt, Charsets.UTF_8);
+		File topTwo = folder.newFile("top2.csv");
+		File threshold = folder.newFile("threshold.csv");
+
+		SenseSimilarityCalculator.writeAllSimilarities(topTwo, ddt, 1, false, 1,
+				new SimilarityPruning(2, SimilarityPruning.NO_THRESHOLD, false));
+		SenseSimilarityCalculator.writeAllSimilarities(threshold, ddt, 1, false, 1,
+				new SimilarityPruning(10, 3, true));
+
+		// sorted by descending similarity, then by name
+		assertThat(Files.readLines(topTwo, Charsets.UTF_8),
+				is(Lists.newArrayList("a#0\tb#0\t0.9", "a#0\tc#0\t0.5")));
+		assertThat(Files.readLines(threshold, Charsets.UTF_8),
+				is(Lists.newArrayList("a#0\tb#0\t1.0", "a#0\tc#0\t1.0", "a#0\td#0\t1.0")));
+	}
+
+	@Test
+	public void testPersistentIndexReused() throws IOException {
+		File ddt = folder.newFile("ddt.csv");
+		String lines = "wordA#NN" + TAB + "0" + TAB + "wordB#NN#0:1.0" + CW + "wordC#NN#0:0.5\n";
+		lines += "wordB#NN" + TAB + "0" + TAB + "wordA#NN#0:1.0" + CW + "wordC#NN#0:0.5\n";
+		Files.write(lines, ddt, Charsets.UTF_8);
+		File indexDir = folder.newFolder("index");
+
+		long generation;
+		try (Directory index = SenseSimilarityCalculator.openIndex(ddt, indexDir, 1, 2)) {
+			generation = SegmentInfos.getLastCommitGeneration(index);
+			try (DirectoryReader reader = DirectoryReader.open(index)) {
+				assertThat(reader.numDocs(), is(2));
+			}
+		}
+		try (Directory index = SenseSimilarityCalculator.openIndex(ddt, indexDir, 1, 2)) {
+			assertThat(SegmentInfos.getLastCommitGeneration(index), is(generation));
+		}
+		// a different ddt replaces the index
+		lines += "wordC#NN" + TAB + "0" + TAB + "wordA#NN#0:1.0\n";
+		Files.write(lines, ddt, Charsets.UTF_8);
+		try (Directory index = SenseSimilarityCalculator.openIndex(ddt, indexDir, 1, 3);
+				DirectoryReader reader = DirectoryReader.open(index)) {
+			assertThat(reader.numDocs(), is(3));
+		}
+	}
+
+	@Test
+	public void testConcurrentIndexingKeepsDdtOrderForTies() throws IOException {
+		File ddt = folder.newFile("ddt.csv");
+		StringBuilder lines = new StringBuilder();
+		for (int i = 0; i < 3000; i++) {
+			// all senses share the same cluster words, only the ddt order
+			// decides between the equal scores
+			lines.append("w" + i + "#NN" + TAB + "0" + TAB + "x#NN#0:1.0" + CW + "y#NN#0:1.0\n");
+		}
+		Files.write(lines, ddt, Charsets.UTF_8);
+		File single = folder.newFile("single.csv");
+		File concurrent = folder.newFile("concurrent.csv");
+
+		try (Directory index = SenseSimilarityCalculator.openIndex(ddt, folder.newFolder("single"), 1, 3000,
+				new IndexingOptions(1))) {
+			SenseSimilarityCalculator.writeLuceneBasedSimilarities(single, 3, ddt, index, 1, false);
+		}
+		try (Directory index = SenseSimilarityCalculator.openIndex(ddt, folder.newFolder("concurrent"), 1, 3000,
+				new IndexingOptions(4, 1, 2, 1))) {
+			SenseSimilarityCalculator.writeLuceneBasedSimilarities(concurrent, 3, ddt, index, 1, false);
+		}
+
+		List<String> expected = Files.readLines(single, Charsets.UTF_8);
+		List<String> actual = Files.readLines(concurrent, Charsets.UTF_8);
+		Collections.sort(expected);
+		Collections.sort(actual);
+		assertThat(actual, is(expected));
+		// the first senses of the ddt
+		List<String> similarSenses = Lists.newArrayList();
+		for (String line : actual) {
+			if (line.startsWith("w2999#0\t")) {
+				similarSenses.add(line.split("\t")[1]);
+			}
+		}
+		assertThat(similarSenses, is(Lists.newArrayList("w0#0", "w1#0", "w2#0")));
+	}
+
+	@Test
+	public void testRejectedSenseFailsIndexing() throws IOException {
+		File ddt = folder.newFile("ddt.csv");
+		String lines = "a#NN" + TAB + "0" + TAB + "x#NN\n";
+		// longer than the maximum length of a term
+		lines += "b#NN" + TAB + "0" + TAB + Strings.repeat("x", 40000) + "#NN\n";
+		lines += "c#NN" + TAB + "0" + TAB + "x#NN\n";
+		Files.write(lines, ddt, Charsets.UTF_8);
+		File indexDir = folder.newFolder("index");
+
+		try {
+			SenseSimilarityCalculator.openIndex(ddt, indexDir, 1, 3).close();
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), containsString("b#0"));
+		}
+		// nothing is committed, the next run rebuilds the index
+		try (Directory index = FSDirectory.open(indexDir.toPath())) {
+			assertThat(DirectoryReader.indexExists(index), is(false));
+		}
+	}
+
+	@Test
+	public void testWeightedDotProduct() throws IOException {
+		File ddt = folder.newFile("ddt.csv");
+		String lines = "a#NN" + TAB + "0" + TAB + "x#NN#0:0.5" + CW + "y#NN#0:2.0\n";
+		lines += "b#NN" + TAB + "0" + TAB + "x#NN#0:4.0\n";
+		lines += "c#NN" + TAB + "0" + TAB + "y#NN#0:1.5\n";
+		Files.write(lines, ddt, Charsets.UTF_8);
+		File indexDir = folder.newFolder("index");
+		File output = folder.newFile("output.csv");
+
+		// an index without weights is rebuilt
+		try (Directory index = SenseSimilarityCalculator.openIndex(ddt, indexDir, 1, 3)) {
+			assertThat(SegmentInfos.readLatestCommit(index).getUserData().get(SenseSimilarityCalculator.COMMIT_WEIGHTS),
+					is("false"));
+		}
+		try (Directory index = SenseSimilarityCalculator.openIndex(ddt, indexDir, 1, 3,
+				new IndexingOptions(1, IndexingOptions.DEFAULT_RAM_BUFFER_MB, IndexingOptions.DEFAULT_SEGMENTS_PER_TIER,
+						IndexingOptions.NO_FORCE_MERGE, true))) {
+			SenseSimilarityCalculator.writeLuceneBasedSimilarities(output, 10, ddt, index, 1, false, 1, 3, null,
+					SenseSimilarityCalculator.LuceneScoring.WEIGHTED_DOT_PRODUCT, 0f);
+		}
+
+		List<String> actual = Files.readLines(output, Charsets.UTF_8);
+		assertThat(actual, is(Lists.newArrayList("a#0\tc#0\t3.0", "a#0\tb#0\t2.0", "b#0\ta#0\t2.0",
+				"c#0\ta#0\t3.0")));
+	}
+
 }
@@ -0,0 +1,58 @@
+package de.tudarmstadt.lt.structuredtopics.similarity;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TopSensesTest {
+
+	@Test
+	public void testTiesByOrdinal() {
+		TopSenses top = new TopSenses();
+		top.reset(3);
+		top.offer(5, 1f);
+		top.offer(2, 1f);
+		top.offer(9, 2f);
+		top.offer(1, 1f);
+		top.offer(7, 0.5f);
+
+		assertThat(top.sort(), is(3));
+		assertThat(top.getSense(0), is(9));
+		assertThat(top.getSense(1), is(1));
+		assertThat(top.getSense(2), is(2));
+		assertThat(top.getScore(2), is(1f));
+	}
+
+	@Test
+	public void testSameAsSort() {
+		Random random = new Random(42);
+		TopSenses top = new TopSenses();
+		for (int n : new int[] { 0, 1, 10, 100, 1000 }) {
+			top.reset(n);
+			List<float[]> senses = new ArrayList<>();
+			for (int sense = 0; sense < 500; sense++) {
+				// few distinct scores -> many ties
+				float score = random.nextInt(20);
+				senses.add(new float[] { sense, score });
+				top.offer(sense, score);
+			}
+			Collections.sort(senses, Comparator.<float[]> comparingDouble(sense -> -sense[1])
+					.thenComparingDouble(sense -> sense[0]));
+			List<float[]> expected = senses.subList(0, Math.min(n, senses.size()));
+
+			assertThat(top.sort(), is(expected.size()));
+			for (int i = 0; i < expected.size(); i++) {
+				assertThat(top.getSense(i), is((int) expected.get(i)[0]));
+				assertThat(top.getScore(i), is(expected.get(i)[1]));
+			}
+		}
+	}
+
+}